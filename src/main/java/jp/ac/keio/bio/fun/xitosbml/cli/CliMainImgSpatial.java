@@ -3,23 +3,20 @@ package jp.ac.keio.bio.fun.xitosbml.cli;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Map.Entry;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLException;
-import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.TidySBMLWriter;
+import org.sbml.jsbml.ext.spatial.CompressionKind;
 import org.sbml.jsbml.ext.spatial.Geometry;
 import org.sbml.jsbml.ext.spatial.SpatialModelPlugin;
 
 import ij.ImagePlus;
-import jp.ac.keio.bio.fun.xitosbml.image.CreateImage;
-import jp.ac.keio.bio.fun.xitosbml.image.Filler;
-import jp.ac.keio.bio.fun.xitosbml.image.ImageBorder;
-import jp.ac.keio.bio.fun.xitosbml.image.ImageEdit;
+import jp.ac.keio.bio.fun.xitosbml.image.BinaryMorphology;
+import jp.ac.keio.bio.fun.xitosbml.image.ImagePipeline;
 import jp.ac.keio.bio.fun.xitosbml.image.Interpolator;
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
 import jp.ac.keio.bio.fun.xitosbml.util.ModelValidator;
@@ -74,6 +71,54 @@ public class CliMainImgSpatial {
 	 */
 	protected GetImgDom imgDom;
 
+	/**
+	 * The connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26 for a
+	 * 3D image). 0 means the default connectivity.
+	 */
+	protected int connectivity = 0;
+
+	/**
+	 * The interpolation mode of Z-stack images ({@link Interpolator#NEAREST_NEIGHBOR}
+	 * or {@link Interpolator#SHAPE_BASED}).
+	 */
+	protected int interpolation = Interpolator.NEAREST_NEIGHBOR;
+
+	/** The maximum number of voxels of the spatial image. 0 means no limit. */
+	protected long voxelBudget = 0;
+
+	/** The voxel size of the spatial image. 0 means the voxel size of x axis of the image. */
+	protected double voxelSize = 0;
+
+	/** The flag whether holes are filled by the single-pass flood fill. */
+	protected boolean floodFill = false;
+
+	/** The binary morphology operation applied to each domain image before hole filling. */
+	protected int morphology = BinaryMorphology.NONE;
+
+	/** The radius of the structuring element of the binary morphology operation. */
+	protected int morphologyRadius = 1;
+
+	/** The minimum number of voxels of a domain. 0 means no limit. */
+	protected long minDomainSize = 0;
+
+	/** The flag whether the image is labeled and its membranes are added in bricks. */
+	protected boolean bricked = false;
+
+	/** The flag whether the image is cropped to the bounding box of its foreground. */
+	protected boolean autoCrop = false;
+
+	/** The margin around the bounding box of the foreground in voxels. */
+	protected int cropMargin = 1;
+
+	/** The storage of the voxels of the finished spatial image. */
+	protected int storage = SpatialImage.STORAGE_HEAP;
+
+	/** The flag whether the samples of the SampledField are streamed to the output file. */
+	protected boolean streamingSamples = false;
+
+	/** The compression of the samples of the SampledField. */
+	protected CompressionKind compression = CompressionKind.uncompressed;
+
 	/**
 	 * The path to an image file is taken as a parameter, which is used to
 	 * instantiate an ImagePlus object. The domain corresponding to this image is
@@ -95,6 +140,8 @@ public class CliMainImgSpatial {
 		cli(imager);
 		computeImg();
 		SpatialSBMLExporter sbmlexp = new SpatialSBMLExporter(spImg);
+		sbmlexp.setStreamingSamples(streamingSamples);
+		sbmlexp.setCompression(compression);
 		model = sbmlexp.getModel();
 		sbmlexp.createGeometryElements(); // visualize(spImg);
 
@@ -103,7 +150,7 @@ public class CliMainImgSpatial {
 
 		// To save the SBML document
 		try {
-			SBMLWriter.write(document, new File(outputPath), ' ', (short) 2);
+			sbmlexp.write(new File(outputPath));
 			System.out.println("Saved model");
 		} catch (NullPointerException e) {
 			System.out.println("SBML document was not saved");
@@ -126,6 +173,12 @@ public class CliMainImgSpatial {
 
 		showDomainStructure();
 
+		// the document in memory does not have the samples if they are streamed, so neither
+		// printing nor validating it would check the samples which were written to the file
+		if (sbmlexp.isSamplesDeferred()) {
+			System.out.println("Skipped validation of the model, as the samples were streamed to the file");
+			return;
+		}
 		print();
 		ModelValidator validator = new ModelValidator(document);
 		validator.validate();
@@ -159,26 +212,146 @@ public class CliMainImgSpatial {
 	 *
 	 * The converted image will be generated as
 	 * {@link jp.ac.keio.bio.fun.xitosbml.image.SpatialImage}, which is a base class
-	 * for representing spatial image in XitoSBML.
+	 * for representing spatial image in XitoSBML. All filters operate in place on one
+	 * raw data of the image ({@link jp.ac.keio.bio.fun.xitosbml.image.ImagePipeline}).
 	 */
 	protected void computeImg() {
-		Interpolator interpolator = new Interpolator();
-		HashMap<String, ImagePlus> hashDomFile = imgDom.getDomFile();
-		interpolator.interpolate(hashDomFile);
-		Filler fill = new Filler();
+		ImagePipeline pipeline = new ImagePipeline(imgDom.getDomFile(), hashSampledValue, hashDomainTypes);
+		pipeline.setConnectivity(connectivity);
+		pipeline.setInterpolation(interpolation);
+		pipeline.setVoxelBudget(voxelBudget);
+		pipeline.setVoxelSize(voxelSize);
+		pipeline.setFloodFill(floodFill);
+		pipeline.setMorphology(morphology, morphologyRadius);
+		pipeline.setMinDomainSize(minDomainSize);
+		pipeline.setBricked(bricked);
+		pipeline.setAutoCrop(autoCrop, cropMargin);
+		pipeline.setStorage(storage);
+		// no preview in the CLI, so that only the full resolution is needed
+		pipeline.setPyramidLevels(0);
+		spImg = pipeline.run();
+	}
 
-		for (Entry<String, ImagePlus> e : hashDomFile.entrySet())
-			hashDomFile.put(e.getKey(), fill.fill(e.getValue()));
+	/**
+	 * Sets the connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26
+	 * for a 3D image). If 0, the default connectivity is used.
+	 *
+	 * @param connectivity the connectivity of adjacent pixels
+	 */
+	public void setConnectivity(int connectivity) {
+		this.connectivity = connectivity;
+	}
 
-		CreateImage creIm = new CreateImage(imgDom.getDomFile(), hashSampledValue);
-		spImg = new SpatialImage(hashSampledValue, hashDomainTypes, creIm.getCompoImg());
-		ImagePlus img = fill.fill(spImg);
-		spImg.setImage(img);
-		ImageBorder imgBorder = new ImageBorder(spImg);
-		spImg.updateImage(imgBorder.getStackImage());
+	/**
+	 * Sets the interpolation mode of Z-stack images ({@link Interpolator#NEAREST_NEIGHBOR}
+	 * or {@link Interpolator#SHAPE_BASED}).
+	 *
+	 * @param interpolation the interpolation mode
+	 */
+	public void setInterpolation(int interpolation) {
+		this.interpolation = interpolation;
+	}
 
-		new ImageEdit(spImg);
+	/**
+	 * Sets the maximum number of voxels of the spatial image. If 0, there is no limit.
+	 *
+	 * @param voxelBudget the maximum number of voxels
+	 */
+	public void setVoxelBudget(long voxelBudget) {
+		this.voxelBudget = voxelBudget;
+	}
 
+	/**
+	 * Sets the voxel size of the spatial image. If 0, the voxel size of x axis of the image is used.
+	 *
+	 * @param voxelSize the voxel size of the spatial image
+	 */
+	public void setVoxelSize(double voxelSize) {
+		this.voxelSize = voxelSize;
+	}
+
+	/**
+	 * Sets whether holes are filled by the single-pass flood fill instead of the iterative labeling.
+	 *
+	 * @param floodFill the flag whether holes are filled by the single-pass flood fill
+	 */
+	public void setFloodFill(boolean floodFill) {
+		this.floodFill = floodFill;
+	}
+
+	/**
+	 * Sets the binary morphology operation applied to each domain image before hole filling,
+	 * and the radius of its structuring element.
+	 *
+	 * @param morphology the binary morphology operation
+	 * @param radius the radius of the structuring element
+	 */
+	public void setMorphology(int morphology, int radius) {
+		this.morphology = morphology;
+		this.morphologyRadius = radius;
+	}
+
+	/**
+	 * Sets the minimum number of voxels of a domain. Smaller domains are merged into
+	 * their dominant neighbors. If 0, no domain is merged.
+	 *
+	 * @param minDomainSize the minimum number of voxels of a domain
+	 */
+	public void setMinDomainSize(long minDomainSize) {
+		this.minDomainSize = minDomainSize;
+	}
+
+	/**
+	 * Sets whether the image is labeled and its membranes are added in bricks of
+	 * 32 x 32 x 32 voxels instead of raster order.
+	 *
+	 * @param bricked the flag whether the image is processed in bricks
+	 */
+	public void setBricked(boolean bricked) {
+		this.bricked = bricked;
+	}
+
+	/**
+	 * Sets whether the image is cropped to the bounding box of its foreground (non-zero
+	 * voxels), and the margin around the bounding box.
+	 *
+	 * @param autoCrop the flag whether the image is cropped
+	 * @param margin the margin around the bounding box in voxels
+	 */
+	public void setAutoCrop(boolean autoCrop, int margin) {
+		this.autoCrop = autoCrop;
+		this.cropMargin = margin;
+	}
+
+	/**
+	 * Sets the storage of the voxels of the finished spatial image ({@link SpatialImage#STORAGE_HEAP},
+	 * {@link SpatialImage#STORAGE_MAPPED} or {@link SpatialImage#STORAGE_DIRECT}).
+	 *
+	 * @param storage the storage of the voxels
+	 */
+	public void setStorage(int storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * Sets whether the samples of the SampledField are streamed from the spatial image to the
+	 * output file, so that the samples are never built as a String. If true, the SBML document
+	 * is neither printed to stdout nor validated, as the document in memory has no samples.
+	 *
+	 * @param streamingSamples the flag whether the samples are streamed
+	 */
+	public void setStreamingSamples(boolean streamingSamples) {
+		this.streamingSamples = streamingSamples;
+	}
+
+	/**
+	 * Sets the compression of the samples of the SampledField ({@link CompressionKind#uncompressed}
+	 * or {@link CompressionKind#deflated}).
+	 *
+	 * @param compression the compression of the samples
+	 */
+	public void setCompression(CompressionKind compression) {
+		this.compression = compression;
 	}
 
 	/**
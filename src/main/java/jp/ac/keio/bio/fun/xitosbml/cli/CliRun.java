@@ -3,6 +3,11 @@ package jp.ac.keio.bio.fun.xitosbml.cli;
 import java.io.File;
 import java.util.concurrent.Callable;
 
+import org.sbml.jsbml.ext.spatial.CompressionKind;
+
+import jp.ac.keio.bio.fun.xitosbml.image.BinaryMorphology;
+import jp.ac.keio.bio.fun.xitosbml.image.Interpolator;
+import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -30,6 +35,34 @@ public class CliRun implements Callable<Integer> {
 	String inputValue;
 	@Option(names = "-o", required = true, description = "The path to output XML file if input is image file")
 	String outputValue;
+	@Option(names = { "-c", "--connectivity" }, description = "The connectivity of adjacent pixels: 4 or 8 for 2D images, 6, 18 or 26 for 3D images (default: 4 for 2D and 6 for 3D)")
+	int connectivity = 0;
+	@Option(names = "--storage", description = "The storage of the voxels of finished spatial images: heap, mapped (memory-mapped temporary file) or direct (off-heap buffers); the images are still built on the heap (default: heap)")
+	String storage = "heap";
+	@Option(names = "--interpolation", description = "The interpolation of Z-stack images: nearest (nearest neighbor) or shape (shape-based interpolation of signed distance fields) (default: nearest)")
+	String interpolation = "nearest";
+	@Option(names = "--voxel-budget", description = "The maximum number of voxels of the spatial image; larger images are resampled to isotropic voxels by majority vote (default: 0, no limit)")
+	long voxelBudget = 0;
+	@Option(names = "--voxel-size", description = "The isotropic voxel size of the spatial image, in the unit of the input image (default: 0, the voxel size of x axis)")
+	double voxelSize = 0;
+	@Option(names = "--flood-fill", description = "Fill holes by a single-pass flood fill of the background from the border, which fills each hole with the pixel value of its majority adjacent domain, instead of the iterative labeling")
+	boolean floodFill = false;
+	@Option(names = "--morphology", description = "The binary morphology operation applied to each domain image before hole filling: none, erode, dilate, open (removes noise and thin bridges) or close (fills small gaps) (default: none)")
+	String morphology = "none";
+	@Option(names = "--morphology-radius", description = "The radius of the cubic structuring element of the binary morphology operation (default: 1)")
+	int morphologyRadius = 1;
+	@Option(names = "--min-domain-size", description = "The minimum number of voxels of a domain; smaller connected domains are merged into the adjacent domain which shares the most faces with them (default: 0, no merge)")
+	long minDomainSize = 0;
+	@Option(names = "--bricked", description = "Label the domains and add the membranes in bricks of 32 x 32 x 32 voxels with a halo, processed in parallel, instead of raster order; the result is identical")
+	boolean bricked = false;
+	@Option(names = "--crop", description = "Crop the spatial image to the bounding box of its foreground (non-zero voxels); the coordinates of the model are kept")
+	boolean autoCrop = false;
+	@Option(names = "--crop-margin", description = "The margin around the bounding box of the foreground in voxels, at least 1 (default: 1)")
+	int cropMargin = 1;
+	@Option(names = "--stream-samples", description = "Write the samples of the SampledField directly from the spatial image to the output file without building them as a string; the SBML document is neither printed nor validated")
+	boolean streamingSamples = false;
+	@Option(names = "--compression", description = "The compression of the samples of the SampledField: uncompressed or deflated (the samples text as a zlib stream compressed by chunks in parallel) (default: uncompressed)")
+	String compression = "uncompressed";
 
 	/**
 	 * Checks whether the "inputValue" is the path to an image or a directory
@@ -42,6 +75,18 @@ public class CliRun implements Callable<Integer> {
 
 		// Instantiating CliMainImgSpatial class
 		CliMainImgSpatial cliMain = new CliMainImgSpatial();
+		cliMain.setConnectivity(connectivity);
+		cliMain.setInterpolation(getInterpolation(interpolation));
+		cliMain.setVoxelBudget(voxelBudget);
+		cliMain.setVoxelSize(voxelSize);
+		cliMain.setFloodFill(floodFill);
+		cliMain.setMorphology(getMorphology(morphology), morphologyRadius);
+		cliMain.setMinDomainSize(minDomainSize);
+		cliMain.setBricked(bricked);
+		cliMain.setAutoCrop(autoCrop, cropMargin);
+		cliMain.setStorage(getStorage(storage));
+		cliMain.setStreamingSamples(streamingSamples);
+		cliMain.setCompression(getCompression(compression));
 
 		if (!folder.isDirectory()) {
 			// The input is path to an image file and hence can be processed directly
@@ -83,6 +128,70 @@ public class CliRun implements Callable<Integer> {
 		return 0;
 	}
 
+	/**
+	 * Converts the name of a storage to the storage of spatial images.
+	 *
+	 * @param name the name of a storage (heap, mapped or direct)
+	 * @return the storage of spatial images
+	 */
+	private static int getStorage(String name) {
+		if (name.equals("mapped"))
+			return SpatialImage.STORAGE_MAPPED;
+		if (name.equals("direct"))
+			return SpatialImage.STORAGE_DIRECT;
+		if (name.equals("heap"))
+			return SpatialImage.STORAGE_HEAP;
+		throw new IllegalArgumentException("Unsupported storage: " + name);
+	}
+
+	/**
+	 * Converts the name of an interpolation to the interpolation mode of Z-stack images.
+	 *
+	 * @param name the name of an interpolation (nearest or shape)
+	 * @return the interpolation mode of Z-stack images
+	 */
+	private static int getInterpolation(String name) {
+		if (name.equals("shape"))
+			return Interpolator.SHAPE_BASED;
+		if (name.equals("nearest"))
+			return Interpolator.NEAREST_NEIGHBOR;
+		throw new IllegalArgumentException("Unsupported interpolation: " + name);
+	}
+
+	/**
+	 * Converts the name of a binary morphology operation to the operation.
+	 *
+	 * @param name the name of an operation (none, erode, dilate, open or close)
+	 * @return the binary morphology operation
+	 */
+	private static int getMorphology(String name) {
+		if (name.equals("erode"))
+			return BinaryMorphology.ERODE;
+		if (name.equals("dilate"))
+			return BinaryMorphology.DILATE;
+		if (name.equals("open"))
+			return BinaryMorphology.OPEN;
+		if (name.equals("close"))
+			return BinaryMorphology.CLOSE;
+		if (name.equals("none"))
+			return BinaryMorphology.NONE;
+		throw new IllegalArgumentException("Unsupported morphology: " + name);
+	}
+
+	/**
+	 * Converts the name of a compression to the compression of the samples of a SampledField.
+	 *
+	 * @param name the name of a compression (uncompressed or deflated)
+	 * @return the compression of the samples
+	 */
+	private static CompressionKind getCompression(String name) {
+		if (name.equals("deflated"))
+			return CompressionKind.deflated;
+		if (name.equals("uncompressed"))
+			return CompressionKind.uncompressed;
+		throw new IllegalArgumentException("Unsupported compression: " + name);
+	}
+
 	/**
 	 * The main method which implements the execute(args) method for this class
 	 * 
@@ -15,6 +15,7 @@ import org.sbml.jsbml.ext.spatial.GeometryDefinition;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
 import math3d.Point3d;
 
 /**
@@ -142,135 +143,45 @@ public class AnalyticGeometryData extends ImageGeometryData {
 	 * The sub volume (domain) will written to the array in the specific order
 	 * specified in orderedList.
 	 * As each domain shape is represented as an equation (AST), the AST is
-	 * evaluated in this method by resolveDomain() to calculate the geometry of
-	 * each pixel.
+	 * compiled to a program of a stack machine ({@link AnalyticProgram}), which is
+	 * evaluated to calculate the geometry of each pixel. The rows of the image are
+	 * evaluated in parallel.
 	 *
 	 * @param orderedList the ordered list of AnalyticVolume
 	 */
 	private void setVolumeToArray(ArrayList<AnalyticVolume> orderedList){
-
-		for(int d = 0 ; d < depth ; d++){
-			for(int h = 0 ; h < height ; h++){
-				for(int w = 0 ; w < width ; w++){
-					for(AnalyticVolume av : orderedList){
-						if(resolveDomain(av.getMath(), w, h, d) == 1){				
-							raw[d * width * height + h * width + w] = (byte) (hashSampledValue.get(av.getDomainType()) & 0xFF);
-							break;
-						}				
-					}	
-				}	
-			}	
+		final int num = orderedList.size();
+		final AnalyticProgram[] programs = new AnalyticProgram[num];
+		final byte[] pixel = new byte[num];
+		int stackSize = 1;
+		for(int i = 0 ; i < num ; i++){
+			AnalyticVolume av = orderedList.get(i);
+			programs[i] = AnalyticProgram.compile(av.getMath());
+			pixel[i] = (byte) (hashSampledValue.get(av.getDomainType()) & 0xFF);
+			stackSize = Math.max(stackSize, programs[i].getStackSize());
 		}
-	}
-	
-	/**
-	 * Evaluate AST (Abstract Syntax Tree), which represents the shape of domain
-	 * as an equation. As each domain shape is represented as an equation (AST),
-	 * the AST has to be evaluated to calculate the geometry of each pixel.
-	 *
-	 * @param ast the AST (Abstract Syntax Tree) object, which represents the shape of domain
-	 * @param x the x coordinate
-	 * @param y the y coordinate
-	 * @param z the z coordinate
-	 * @return the evaluation result as a double value. If the equation is equality or inequality,
-	 * this method will return 1 on true, otherwise 0.
-	 */
-	private double resolveDomain(ASTNode ast, int x, int y, int z) {
-		
-		if (ast.isRelational()) { // relational
-			Type type = ast.getType();
-			switch (type) {
-			case RELATIONAL_GEQ:
-				if (resolveDomain(ast.getLeftChild(), x, y, z)
-						- resolveDomain(ast.getRightChild(), x, y, z) >= 0) {
-					return 1;
-				} else {
-					return 0;
-				}
-			case RELATIONAL_GT:
-				if (resolveDomain(ast.getLeftChild(), x, y, z)
-						- resolveDomain(ast.getRightChild(), x, y, z) > 0) {
-					return 1;
-				} else {
-					return 0;
-				}
-			case RELATIONAL_LEQ:
-				if (resolveDomain(ast.getLeftChild(), x, y, z)
-						- resolveDomain(ast.getRightChild(), x, y, z) <= 0) {
-					return 1;
-				} else {
-					return 0;
-				}
-			case RELATIONAL_LT:
-				if (resolveDomain(ast.getLeftChild(), x, y, z)
-						- resolveDomain(ast.getRightChild(), x, y, z) < 0) {
-					return 1;
-				} else {
-					return 0;
-				}
-			default:
-				System.err.println("Error at relational");
-				return 0;
-			}
-		} else if (ast.isOperator()) {// ast is operator
-			Type type = ast.getType();
-			switch (type) {
-			case PLUS:
-				return resolveDomain(ast.getLeftChild(), x, y, z)
-						+ resolveDomain(ast.getRightChild(), x, y, z);
-
-			case MINUS:
-				return resolveDomain(ast.getLeftChild(), x, y, z)
-						- resolveDomain(ast.getRightChild(), x, y, z);
 
-			case TIMES:
-				return resolveDomain(ast.getLeftChild(), x, y, z)
-						* resolveDomain(ast.getRightChild(), x, y, z);
-
-			case DIVIDE:
-				return resolveDomain(ast.getLeftChild(), x, y, z)
-						/ resolveDomain(ast.getRightChild(), x, y, z);
-
-			case POWER:
-				return Math.pow(resolveDomain(ast.getLeftChild(), x, y, z),
-						resolveDomain(ast.getRightChild(), x, y, z));
-			default:
-				System.err.println("Error at operator");
-				return 0;
-			}
-		} else if (ast.isReal()) {// ast is real number
-			return ast.getReal();
-		} else if (ast.isInteger()) {// ast is integer
-			return ast.getInteger();
-		} else if (ast.isConstant()) {// ast is constant
-			Type type = ast.getType();
-			switch (type) {
-			case CONSTANT_E:
-				return Math.E;
-			case CONSTANT_PI:
-				return Math.PI;
-			default:
-				break;
-			}
-		} else if(ast.isFunction()) {
-			if(ast.getType() == Type.FUNCTION_POWER){
-				return Math.pow(resolveDomain(ast.getLeftChild(), x, y, z), resolveDomain(ast.getRightChild(), x, y, z));
-			}
-		} else {// variable		
-			String var = ast.getName();
-			if (var.equals("x")) {
-				return x * delta.x - dispCoord.x;
-			} else if (var.equals("y")) {
-				return y * delta.y - dispCoord.y;
-			} else if (var.equals("z")) {
-				return z * delta.z - dispCoord.z;
-			} else {
-				System.err.println("can't find name");
-				return 0;
+		final int maxStack = stackSize;
+		ParallelUtil.forEach(0, depth * height, ParallelUtil.getParallelism(), new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				double[] stack = new double[maxStack];
+				for(int row = from ; row < to ; row++){
+					int d = row / height, h = row % height;
+					double z = d * delta.z - dispCoord.z;
+					double y = h * delta.y - dispCoord.y;
+					for(int w = 0 ; w < width ; w++){
+						double x = w * delta.x - dispCoord.x;
+						for(int i = 0 ; i < num ; i++){
+							if(programs[i].evaluate(x, y, z, stack) == 1){
+								raw[row * width + w] = pixel[i];
+								break;
+							}
+						}
+					}
+				}
 			}
-		}
-		
-		return 0;
+		});
 	}
 	
 	/**
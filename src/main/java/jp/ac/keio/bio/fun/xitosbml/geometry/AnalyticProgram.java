@@ -0,0 +1,345 @@
+package jp.ac.keio.bio.fun.xitosbml.geometry;
+
+import java.util.Arrays;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.ASTNode.Type;
+
+/**
+ * The class AnalyticProgram, which is the equation (AST) of an AnalyticVolume compiled to a flat
+ * program of a stack machine. The AST is translated once, and the program is evaluated for each
+ * voxel without walking the AST, so that neither the type of each node nor the name of
+ * a variable is looked up again. The nodes of the AST are translated in the same way as they were
+ * evaluated by AnalyticGeometryData: the relational operators (&gt;=, &gt;, &lt;=, &lt;) return 1 on
+ * true and 0 otherwise, the operators and the power function take their left and right child,
+ * the variables x, y and z are the coordinates, and any other node is 0. A subtree without
+ * variables is folded to a constant, which is computed by the same operations, so that the
+ * program returns exactly the same value as the AST.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class AnalyticProgram {
+
+	/** Pushes the next constant. */
+	private static final int CONST = 0;
+
+	/** Pushes the x coordinate. */
+	private static final int X = 1;
+
+	/** Pushes the y coordinate. */
+	private static final int Y = 2;
+
+	/** Pushes the z coordinate. */
+	private static final int Z = 3;
+
+	/** Adds the top two values. */
+	private static final int ADD = 4;
+
+	/** Subtracts the top value from the second value. */
+	private static final int SUB = 5;
+
+	/** Multiplies the top two values. */
+	private static final int MUL = 6;
+
+	/** Divides the second value by the top value. */
+	private static final int DIV = 7;
+
+	/** Raises the second value to the power of the top value. */
+	private static final int POW = 8;
+
+	/** Compares the second value with the top value (&gt;=). */
+	private static final int GEQ = 9;
+
+	/** Compares the second value with the top value (&gt;). */
+	private static final int GT = 10;
+
+	/** Compares the second value with the top value (&lt;=). */
+	private static final int LEQ = 11;
+
+	/** Compares the second value with the top value (&lt;). */
+	private static final int LT = 12;
+
+	/** The instructions of the program (postfix order). */
+	private int[] code;
+
+	/** The constants, in the order which they are pushed. */
+	private double[] constants;
+
+	/** The maximum number of values on the stack. */
+	private int stackSize;
+
+	/** The number of instructions while compiling. */
+	private int codeLength;
+
+	/** The number of constants while compiling. */
+	private int constantLength;
+
+	/**
+	 * The class Node, which is a node of the expression while compiling. A node without
+	 * variables is a constant.
+	 */
+	private static class Node {
+
+		/** The instruction of the node. */
+		int op;
+
+		/** The value of a constant. */
+		double value;
+
+		/** The left operand. */
+		Node left;
+
+		/** The right operand. */
+		Node right;
+
+		/**
+		 * Instantiates a new node of a constant.
+		 *
+		 * @param value the value of the constant
+		 */
+		Node(double value) {
+			this.op = CONST;
+			this.value = value;
+		}
+
+		/**
+		 * Instantiates a new node of given instruction.
+		 *
+		 * @param op the instruction
+		 * @param left the left operand, or null
+		 * @param right the right operand, or null
+		 */
+		Node(int op, Node left, Node right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Instantiates a new program from the translated expression.
+	 *
+	 * @param root the root node of the expression
+	 */
+	private AnalyticProgram(Node root) {
+		code = new int[16];
+		constants = new double[16];
+		stackSize = emit(root, 0);
+		code = Arrays.copyOf(code, codeLength);
+		constants = Arrays.copyOf(constants, constantLength);
+	}
+
+	/**
+	 * Compiles given AST (Abstract Syntax Tree), which represents the shape of domain as an
+	 * equation. The AST should be rearranged by AnalyticGeometryData before it is compiled.
+	 *
+	 * @param ast the AST object, which represents the shape of domain
+	 * @return the compiled program
+	 */
+	public static AnalyticProgram compile(ASTNode ast) {
+		return new AnalyticProgram(translate(ast));
+	}
+
+	/**
+	 * Translates given AST to a node of the expression, and folds the constants.
+	 *
+	 * @param ast the AST object
+	 * @return the node of the expression
+	 */
+	private static Node translate(ASTNode ast) {
+		if (ast.isRelational()) {
+			switch (ast.getType()) {
+			case RELATIONAL_GEQ:
+				return binary(GEQ, ast);
+			case RELATIONAL_GT:
+				return binary(GT, ast);
+			case RELATIONAL_LEQ:
+				return binary(LEQ, ast);
+			case RELATIONAL_LT:
+				return binary(LT, ast);
+			default:
+				System.err.println("Error at relational");
+				return new Node(0);
+			}
+		} else if (ast.isOperator()) {
+			switch (ast.getType()) {
+			case PLUS:
+				return binary(ADD, ast);
+			case MINUS:
+				return binary(SUB, ast);
+			case TIMES:
+				return binary(MUL, ast);
+			case DIVIDE:
+				return binary(DIV, ast);
+			case POWER:
+				return binary(POW, ast);
+			default:
+				System.err.println("Error at operator");
+				return new Node(0);
+			}
+		} else if (ast.isReal()) {
+			return new Node(ast.getReal());
+		} else if (ast.isInteger()) {
+			return new Node(ast.getInteger());
+		} else if (ast.isConstant()) {
+			switch (ast.getType()) {
+			case CONSTANT_E:
+				return new Node(Math.E);
+			case CONSTANT_PI:
+				return new Node(Math.PI);
+			default:
+				return new Node(0);
+			}
+		} else if (ast.isFunction()) {
+			if (ast.getType() == Type.FUNCTION_POWER)
+				return binary(POW, ast);
+			return new Node(0);
+		} else {
+			String var = ast.getName();
+			if (var.equals("x")) {
+				return new Node(X, null, null);
+			} else if (var.equals("y")) {
+				return new Node(Y, null, null);
+			} else if (var.equals("z")) {
+				return new Node(Z, null, null);
+			} else {
+				System.err.println("can't find name");
+				return new Node(0);
+			}
+		}
+	}
+
+	/**
+	 * Translates the left and the right child of given AST to a node of given binary instruction.
+	 * If both children are constants, the node is folded to a constant.
+	 *
+	 * @param op the binary instruction
+	 * @param ast the AST object
+	 * @return the node of the expression
+	 */
+	private static Node binary(int op, ASTNode ast) {
+		Node left = translate(ast.getLeftChild());
+		Node right = translate(ast.getRightChild());
+		if (left.op == CONST && right.op == CONST)
+			return new Node(apply(op, left.value, right.value));
+		return new Node(op, left, right);
+	}
+
+	/**
+	 * Applies given binary instruction to given values. The relational instructions compare
+	 * the difference of the values with 0, and return 1 on true, otherwise 0.
+	 *
+	 * @param op the binary instruction
+	 * @param left the left value
+	 * @param right the right value
+	 * @return the result
+	 */
+	private static double apply(int op, double left, double right) {
+		switch (op) {
+		case ADD:
+			return left + right;
+		case SUB:
+			return left - right;
+		case MUL:
+			return left * right;
+		case DIV:
+			return left / right;
+		case POW:
+			return Math.pow(left, right);
+		case GEQ:
+			return left - right >= 0 ? 1 : 0;
+		case GT:
+			return left - right > 0 ? 1 : 0;
+		case LEQ:
+			return left - right <= 0 ? 1 : 0;
+		case LT:
+			return left - right < 0 ? 1 : 0;
+		default:
+			throw new IllegalArgumentException("Unsupported instruction: " + op);
+		}
+	}
+
+	/**
+	 * Emits the instructions of given node in postfix order.
+	 *
+	 * @param node the node of the expression
+	 * @param depth the number of values on the stack before the node
+	 * @return the maximum number of values on the stack while the node is evaluated
+	 */
+	private int emit(Node node, int depth) {
+		int max = depth + 1;
+		if (node.left != null) {
+			max = Math.max(emit(node.left, depth), emit(node.right, depth + 1));
+		} else if (node.op == CONST) {
+			if (constantLength == constants.length)
+				constants = Arrays.copyOf(constants, constantLength * 2);
+			constants[constantLength++] = node.value;
+		}
+		if (codeLength == code.length)
+			code = Arrays.copyOf(code, codeLength * 2);
+		code[codeLength++] = node.op;
+		return max;
+	}
+
+	/**
+	 * Evaluates the program at given coordinates.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param stack the stack, whose length is at least {@link #getStackSize()}
+	 * @return the evaluation result as a double value. If the equation is equality or inequality,
+	 * this method will return 1 on true, otherwise 0.
+	 */
+	public double evaluate(double x, double y, double z, double[] stack) {
+		int sp = 0, c = 0;
+		for (int pc = 0; pc < code.length; pc++) {
+			switch (code[pc]) {
+			case CONST:
+				stack[sp++] = constants[c++];
+				break;
+			case X:
+				stack[sp++] = x;
+				break;
+			case Y:
+				stack[sp++] = y;
+				break;
+			case Z:
+				stack[sp++] = z;
+				break;
+			case ADD:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] + stack[sp];
+				break;
+			case SUB:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] - stack[sp];
+				break;
+			case MUL:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] * stack[sp];
+				break;
+			case DIV:
+				sp--;
+				stack[sp - 1] = stack[sp - 1] / stack[sp];
+				break;
+			default:
+				sp--;
+				stack[sp - 1] = apply(code[pc], stack[sp - 1], stack[sp]);
+				break;
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Gets the maximum number of values on the stack while the program is evaluated.
+	 *
+	 * @return the size of the stack
+	 */
+	public int getStackSize() {
+		return stackSize;
+	}
+}
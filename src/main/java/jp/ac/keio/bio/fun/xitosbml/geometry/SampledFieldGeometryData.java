@@ -1,7 +1,9 @@
 package jp.ac.keio.bio.fun.xitosbml.geometry;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.sbml.jsbml.ListOf;
-import org.sbml.jsbml.ext.spatial.CompressionKind;
 import org.sbml.jsbml.ext.spatial.DataKind;
 import org.sbml.jsbml.ext.spatial.Geometry;
 import org.sbml.jsbml.ext.spatial.GeometryDefinition;
@@ -12,6 +14,7 @@ import org.sbml.jsbml.ext.spatial.SampledVolume;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
 
 
 /**
@@ -85,8 +88,6 @@ public class SampledFieldGeometryData extends ImageGeometryData {
 			System.err.println("not able to compute multiple sampledfields at this point");
 
 		SampledField sf = losf.get(0);
-		if(sf.getDataType() != DataKind.UINT8)
-			System.err.println("Image data is automatically changed to 8 bit image");
 		getSize(sf);
 		getArray(sf);
 
@@ -128,38 +129,109 @@ public class SampledFieldGeometryData extends ImageGeometryData {
 	
 	/**
 	 * Create a byte array (raw), which will be used to store the value of an image.
-     * Data compression is currently not supported.
+	 * The samples are read by {@link SampledFieldReader}, which inflates deflated samples and
+	 * reads the samples of any data type. The samples of an uint8 SampledField are used as
+	 * they are, if the sampled values are pixel values of an 8 bit image. Otherwise, each
+	 * sample is converted to the pixel value of its SampledVolume ({@link #toPixels(SampledFieldReader)}).
 	 *
 	 * @param sf the sampled field object
 	 */
 	private void getArray(SampledField sf){
-		String[] data;
-		if(sf.getCompression() == CompressionKind.uncompressed)
-			data = sf.getSamples().split(" ");
+		SampledFieldReader reader = new SampledFieldReader(sf);
+		reader.read();
+		if(reader.getDataType() == DataKind.UINT8 && isPixelValues())
+			raw = reader.getBytes();
 		else
-			//TODO add uncompression for sample array
-			data = sf.getSamples().split(" ");
-		
-		raw = stringToByte(data);
+			raw = toPixels(reader);
+	}
+
+	/**
+	 * Checks if all SampledVolumes have a sampled value which is a pixel value of an 8 bit
+	 * image (integer between 0 and 255) and no range of values.
+	 *
+	 * @return true, if all sampled values are pixel values of an 8 bit image
+	 */
+	private boolean isPixelValues(){
+		ListOf<SampledVolume> losv = sfg.getListOfSampledVolumes();
+		for(int i = 0 ; i < losv.size() ; i++){
+			SampledVolume sv = losv.get(i);
+			if(!sv.isSetSampledValue() || sv.isSetMinValue() || sv.isSetMaxValue())
+				return false;
+			double value = sv.getSampledValue();
+			if(value != Math.rint(value) || value < 0 || value > 255)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Converts the samples to the pixel values of an 8 bit image. Each sample is converted to
+	 * the pixel value of the SampledVolume which has the same sampled value, or whose range
+	 * (minValue to maxValue) contains the sample. A sample of no SampledVolume becomes 0.
+	 * If the sampled values are not pixel values of an 8 bit image, the pixel value of each
+	 * SampledVolume is calculated by its order (in the same way as AnalyticGeometry), and
+	 * the hashSampledValue is updated.
+	 *
+	 * @param reader the reader of the samples
+	 * @return the raw data (1D array) of sampled field
+	 */
+	private byte[] toPixels(final SampledFieldReader reader){
+		ListOf<SampledVolume> losv = sfg.getListOfSampledVolumes();
+		final List<SampledVolume> volumes = new ArrayList<SampledVolume>();
+		for(int i = 0 ; i < losv.size() ; i++)
+			volumes.add(losv.get(i));
+		final int num = volumes.size();
+		final byte[] data = new byte[reader.getNumSamples()];
+		if(num == 0)
+			return data;
+		final byte[] pixel = new byte[num];
+		if(isPixelValues()){
+			for(int i = 0 ; i < num ; i++)
+				pixel[i] = (byte) volumes.get(i).getSampledValue();
+		} else {
+			System.err.println("Sampled values are automatically changed to pixel values of 8 bit image");
+			int intervalVal = num > 1 ? 255 / (num - 1) : 255;
+			for(int i = 0 ; i < num ; i++){
+				pixel[i] = (byte) (i * intervalVal);
+				hashSampledValue.put(volumes.get(i).getDomainType(), i * intervalVal);
+			}
+		}
+
+		ParallelUtil.forEach(0, data.length, ParallelUtil.getParallelism(), new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				// the SampledVolume of the previous sample is checked first
+				int last = 0;
+				for(int i = from ; i < to ; i++){
+					double value = reader.getValue(i);
+					if(!contains(volumes.get(last), value)){
+						last = -1;
+						for(int k = 0 ; k < num && last < 0 ; k++)
+							if(contains(volumes.get(k), value)) last = k;
+						if(last < 0){
+							last = 0;
+							continue;
+						}
+					}
+					data[i] = pixel[last];
+				}
+			}
+		});
+		return data;
 	}
 
 	/**
-     * Convert String array, which contains pixel values of sampled field as String,
-	 * to 1D byte array. Currently this implementation expects that the String
-	 * array only contains "-255" to "255" values.
+	 * Checks if given SampledVolume contains given sample value. A SampledVolume contains the
+	 * values between its minValue and maxValue (inclusive) if they are set, and its sampled value.
 	 *
-	 * @param data the String array which contains pixel values as String
-	 * @return raw the raw data (1D array) of sampled field.
+	 * @param sv the SampledVolume
+	 * @param value the sample value
+	 * @return true, if the SampledVolume contains the value
 	 */
-	private byte[] stringToByte(String[] data){		
-		raw = new byte[data.length];
-		
-		//TODO need to resolve when original image data is not 8 bit
-		for(int i = 0, length = data.length; i < length;i++){
-			raw[i] = (byte) Integer.parseInt(data[i]);
-		}	
-		
-		return raw;
+	private static boolean contains(SampledVolume sv, double value){
+		if(sv.isSetMinValue() && sv.isSetMaxValue())
+			return sv.getMinValue() <= value && value <= sv.getMaxValue();
+		return sv.isSetSampledValue() && sv.getSampledValue() == value;
 	}
 
 	/**
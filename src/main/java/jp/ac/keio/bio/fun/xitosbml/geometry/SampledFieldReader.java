@@ -0,0 +1,223 @@
+package jp.ac.keio.bio.fun.xitosbml.geometry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import org.sbml.jsbml.ext.spatial.CompressionKind;
+import org.sbml.jsbml.ext.spatial.DataKind;
+import org.sbml.jsbml.ext.spatial.SampledField;
+
+import jp.ac.keio.bio.fun.xitosbml.util.NumericArrayParser;
+
+/**
+ * The class SampledFieldReader, which reads the samples of a SampledField into a primitive array
+ * of its data type. The samples text is parsed by {@link NumericArrayParser}, so that neither a String
+ * array of the samples nor a String of each value is created. The array depends on the data type:
+ * <ul>
+ *     <li>uint8: byte[] ({@link #getBytes()})</li>
+ *     <li>uint16: short[] ({@link #getShorts()})</li>
+ *     <li>uint32: int[] ({@link #getInts()})</li>
+ *     <li>float: float[] ({@link #getFloats()})</li>
+ *     <li>double and others: double[] ({@link #getDoubles()})</li>
+ * </ul>
+ * The unsigned values are stored in the signed arrays of the same size, and {@link #getValue(int)}
+ * returns the value of any data type. If the samples are deflated, the samples are the bytes of
+ * a zlib stream of the samples text, which is parsed while it is inflated.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class SampledFieldReader {
+
+	/** The sampled field object. */
+	private SampledField sf;
+
+	/** The data type of the samples. */
+	private DataKind dataType;
+
+	/** The number of samples. */
+	private int numSamples;
+
+	/** The samples of uint8 data type. */
+	private byte[] bytes;
+
+	/** The samples of uint16 data type. */
+	private short[] shorts;
+
+	/** The samples of uint32 data type. */
+	private int[] ints;
+
+	/** The samples of float data type. */
+	private float[] floats;
+
+	/** The samples of double data type. */
+	private double[] doubles;
+
+	/**
+	 * Instantiates a new sampled field reader for given SampledField. The number of samples
+	 * is the product of numSamples1, numSamples2 and numSamples3 (1 if not set).
+	 *
+	 * @param sf the sampled field object
+	 */
+	public SampledFieldReader(SampledField sf) {
+		this.sf = sf;
+		this.dataType = sf.getDataType();
+		int depth = sf.isSetNumSamples3() ? sf.getNumSamples3() : 1;
+		this.numSamples = sf.getNumSamples1() * sf.getNumSamples2() * depth;
+	}
+
+	/**
+	 * Reads the samples of the SampledField into the array of its data type.
+	 *
+	 * @throws IllegalArgumentException if the samples are not valid or fewer than the number of samples
+	 */
+	public void read() {
+		try {
+			if (sf.getCompression() != CompressionKind.deflated) {
+				readText(new NumericArrayParser(sf.getSamples()));
+				return;
+			}
+			InputStream in = new InflaterInputStream(new ByteArrayInputStream(readCompressed()));
+			readText(new NumericArrayParser(new InputStreamReader(in, StandardCharsets.US_ASCII)));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Deflated samples of SampledField " + sf.getId() + " are not valid", e);
+		}
+	}
+
+	/**
+	 * Reads the bytes of the zlib stream (unsigned integers) from the samples text.
+	 *
+	 * @return the zlib stream
+	 * @throws IOException never, as the samples text is a String
+	 */
+	private byte[] readCompressed() throws IOException {
+		NumericArrayParser parser = new NumericArrayParser(sf.getSamples());
+		byte[] compressed = new byte[sf.isSetSamplesLength() ? Math.max(sf.getSamplesLength(), 16) : 1 << 16];
+		int num = 0, size;
+		while ((size = parser.read(compressed, num, compressed.length - num)) > 0) {
+			num += size;
+			if (num == compressed.length)
+				compressed = Arrays.copyOf(compressed, num * 2);
+		}
+		return Arrays.copyOf(compressed, num);
+	}
+
+	/**
+	 * Reads the samples from given parser into the array of the data type. The values after
+	 * the number of samples are ignored.
+	 *
+	 * @param parser the parser of the samples text
+	 * @throws IOException if the samples text can not be read (e.g. invalid deflated samples)
+	 * @throws IllegalArgumentException if the text has fewer values than the number of samples
+	 */
+	private void readText(NumericArrayParser parser) throws IOException {
+		int num;
+		if (dataType == DataKind.UINT8) {
+			bytes = new byte[numSamples];
+			num = parser.read(bytes, 0, numSamples);
+		} else if (dataType == DataKind.UINT16) {
+			shorts = new short[numSamples];
+			num = parser.read(shorts, 0, numSamples);
+		} else if (dataType == DataKind.UINT32) {
+			ints = new int[numSamples];
+			num = parser.read(ints, 0, numSamples);
+		} else if (dataType == DataKind.FLOAT) {
+			floats = new float[numSamples];
+			num = parser.read(floats, 0, numSamples);
+		} else {
+			doubles = new double[numSamples];
+			num = parser.read(doubles, 0, numSamples);
+		}
+		if (num < numSamples)
+			throw new IllegalArgumentException("SampledField " + sf.getId() + " has " + num + " samples, but "
+					+ numSamples + " samples are expected");
+	}
+
+	/**
+	 * Gets the value of given sample of any data type. The unsigned values are converted
+	 * to positive values.
+	 *
+	 * @param index the index of the sample
+	 * @return the value of the sample
+	 */
+	public double getValue(int index) {
+		if (bytes != null)
+			return bytes[index] & 0xff;
+		if (shorts != null)
+			return shorts[index] & 0xffff;
+		if (ints != null)
+			return ints[index] & 0xffffffffL;
+		if (floats != null)
+			return floats[index];
+		return doubles[index];
+	}
+
+	/**
+	 * Gets the data type of the samples.
+	 *
+	 * @return the data type
+	 */
+	public DataKind getDataType() {
+		return dataType;
+	}
+
+	/**
+	 * Gets the number of samples.
+	 *
+	 * @return the number of samples
+	 */
+	public int getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	 * Gets the samples of uint8 data type.
+	 *
+	 * @return the samples, or null if the data type is not uint8
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the samples of uint16 data type.
+	 *
+	 * @return the samples, or null if the data type is not uint16
+	 */
+	public short[] getShorts() {
+		return shorts;
+	}
+
+	/**
+	 * Gets the samples of uint32 data type.
+	 *
+	 * @return the samples, or null if the data type is not uint32
+	 */
+	public int[] getInts() {
+		return ints;
+	}
+
+	/**
+	 * Gets the samples of float data type.
+	 *
+	 * @return the samples, or null if the data type is not float
+	 */
+	public float[] getFloats() {
+		return floats;
+	}
+
+	/**
+	 * Gets the samples of double (or other) data type.
+	 *
+	 * @return the samples, or null if the data type is uint8, uint16, uint32 or float
+	 */
+	public double[] getDoubles() {
+		return doubles;
+	}
+}
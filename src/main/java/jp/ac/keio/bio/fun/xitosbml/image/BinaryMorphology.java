@@ -0,0 +1,277 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
+
+/**
+ * The class BinaryMorphology, which applies binary morphology operations (erosion, dilation,
+ * opening and closing) to the raw data (1D array) of an image in place. A non-zero pixel is a
+ * foreground pixel, and a pixel which is set to the foreground by an operation gets 255.
+ * The structuring element is a box of (2 * radiusX + 1) x (2 * radiusY + 1) x (2 * radiusZ + 1)
+ * pixels, which is separable, so that each operation is applied along x, then along y and then
+ * along z axis. Each line is processed by a forward and a backward scan of the runs of foreground
+ * pixels, so that the cost does not depend on the size of the structuring element. The lines of
+ * each pass are processed in parallel, and only one buffer of a line is allocated for each thread.
+ * The pixels outside of an image are ignored, so that a domain which touches the border of
+ * an image is not eroded from the border.
+ * Opening removes small noise and thin bridges of domains, and closing fills small gaps.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class BinaryMorphology {
+
+	/** The operation which does nothing. */
+	public static final int NONE = 0;
+
+	/** The operation which erodes the foreground. */
+	public static final int ERODE = 1;
+
+	/** The operation which dilates the foreground. */
+	public static final int DILATE = 2;
+
+	/** The operation which erodes and then dilates the foreground (opening). */
+	public static final int OPEN = 3;
+
+	/** The operation which dilates and then erodes the foreground (closing). */
+	public static final int CLOSE = 4;
+
+	/** The pixel value of a foreground pixel set by an operation. */
+	private static final byte FOREGROUND = (byte) 255;
+
+	/** The width of an image. */
+	private int width;
+
+	/** The height of an image. */
+	private int height;
+
+	/** The depth of an image. */
+	private int depth;
+
+	/** The radius of the structuring element along x axis. */
+	private int radiusX = 1;
+
+	/** The radius of the structuring element along y axis. */
+	private int radiusY = 1;
+
+	/** The radius of the structuring element along z axis. */
+	private int radiusZ = 1;
+
+	/** The maximum number of threads. */
+	private int parallelism = ParallelUtil.getParallelism();
+
+	/**
+	 * Instantiates a new binary morphology for an image of given size. The structuring
+	 * element is a box of 3 x 3 x 3 pixels (3 x 3 pixels for a 2D image).
+	 *
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 */
+	public BinaryMorphology(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets the structuring element, which is a box of given radius along each axis.
+	 * If the radius of an axis is 0, the operation is not applied along the axis.
+	 *
+	 * @param radiusX the radius along x axis
+	 * @param radiusY the radius along y axis
+	 * @param radiusZ the radius along z axis
+	 */
+	public void setStructuringElement(int radiusX, int radiusY, int radiusZ) {
+		this.radiusX = Math.max(0, radiusX);
+		this.radiusY = Math.max(0, radiusY);
+		this.radiusZ = Math.max(0, radiusZ);
+	}
+
+	/**
+	 * Sets the structuring element, which is a cube of given radius.
+	 *
+	 * @param radius the radius along each axis
+	 */
+	public void setStructuringElement(int radius) {
+		setStructuringElement(radius, radius, radius);
+	}
+
+	/**
+	 * Applies given operation to the raw data (1D array) of an image in place.
+	 *
+	 * @param operation the operation ({@link #NONE}, {@link #ERODE}, {@link #DILATE}, {@link #OPEN} or {@link #CLOSE})
+	 * @param raw the raw data (1D array) of an image
+	 * @throws IllegalArgumentException if the operation is not supported
+	 */
+	public void apply(int operation, byte[] raw) {
+		switch (operation) {
+		case NONE:
+			break;
+		case ERODE:
+			erode(raw);
+			break;
+		case DILATE:
+			dilate(raw);
+			break;
+		case OPEN:
+			open(raw);
+			break;
+		case CLOSE:
+			close(raw);
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported morphology operation: " + operation);
+		}
+	}
+
+	/**
+	 * Erodes the foreground of the raw data (1D array) of an image in place. A pixel stays in the
+	 * foreground if all pixels in the structuring element around it are in the foreground.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 */
+	public void erode(byte[] raw) {
+		transform(raw, false);
+	}
+
+	/**
+	 * Dilates the foreground of the raw data (1D array) of an image in place. A pixel is set to the
+	 * foreground if any pixel in the structuring element around it is in the foreground.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 */
+	public void dilate(byte[] raw) {
+		transform(raw, true);
+	}
+
+	/**
+	 * Opens the foreground of the raw data (1D array) of an image in place (erosion followed by dilation).
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 */
+	public void open(byte[] raw) {
+		erode(raw);
+		dilate(raw);
+	}
+
+	/**
+	 * Closes the foreground of the raw data (1D array) of an image in place (dilation followed by erosion).
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 */
+	public void close(byte[] raw) {
+		dilate(raw);
+		erode(raw);
+	}
+
+	/**
+	 * Erodes or dilates the foreground along x, y and z axis. As a dilation is an erosion of the
+	 * background, both operations are done by the same scans of lines.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param dilation true for a dilation, false for an erosion
+	 */
+	private void transform(final byte[] raw, final boolean dilation) {
+		final int slice = width * height;
+		if (radiusX > 0) {
+			ParallelUtil.forEach(0, depth, parallelism, new ParallelUtil.RangeTask() {
+				@Override
+				public void run(int from, int to) {
+					Line line = new Line(width);
+					for (int d = from; d < to; d++) {
+						for (int h = 0; h < height; h++)
+							line.transform(raw, d * slice + h * width, 1, width, radiusX, dilation);
+					}
+				}
+			});
+		}
+		if (radiusY > 0) {
+			ParallelUtil.forEach(0, depth, parallelism, new ParallelUtil.RangeTask() {
+				@Override
+				public void run(int from, int to) {
+					Line line = new Line(height);
+					for (int d = from; d < to; d++) {
+						for (int w = 0; w < width; w++)
+							line.transform(raw, d * slice + w, width, height, radiusY, dilation);
+					}
+				}
+			});
+		}
+		if (radiusZ > 0 && depth > 1) {
+			ParallelUtil.forEach(0, height, parallelism, new ParallelUtil.RangeTask() {
+				@Override
+				public void run(int from, int to) {
+					Line line = new Line(depth);
+					for (int h = from; h < to; h++) {
+						for (int w = 0; w < width; w++)
+							line.transform(raw, h * width + w, slice, depth, radiusZ, dilation);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * The class Line, which erodes or dilates a line of pixels. The buffers are reused for each line.
+	 */
+	private static class Line {
+
+		/** The flags whether each pixel of a line is in the foreground. */
+		private boolean[] foreground;
+
+		/** The length of the run of eroded pixels ending at each pixel in the forward scan. */
+		private int[] run;
+
+		/**
+		 * Instantiates a new line for lines of given length.
+		 *
+		 * @param length the length of a line
+		 */
+		private Line(int length) {
+			foreground = new boolean[length];
+			run = new int[length];
+		}
+
+		/**
+		 * Erodes or dilates a line of given 1D array in place. The line starts from given index,
+		 * and each pixel of the line is separated by given stride. For an erosion, a pixel stays in
+		 * the foreground if the runs of foreground pixels before and after the pixel are longer than
+		 * the radius. For a dilation, the same is applied to the background.
+		 *
+		 * @param raw the raw data (1D array) of an image
+		 * @param start the index of the first pixel of the line
+		 * @param stride the stride between pixels of the line
+		 * @param length the length of the line
+		 * @param radius the radius of the structuring element along the line
+		 * @param dilation true for a dilation, false for an erosion
+		 */
+		private void transform(byte[] raw, int start, int stride, int length, int radius, boolean dilation) {
+			// a run which starts at the border of an image is not limited by the border
+			int inf = length + radius + 1;
+			int count = inf;
+			for (int i = 0; i < length; i++) {
+				foreground[i] = raw[start + i * stride] != 0;
+				count = foreground[i] != dilation ? Math.min(count + 1, inf) : 0;
+				run[i] = count;
+			}
+			count = inf;
+			for (int i = length - 1; i >= 0; i--) {
+				count = foreground[i] != dilation ? Math.min(count + 1, inf) : 0;
+				boolean kept = Math.min(run[i], count) > radius;
+				boolean value = kept != dilation;
+				if (value != foreground[i])
+					raw[start + i * stride] = value ? FOREGROUND : 0;
+			}
+		}
+	}
+
+	/**
+	 * Sets the maximum number of threads. If 1, the operation is applied on the calling thread.
+	 *
+	 * @param parallelism the maximum number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+}
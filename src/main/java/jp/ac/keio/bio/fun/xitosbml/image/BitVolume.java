@@ -0,0 +1,321 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.Arrays;
+
+/**
+ * The class BitVolume, which is a binary mask of a spatial image packed in a long array.
+ * Each voxel is one bit, so that a mask costs 1/8 of the raw data (1D array) of an image
+ * and 1/32 of an int array. The voxels are indexed with long values in raster order
+ * ((d * height + h) * width + w), and the logical operations (and, andNot) and
+ * counting (popcount) are applied to 64 voxels per operation.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class BitVolume {
+
+	/** The width of a volume. */
+	private int width;
+
+	/** The height of a volume. */
+	private int height;
+
+	/** The depth of a volume. */
+	private int depth;
+
+	/** The number of voxels. */
+	private long size;
+
+	/** The bits of voxels. The bit i of the word k is the voxel of index 64 * k + i. */
+	private long[] words;
+
+	/**
+	 * Instantiates a new bit volume of given size, in which all voxels are cleared.
+	 *
+	 * @param width the width of a volume
+	 * @param height the height of a volume
+	 * @param depth the depth of a volume
+	 */
+	public BitVolume(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.size = (long) width * height * depth;
+		this.words = new long[(int) ((size + 63) >>> 6)];
+	}
+
+	/**
+	 * Creates the mask of the voxels which have given pixel value in given raw data (1D array).
+	 * Each word is packed from 64 voxels at once.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @param pixVal the pixel value
+	 * @return the mask of the voxels which have the pixel value
+	 */
+	public static BitVolume of(byte[] raw, int width, int height, int depth, byte pixVal) {
+		return of(raw, 0, width, height, depth, pixVal);
+	}
+
+	/**
+	 * Creates the mask of the voxels which have given pixel value in the part of given raw
+	 * data (1D array) which starts at given offset, e.g. some slices of an image.
+	 * Each word is packed from 64 voxels at once.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param offset the index of the first voxel of the mask in the raw data
+	 * @param width the width of the mask
+	 * @param height the height of the mask
+	 * @param depth the depth of the mask
+	 * @param pixVal the pixel value
+	 * @return the mask of the voxels which have the pixel value
+	 */
+	public static BitVolume of(byte[] raw, int offset, int width, int height, int depth, byte pixVal) {
+		return pack(raw, offset, width, height, depth, pixVal, true);
+	}
+
+	/**
+	 * Creates the mask of the voxels which have given pixel value in given volume. The volume
+	 * is read slice by slice ({@link VoxelVolume#getSlice(int, byte[])}), so that it is not
+	 * copied to one array of the whole image in any storage.
+	 *
+	 * @param volume the volume of an image
+	 * @param pixVal the pixel value
+	 * @return the mask of the voxels which have the pixel value
+	 */
+	public static BitVolume of(VoxelVolume volume, byte pixVal) {
+		int num = volume.getWidth() * volume.getHeight();
+		BitVolume mask = new BitVolume(volume.getWidth(), volume.getHeight(), volume.getDepth());
+		byte[] slice = new byte[num];
+		for (int d = 0; d < mask.depth; d++) {
+			volume.getSlice(d, slice);
+			long start = (long) d * num;
+			for (int i = 0; i < num; i++) {
+				if (slice[i] == pixVal)
+					mask.set(start + i);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Creates the mask of the foreground (the voxels which have non-zero pixel value) in given
+	 * raw data (1D array). Each word is packed from 64 voxels at once.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @return the mask of the foreground
+	 */
+	public static BitVolume ofForeground(byte[] raw, int width, int height, int depth) {
+		return pack(raw, 0, width, height, depth, (byte) 0, false);
+	}
+
+	/**
+	 * Packs the voxels which have (or do not have) given pixel value in given raw data (1D array)
+	 * to a new mask.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param offset the index of the first voxel of the mask in the raw data
+	 * @param width the width of the mask
+	 * @param height the height of the mask
+	 * @param depth the depth of the mask
+	 * @param pixVal the pixel value
+	 * @param equal true to set the voxels which have the pixel value, false to set the others
+	 * @return the mask
+	 */
+	private static BitVolume pack(byte[] raw, int offset, int width, int height, int depth, byte pixVal,
+			boolean equal) {
+		BitVolume mask = new BitVolume(width, height, depth);
+		int length = (int) mask.size;
+		for (int k = 0; k < mask.words.length; k++) {
+			int start = k << 6;
+			int end = Math.min(start + 64, length);
+			long word = 0L;
+			for (int i = start; i < end; i++) {
+				if ((raw[offset + i] == pixVal) == equal)
+					word |= 1L << (i - start);
+			}
+			mask.words[k] = word;
+		}
+		return mask;
+	}
+
+	/**
+	 * Checks if the voxel of given index is set.
+	 *
+	 * @param index the index of the voxel
+	 * @return true, if the voxel is set
+	 */
+	public boolean get(long index) {
+		return (words[(int) (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets the voxel of given index.
+	 *
+	 * @param index the index of the voxel
+	 */
+	public void set(long index) {
+		words[(int) (index >>> 6)] |= 1L << index;
+	}
+
+	/**
+	 * Clears the voxel of given index.
+	 *
+	 * @param index the index of the voxel
+	 */
+	public void clear(long index) {
+		words[(int) (index >>> 6)] &= ~(1L << index);
+	}
+
+	/**
+	 * Sets or clears the voxel of given index.
+	 *
+	 * @param index the index of the voxel
+	 * @param value true to set the voxel, false to clear it
+	 */
+	public void set(long index, boolean value) {
+		if (value)
+			set(index);
+		else
+			clear(index);
+	}
+
+	/**
+	 * Keeps the voxels which are also set in given mask (this = this &amp; mask).
+	 *
+	 * @param mask the mask of the same size
+	 */
+	public void and(BitVolume mask) {
+		for (int k = 0; k < words.length; k++)
+			words[k] &= mask.words[k];
+	}
+
+	/**
+	 * Clears the voxels which are set in given mask (this = this &amp; ~mask).
+	 *
+	 * @param mask the mask of the same size
+	 */
+	public void andNot(BitVolume mask) {
+		for (int k = 0; k < words.length; k++)
+			words[k] &= ~mask.words[k];
+	}
+
+	/**
+	 * Counts the number of set voxels (popcount).
+	 *
+	 * @return the number of set voxels
+	 */
+	public long cardinality() {
+		long count = 0;
+		for (int k = 0; k < words.length; k++)
+			count += Long.bitCount(words[k]);
+		return count;
+	}
+
+	/**
+	 * Checks if no voxel is set.
+	 *
+	 * @return true, if no voxel is set
+	 */
+	public boolean isEmpty() {
+		for (int k = 0; k < words.length; k++) {
+			if (words[k] != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the index of the first set voxel at or after given index. The cleared voxels
+	 * are skipped by 64 voxels per word.
+	 *
+	 * @param from the index to start from
+	 * @return the index of the first set voxel, or -1 if there is no set voxel
+	 */
+	public long nextSetBit(long from) {
+		return nextSetBit(from, size);
+	}
+
+	/**
+	 * Gets the index of the first set voxel in the range [from, to), e.g. in a slice. The
+	 * cleared voxels are skipped by 64 voxels per word, and no word after the range is read.
+	 *
+	 * @param from the index to start from
+	 * @param to the end of the range (exclusive)
+	 * @return the index of the first set voxel in the range, or -1 if there is no set voxel
+	 */
+	public long nextSetBit(long from, long to) {
+		to = Math.min(to, size);
+		if (from >= to)
+			return -1;
+		int k = (int) (from >>> 6);
+		int last = (int) ((to - 1) >>> 6);
+		long word = words[k] & (-1L << from);
+		while (word == 0) {
+			if (++k > last)
+				return -1;
+			word = words[k];
+		}
+		long index = ((long) k << 6) + Long.numberOfTrailingZeros(word);
+		return index < to ? index : -1;
+	}
+
+	/**
+	 * Writes the voxels of given slice to given array. A set voxel is written as given
+	 * pixel value, and a cleared voxel is written as 0. The cleared voxels are skipped
+	 * by 64 voxels per word.
+	 *
+	 * @param d the z offset of the slice
+	 * @param slice the array which has at least width * height elements
+	 * @param pixVal the pixel value of a set voxel
+	 */
+	public void getSlice(int d, byte[] slice, byte pixVal) {
+		int num = width * height;
+		long start = (long) d * num;
+		Arrays.fill(slice, 0, num, (byte) 0);
+		for (long i = nextSetBit(start, start + num); i >= 0; i = nextSetBit(i + 1, start + num))
+			slice[(int) (i - start)] = pixVal;
+	}
+
+	/**
+	 * Gets the number of voxels.
+	 *
+	 * @return the number of voxels
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the width of this volume.
+	 *
+	 * @return the width of this volume
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the height of this volume.
+	 *
+	 * @return the height of this volume
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the depth of this volume.
+	 *
+	 * @return the depth of this volume
+	 */
+	public int getDepth() {
+		return depth;
+	}
+}
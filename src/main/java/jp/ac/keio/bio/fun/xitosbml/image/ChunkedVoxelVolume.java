@@ -0,0 +1,161 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+/**
+ * The class ChunkedVoxelVolume, which is a {@link VoxelVolume} stored in several byte arrays
+ * (chunks). Each chunk contains the same number of whole slices, so that a slice never spans
+ * two chunks. If the whole volume fits in one chunk, the chunk is the raw data (1D array)
+ * of the volume and is returned by {@link #toArray()} without copying.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ChunkedVoxelVolume extends VoxelVolume {
+
+	/** The maximum size of a chunk. */
+	private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	/** The chunks of voxels. */
+	private byte[][] chunks;
+
+	/** The number of slices in a chunk. */
+	private int slicesPerChunk;
+
+	/** The number of voxels in a chunk. */
+	private int chunkSize;
+
+	/**
+	 * Instantiates a new volume of given size filled with 0.
+	 *
+	 * @param width the width of a volume
+	 * @param height the height of a volume
+	 * @param depth the depth of a volume
+	 */
+	public ChunkedVoxelVolume(int width, int height, int depth) {
+		super(width, height, depth);
+		int slice = width * height;
+		if (size() <= MAX_ARRAY_SIZE)
+			slicesPerChunk = Math.max(depth, 1);
+		else
+			slicesPerChunk = Math.max(1, MAX_CHUNK_SIZE / slice);
+		chunkSize = slicesPerChunk * slice;
+		int num = (depth + slicesPerChunk - 1) / slicesPerChunk;
+		chunks = new byte[num][];
+		for (int i = 0; i < num; i++) {
+			int slices = Math.min(slicesPerChunk, depth - i * slicesPerChunk);
+			chunks[i] = new byte[slices * slice];
+		}
+	}
+
+	/**
+	 * Instantiates a new volume which wraps given raw data (1D array) without copying.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param width the width of a volume
+	 * @param height the height of a volume
+	 * @param depth the depth of a volume
+	 */
+	public ChunkedVoxelVolume(byte[] raw, int width, int height, int depth) {
+		super(width, height, depth);
+		slicesPerChunk = Math.max(depth, 1);
+		chunkSize = width * height * slicesPerChunk;
+		chunks = new byte[][] { raw };
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#get(long)
+	 */
+	@Override
+	public byte get(long index) {
+		return chunks[(int) (index / chunkSize)][(int) (index % chunkSize)];
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#set(long, byte)
+	 */
+	@Override
+	public void set(long index, byte value) {
+		chunks[(int) (index / chunkSize)][(int) (index % chunkSize)] = value;
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#get(int, int, int)
+	 */
+	@Override
+	public byte get(int w, int h, int d) {
+		return chunks[d / slicesPerChunk][((d % slicesPerChunk) * height + h) * width + w];
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#set(int, int, int, byte)
+	 */
+	@Override
+	public void set(int w, int h, int d, byte value) {
+		chunks[d / slicesPerChunk][((d % slicesPerChunk) * height + h) * width + w] = value;
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#getSlice(int, byte[])
+	 */
+	@Override
+	public void getSlice(int d, byte[] slice) {
+		int num = width * height;
+		System.arraycopy(chunks[d / slicesPerChunk], (d % slicesPerChunk) * num, slice, 0, num);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#setSlice(int, byte[])
+	 */
+	@Override
+	public void setSlice(int d, byte[] slice) {
+		int num = width * height;
+		System.arraycopy(slice, 0, chunks[d / slicesPerChunk], (d % slicesPerChunk) * num, num);
+	}
+
+	/**
+	 * Gets the raw data (1D array) of this volume. If this volume is stored in one chunk,
+	 * the chunk is returned without copying.
+	 *
+	 * @return the raw data (1D array) of this volume
+	 * @throws IllegalStateException if this volume does not fit in one Java array
+	 */
+	@Override
+	public byte[] toArray() {
+		if (chunks.length == 1)
+			return chunks[0];
+		return super.toArray();
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#createVolume()
+	 */
+	@Override
+	public VoxelVolume createVolume() {
+		return new ChunkedVoxelVolume(width, height, depth);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#hasArray()
+	 */
+	@Override
+	public boolean hasArray() {
+		return chunks.length == 1;
+	}
+
+	/**
+	 * Copies given raw data (1D array) to this volume. If given raw data is the chunk of
+	 * this volume, nothing is copied.
+	 *
+	 * @param raw the raw data (1D array) which has the size of this volume
+	 */
+	@Override
+	public void setArray(byte[] raw) {
+		if (chunks.length == 1 && chunks[0] == raw)
+			return;
+		int offset = 0;
+		for (byte[] chunk : chunks) {
+			System.arraycopy(raw, offset, chunk, 0, chunk.length);
+			offset += chunk.length;
+		}
+	}
+}
@@ -0,0 +1,804 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.Arrays;
+
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
+
+/**
+ * The class ComponentLabeler, which provides a two-pass connected-component
+ * labeling engine for the raw data (1D array) of a spatial image.
+ * Two adjacent pixels belong to the same component if they have the same pixel value
+ * (or, in binary mode, if both or neither of them are background). The adjacency of
+ * pixels is given by the connectivity ({@link Neighborhood}).
+ * The first pass assigns provisional labels and records equivalences between them
+ * in a union-find table kept in primitive int arrays. The second pass resolves
+ * every provisional label once, so that the cost is linear in the number of pixels.
+ * The resolved labels are numbered from 1 in the raster order of the first pixel
+ * of each component.
+ *
+ * A Z-stack image can be labeled in parallel. The image is split into slabs of
+ * slices, each slab is labeled independently on the shared ForkJoinPool, and the
+ * labels which meet on the faces between slabs are merged afterwards. The result
+ * is identical to the sequential labeling.
+ *
+ * In brick mode ({@link #setBricked(boolean)}), the image is labeled in bricks of
+ * 32 x 32 x 32 pixels with a halo ({@link BrickedVolume}) instead of slabs, so that the
+ * neighbors of each pixel are read in the cache, and a 2D image or a thin Z-stack image
+ * is labeled in parallel as well. The labels are identical in both modes.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ComponentLabeler {
+
+	/** The minimum number of slices in a slab. */
+	private static final int MIN_SLAB_DEPTH = 4;
+
+	/** The minimum number of pixels in a slab. */
+	private static final int MIN_SLAB_SIZE = 1 << 16;
+
+	/** The width of an image. */
+	private int width;
+
+	/** The height of an image. */
+	private int height;
+
+	/** The depth of an image. */
+	private int depth;
+
+	/** The raw data (1D array) of an image. */
+	private byte[] pixels;
+
+	/** The connectivity of adjacent pixels. 0 means the default connectivity. */
+	private int connectivity = 0;
+
+	/** The neighborhood which contains the neighbors preceding a pixel in raster order. */
+	private Neighborhood backward;
+
+	/** The flag whether pixels are compared only by background (0) or not. */
+	private boolean binary = false;
+
+	/** The maximum number of slabs labeled in parallel. */
+	private int parallelism = ParallelUtil.getParallelism();
+
+	/** The 1D array of labels. */
+	private int[] matrix;
+
+	/** The number of resolved labels (components). */
+	private int labelCount;
+
+	/** The pixel value of each resolved label. */
+	private int[] labelValue;
+
+	/** The index (in 1D array) of the first pixel of each resolved label. */
+	private int[] firstIndex;
+
+	/** The flag whether the image is labeled in bricks ({@link BrickedVolume}) or not. */
+	private boolean bricked = false;
+
+	/** The bricked volume of the labeled image, or null if the image is not labeled in bricks. */
+	private BrickedVolume bricks;
+
+	/**
+	 * The class Slab, which labels a range of slices [dStart, dEnd) independently
+	 * from other slabs. The labels of a slab are numbered from 1 in the raster order
+	 * of the first pixel of each component in the slab.
+	 */
+	private class Slab {
+
+		/** The first slice of this slab. */
+		private int dStart;
+
+		/** The last slice (exclusive) of this slab. */
+		private int dEnd;
+
+		/** The union-find table of provisional labels. parent[label] is the parent label. */
+		private int[] parent;
+
+		/** The number of provisional labels. */
+		private int provisionalCount;
+
+		/** The number of labels in this slab. */
+		private int count;
+
+		/** The pixel value of each label in this slab. */
+		private int[] value = new int[16];
+
+		/** The index of the first pixel of each label in this slab. */
+		private int[] first = new int[16];
+
+		/**
+		 * Instantiates a new slab.
+		 *
+		 * @param dStart the first slice of this slab
+		 * @param dEnd the last slice (exclusive) of this slab
+		 */
+		private Slab(int dStart, int dEnd) {
+			this.dStart = dStart;
+			this.dEnd = dEnd;
+		}
+
+		/**
+		 * Label this slab. Provisional labels are assigned and then resolved to the
+		 * labels of this slab.
+		 */
+		private void label() {
+			parent = new int[1024];
+			provisionalCount = 0;
+			firstPass();
+			secondPass();
+			parent = null;
+		}
+
+		/**
+		 * Assign provisional labels to each pixel by checking the already visited
+		 * adjacent pixels (the neighbors preceding in raster order) in this slab, and
+		 * record the equivalence of labels when two different labels meet.
+		 */
+		private void firstPass() {
+			int slice = width * height;
+			int[] neighbors = new int[backward.size()];
+			for (int d = dStart; d < dEnd; d++) {
+				for (int h = 0; h < height; h++) {
+					int index = d * slice + h * width;
+					for (int w = 0; w < width; w++, index++) {
+						byte pixVal = pixels[index];
+						int label = 0;
+						int num = backward.getNeighbors(index, w, h, d, dStart, dEnd, neighbors);
+						for (int n = 0; n < num; n++) {
+							int adj = matrix[neighbors[n]];
+							if (adj != label && isSame(pixels[neighbors[n]], pixVal))
+								label = merge(parent, label, adj);
+						}
+						if (label == 0)
+							label = newLabel();
+						matrix[index] = label;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Resolve the provisional labels to the labels of this slab. The labels are
+		 * numbered in the raster order of the first pixel of each component.
+		 */
+		private void secondPass() {
+			int[] resolved = new int[provisionalCount + 1];
+			count = 0;
+			for (int i = dStart * width * height, end = dEnd * width * height; i < end; i++) {
+				int root = find(parent, matrix[i]);
+				int label = resolved[root];
+				if (label == 0) {
+					label = ++count;
+					resolved[root] = label;
+					if (label >= value.length) {
+						value = Arrays.copyOf(value, value.length * 2);
+						first = Arrays.copyOf(first, first.length * 2);
+					}
+					value[label] = pixels[i] & 0xFF;
+					first[label] = i;
+				}
+				matrix[i] = label;
+			}
+		}
+
+		/**
+		 * Creates a new provisional label.
+		 *
+		 * @return the new provisional label
+		 */
+		private int newLabel() {
+			int label = ++provisionalCount;
+			if (label >= parent.length)
+				parent = Arrays.copyOf(parent, parent.length * 2);
+			parent[label] = label;
+			return label;
+		}
+
+		/**
+		 * Replace the labels of this slab with the given global labels.
+		 *
+		 * @param resolved the global label of each label of the whole image
+		 * @param base the offset of the labels of this slab in the whole image
+		 */
+		private void relabel(int[] resolved, int base) {
+			for (int i = dStart * width * height, end = dEnd * width * height; i < end; i++)
+				matrix[i] = resolved[base + matrix[i]];
+		}
+	}
+
+	/**
+	 * The class Brick, which assigns provisional labels to the core of a brick
+	 * ({@link BrickedVolume}) independently from other bricks. The neighbors in the halo of
+	 * the brick are skipped, because their labels are still 0. The provisional labels are
+	 * numbered from 1 in raster order, and each of them keeps the pixel which created it.
+	 */
+	private class Brick {
+
+		/** The index of this brick. */
+		private int brick;
+
+		/** The union-find table of provisional labels. parent[label] is the parent label. */
+		private int[] parent = new int[64];
+
+		/** The number of provisional labels. */
+		private int count;
+
+		/** The pixel value of the pixel which created each provisional label. */
+		private int[] value = new int[64];
+
+		/** The index (in 1D array) of the pixel which created each provisional label. */
+		private int[] first = new int[64];
+
+		/**
+		 * Instantiates a new brick.
+		 *
+		 * @param brick the index of this brick
+		 */
+		private Brick(int brick) {
+			this.brick = brick;
+		}
+
+		/**
+		 * Assign provisional labels to each pixel of this brick by checking the already visited
+		 * adjacent pixels (the neighbors preceding in raster order) in this brick, and record
+		 * the equivalence of labels when two different labels meet.
+		 *
+		 * @param offsets the offsets of the neighbors preceding a pixel in the layout of a brick
+		 */
+		private void label(int[] offsets) {
+			int[] labels = bricks.getLabels(brick);
+			byte[] voxels = bricks.getVoxels(brick);
+			int bw = bricks.getBrickWidth(brick), bh = bricks.getBrickHeight(brick), bd = bricks.getBrickDepth(brick);
+			for (int z = 0; z < bd; z++) {
+				for (int y = 0; y < bh; y++) {
+					int index = bricks.getIndex(brick, 0, y, z);
+					for (int x = 0, i = bricks.index(0, y, z); x < bw; x++, i++) {
+						byte pixVal = voxels[i];
+						int label = 0;
+						for (int n = 0; n < offsets.length; n++) {
+							int adj = labels[i + offsets[n]];
+							if (adj != 0 && adj != label && isSame(voxels[i + offsets[n]], pixVal))
+								label = merge(parent, label, adj);
+						}
+						if (label == 0)
+							label = newLabel(pixVal, index + x);
+						labels[i] = label;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Creates a new provisional label.
+		 *
+		 * @param pixVal the pixel value of the pixel which creates the label
+		 * @param index the index (in 1D array) of the pixel which creates the label
+		 * @return the new provisional label
+		 */
+		private int newLabel(byte pixVal, int index) {
+			int label = ++count;
+			if (label >= parent.length) {
+				parent = Arrays.copyOf(parent, parent.length * 2);
+				value = Arrays.copyOf(value, value.length * 2);
+				first = Arrays.copyOf(first, first.length * 2);
+			}
+			parent[label] = label;
+			value[label] = pixVal & 0xFF;
+			first[label] = index;
+			return label;
+		}
+	}
+
+	/**
+	 * Instantiates a new component labeler for an image of the given size.
+	 *
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 */
+	public ComponentLabeler(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+	}
+
+	/**
+	 * Assign a label to each pixel of given raw data (1D array) of an image,
+	 * and returns the 1D array of labels. Labels start from 1.
+	 *
+	 * @param pixels the raw data (1D array) of an image
+	 * @return the 1D array of labels
+	 */
+	public int[] label(byte[] pixels) {
+		if (bricked)
+			return labelBricks(pixels);
+		this.pixels = pixels;
+		bricks = null;
+		backward = new Neighborhood(connectivity, width, height, depth).backward();
+		matrix = new int[width * height * depth];
+		final Slab[] slabs = createSlabs();
+		ParallelUtil.forEach(0, slabs.length, slabs.length, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++)
+					slabs[i].label();
+			}
+		});
+		mergeSlabs(slabs);
+		this.pixels = null;
+		return matrix;
+	}
+
+	/**
+	 * Assign a label to each pixel of given raw data (1D array) of an image in bricks
+	 * ({@link BrickedVolume}), and returns the 1D array of labels. Provisional labels are
+	 * assigned to each brick independently in parallel, and the provisional labels of all
+	 * bricks are resolved at once ({@link #mergeBricks(Brick[], Neighborhood)}). The labels are identical
+	 * to the labels in raster order, and are kept in the bricks ({@link #getBricks()}) as well.
+	 *
+	 * @param pixels the raw data (1D array) of an image
+	 * @return the 1D array of labels
+	 */
+	private int[] labelBricks(byte[] pixels) {
+		bricks = new BrickedVolume(pixels, width, height, depth, parallelism);
+		bricks.createLabels();
+		Neighborhood neighborhood = bricks.getNeighborhood(connectivity).backward();
+		final int[] offsets = new int[neighborhood.size()];
+		for (int n = 0; n < offsets.length; n++)
+			offsets[n] = neighborhood.getOffset(n);
+		final Brick[] list = new Brick[bricks.getBrickCount()];
+		ParallelUtil.forEach(0, list.length, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int b = from; b < to; b++) {
+					list[b] = new Brick(b);
+					list[b].label(offsets);
+				}
+			}
+		});
+		matrix = new int[width * height * depth];
+		mergeBricks(list, neighborhood);
+		return matrix;
+	}
+
+	/**
+	 * Merge the provisional labels of bricks. The provisional labels of each brick are offset
+	 * to be unique in the whole image, and their union-find tables are joined to one table.
+	 * The halo of each brick is filled with the labels of the adjacent bricks, and the labels
+	 * which meet on the faces of each brick (the pixels whose preceding neighbors can be in
+	 * the halo) are merged. As the provisional labels are created in raster order, the first
+	 * pixel of each merged component is the first of the pixels which created its provisional
+	 * labels, and the components are numbered in the raster order of the first pixel.
+	 * Finally, the labels of the bricks (including the halo) are resolved and copied to the 1D
+	 * array of labels by one pass over the bricks in parallel.
+	 *
+	 * @param list the array of bricks which have provisional labels
+	 * @param neighborhood the neighborhood of the neighbors preceding a pixel in the layout of a brick
+	 */
+	private void mergeBricks(final Brick[] list, Neighborhood neighborhood) {
+		final int[] base = new int[list.length];
+		int total = 0;
+		for (int b = 0; b < list.length; b++) {
+			base[b] = total;
+			total += list[b].count;
+		}
+		int[] parent = new int[total + 1];
+		for (int b = 0; b < list.length; b++) {
+			for (int label = 1; label <= list[b].count; label++)
+				parent[base[b] + label] = base[b] + list[b].parent[label];
+		}
+		bricks.fillLabelHalo(base, parallelism);
+
+		int[][] halo = createHaloNeighbors(neighborhood);
+		for (int b = 0; b < list.length; b++) {
+			int[] labels = bricks.getLabels(b);
+			byte[] voxels = bricks.getVoxels(b);
+			int bw = bricks.getBrickWidth(b), bh = bricks.getBrickHeight(b), bd = bricks.getBrickDepth(b);
+			int label = 0, adj = 0;
+			for (int z = 0; z < bd; z++) {
+				for (int y = 0; y < bh; y++) {
+					int face = (y == 0 ? 4 : 0) | (y == bh - 1 ? 8 : 0) | (z == 0 ? 16 : 0);
+					// only the first and the last pixel of a row are on a face, unless the row is on a face
+					int step = face != 0 ? 1 : Math.max(bw - 1, 1);
+					for (int x = 0; x < bw; x += step) {
+						int i = bricks.index(x, y, z);
+						int[] offsets = halo[face | (x == 0 ? 1 : 0) | (x == bw - 1 ? 2 : 0)];
+						for (int n = 0; n < offsets.length; n++) {
+							int j = i + offsets[n];
+							// adjacent pixels on a face mostly repeat the last merged pair
+							if (labels[j] == 0 || (labels[i] + base[b] == label && labels[j] == adj)
+									|| !isSame(voxels[j], voxels[i]))
+								continue;
+							label = base[b] + labels[i];
+							adj = labels[j];
+							merge(parent, label, adj);
+						}
+					}
+				}
+			}
+		}
+
+		int[] rootFirst = new int[total + 1];
+		int[] rootValue = new int[total + 1];
+		Arrays.fill(rootFirst, Integer.MAX_VALUE);
+		int roots = 0;
+		for (int b = 0; b < list.length; b++) {
+			for (int label = 1; label <= list[b].count; label++) {
+				int root = find(parent, base[b] + label);
+				if (root == base[b] + label)
+					roots++;
+				if (list[b].first[label] < rootFirst[root]) {
+					rootFirst[root] = list[b].first[label];
+					rootValue[root] = list[b].value[label];
+				}
+			}
+			list[b] = null;
+		}
+		long[] order = new long[roots];
+		for (int label = 1, n = 0; label <= total; label++) {
+			if (parent[label] == label)
+				order[n++] = ((long) rootFirst[label] << 32) | label;
+		}
+		rootFirst = null;
+		Arrays.sort(order);
+		final int[] resolved = new int[total + 1];
+		labelCount = roots;
+		labelValue = new int[roots + 1];
+		firstIndex = new int[roots + 1];
+		for (int n = 0; n < roots; n++) {
+			int root = (int) order[n];
+			resolved[root] = n + 1;
+			labelValue[n + 1] = rootValue[root];
+			firstIndex[n + 1] = (int) (order[n] >>> 32);
+		}
+		order = null;
+		for (int label = 1; label <= total; label++)
+			resolved[label] = resolved[find(parent, label)];
+
+		ParallelUtil.forEach(0, bricks.getBrickCount(), parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int b = from; b < to; b++)
+					resolveBrick(b, base[b], resolved);
+			}
+		});
+	}
+
+	/**
+	 * Creates the offsets of the neighbors in the halo of a brick for each position of a pixel
+	 * on the faces of the brick. The position is given by the bits of the first (1) and the last
+	 * (2) column, the first (4) and the last (8) row, and the first slice (16) of the brick.
+	 *
+	 * @param neighborhood the neighborhood in the layout of a brick
+	 * @return the offsets of the neighbors in the halo for each position
+	 */
+	private static int[][] createHaloNeighbors(Neighborhood neighborhood) {
+		int[][] halo = new int[32][];
+		int[] buffer = new int[neighborhood.size()];
+		for (int face = 0; face < halo.length; face++) {
+			int num = 0;
+			for (int n = 0; n < neighborhood.size(); n++) {
+				int dx = neighborhood.getOffsetX(n), dy = neighborhood.getOffsetY(n), dz = neighborhood.getOffsetZ(n);
+				if ((dx < 0 && (face & 1) != 0) || (dx > 0 && (face & 2) != 0) || (dy < 0 && (face & 4) != 0)
+						|| (dy > 0 && (face & 8) != 0) || (dz < 0 && (face & 16) != 0))
+					buffer[num++] = neighborhood.getOffset(n);
+			}
+			halo[face] = Arrays.copyOf(buffer, num);
+		}
+		return halo;
+	}
+
+	/**
+	 * Replace the provisional labels of given brick with the resolved labels, and copy the labels
+	 * of the core to the 1D array of labels. The halo already has the offset provisional labels
+	 * of the adjacent bricks, so that it is resolved in place as well.
+	 *
+	 * @param brick the index of the brick
+	 * @param base the offset of the provisional labels of the brick
+	 * @param resolved the resolved label of each offset provisional label
+	 */
+	private void resolveBrick(int brick, int base, int[] resolved) {
+		int[] labels = bricks.getLabels(brick);
+		int bw = bricks.getBrickWidth(brick), bh = bricks.getBrickHeight(brick), bd = bricks.getBrickDepth(brick);
+		int halo = depth > 1 ? 1 : 0;
+		for (int z = -halo; z < bd + halo; z++) {
+			for (int y = -1; y <= bh; y++) {
+				int i = bricks.index(-1, y, z);
+				if (z < 0 || z >= bd || y < 0 || y >= bh) {
+					for (int x = -1; x <= bw; x++, i++)
+						labels[i] = resolved[labels[i]];
+					continue;
+				}
+				labels[i] = resolved[labels[i]];
+				i++;
+				int index = bricks.getIndex(brick, 0, y, z);
+				for (int x = 0; x < bw; x++, i++) {
+					int label = resolved[base + labels[i]];
+					labels[i] = label;
+					matrix[index + x] = label;
+				}
+				labels[i] = resolved[labels[i]];
+			}
+		}
+	}
+
+	/**
+	 * Merges the labels into given root labels ({@link ComponentMerger}), and returns the new
+	 * label of each old label. The merged labels are numbered again from 1 in the raster order
+	 * of the first pixel of each merged component, and each pixel of a merged component gets the
+	 * pixel value of its root label. The 1D array of labels and given raw data are rewritten in
+	 * parallel by one pass over the pixels.
+	 *
+	 * @param root the root label of each label
+	 * @param pixels the raw data (1D array) of the labeled image, which is rewritten in place
+	 * @return the new label of each old label
+	 */
+	public int[] relabel(int[] root, final byte[] pixels) {
+		final int[] newLabel = new int[labelCount + 1];
+		int[] newValue = new int[labelCount + 1];
+		int[] newFirst = new int[labelCount + 1];
+		int count = 0;
+		// the old labels are in raster order, so the first label of each component comes first
+		for (int label = 1; label <= labelCount; label++) {
+			int r = root[label];
+			if (newLabel[r] == 0) {
+				newLabel[r] = ++count;
+				newValue[count] = labelValue[r];
+				newFirst[count] = firstIndex[label];
+			}
+			newLabel[label] = newLabel[r];
+		}
+		final byte[] value = new byte[count + 1];
+		for (int label = 1; label <= count; label++)
+			value[label] = (byte) newValue[label];
+
+		ParallelUtil.forEach(0, matrix.length, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					int label = newLabel[matrix[i]];
+					matrix[i] = label;
+					pixels[i] = value[label];
+				}
+			}
+		});
+		if (bricks != null)
+			bricks.relabel(newLabel, value, parallelism);
+		labelCount = count;
+		labelValue = Arrays.copyOf(newValue, count + 1);
+		firstIndex = Arrays.copyOf(newFirst, count + 1);
+		return newLabel;
+	}
+
+	/**
+	 * Split the image into slabs of slices. The number of slabs is limited by the
+	 * parallelism, and each slab contains at least MIN_SLAB_DEPTH slices and
+	 * MIN_SLAB_SIZE pixels.
+	 *
+	 * @return the array of slabs
+	 */
+	private Slab[] createSlabs() {
+		int num = Math.min(parallelism, depth / MIN_SLAB_DEPTH);
+		num = (int) Math.min(num, (long) width * height * depth / MIN_SLAB_SIZE);
+		num = Math.max(num, 1);
+		Slab[] slabs = new Slab[num];
+		for (int i = 0; i < num; i++)
+			slabs[i] = new Slab(depth * i / num, depth * (i + 1) / num);
+		return slabs;
+	}
+
+	/**
+	 * Merge the labels of slabs. The labels of each slab are offset to be unique in
+	 * the whole image, and the labels which meet on the faces between slabs are merged
+	 * in a union-find table. Only the neighbors on the previous slice can be in the
+	 * previous slab. As the labels of each slab are ordered by the first pixel,
+	 * the smallest label of each merged set is the label of the first pixel of the
+	 * component, so the final labels are also numbered in the raster order.
+	 *
+	 * @param slabs the array of labeled slabs
+	 */
+	private void mergeSlabs(final Slab[] slabs) {
+		final int[] base = new int[slabs.length];
+		int total = 0;
+		for (int i = 0; i < slabs.length; i++) {
+			base[i] = total;
+			total += slabs[i].count;
+		}
+
+		int[] parent = new int[total + 1];
+		for (int i = 0; i <= total; i++)
+			parent[i] = i;
+		int slice = width * height;
+		int[] neighbors = new int[backward.size()];
+		for (int i = 1; i < slabs.length; i++) {
+			int d = slabs[i].dStart;
+			int face = d * slice;
+			for (int h = 0, index = face; h < height; h++) {
+				for (int w = 0; w < width; w++, index++) {
+					int num = backward.getNeighbors(index, w, h, d, neighbors);
+					for (int n = 0; n < num; n++) {
+						int adj = neighbors[n];
+						if (adj < face && isSame(pixels[index], pixels[adj]))
+							merge(parent, base[i] + matrix[index], base[i - 1] + matrix[adj]);
+					}
+				}
+			}
+		}
+
+		final int[] resolved = new int[total + 1];
+		labelValue = new int[total + 1];
+		firstIndex = new int[total + 1];
+		labelCount = 0;
+		for (int i = 0; i < slabs.length; i++) {
+			for (int label = 1; label <= slabs[i].count; label++) {
+				int global = base[i] + label;
+				int root = find(parent, global);
+				if (root == global) {
+					resolved[global] = ++labelCount;
+					labelValue[labelCount] = slabs[i].value[label];
+					firstIndex[labelCount] = slabs[i].first[label];
+				} else {
+					resolved[global] = resolved[root];
+				}
+			}
+		}
+
+		if (slabs.length == 1)
+			return; // labels of a single slab are already final
+		ParallelUtil.forEach(0, slabs.length, slabs.length, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++)
+					slabs[i].relabel(resolved, base[i]);
+			}
+		});
+	}
+
+	/**
+	 * Checks whether given two pixel values belong to the same component.
+	 *
+	 * @param pixVal1 the pixel value 1
+	 * @param pixVal2 the pixel value 2
+	 * @return true, if the pixels belong to the same component
+	 */
+	private boolean isSame(byte pixVal1, byte pixVal2) {
+		if (binary)
+			return (pixVal1 == 0) == (pixVal2 == 0);
+		return pixVal1 == pixVal2;
+	}
+
+	/**
+	 * Merge given two labels in given union-find table and returns the root of merged labels.
+	 * If one of the labels is 0 (not assigned), then the other label is returned.
+	 * The smaller label is always kept as the root, so that the root is the label
+	 * which is assigned first.
+	 *
+	 * @param parent the union-find table
+	 * @param label1 the label 1
+	 * @param label2 the label 2
+	 * @return the root of merged labels
+	 */
+	private static int merge(int[] parent, int label1, int label2) {
+		if (label1 == 0)
+			return label2;
+		int root1 = find(parent, label1);
+		int root2 = find(parent, label2);
+		if (root1 < root2) {
+			parent[root2] = root1;
+			return root1;
+		}
+		parent[root1] = root2;
+		return root2;
+	}
+
+	/**
+	 * Find the root of given label in given union-find table. The path to the root
+	 * is compressed by halving.
+	 *
+	 * @param parent the union-find table
+	 * @param label the label
+	 * @return the root of given label
+	 */
+	private static int find(int[] parent, int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	/**
+	 * Sets the binary mode. In binary mode, two adjacent pixels belong to the same
+	 * component if both or neither of them are background (pixel value = 0).
+	 *
+	 * @param binary the flag whether pixels are compared only by background or not
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * Sets the connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26
+	 * for a 3D image). If 0, the default connectivity ({@link Neighborhood#getDefaultConnectivity(int)})
+	 * is used.
+	 *
+	 * @param connectivity the connectivity of adjacent pixels
+	 */
+	public void setConnectivity(int connectivity) {
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * Sets the maximum number of slabs labeled in parallel. If 1, the image is labeled
+	 * sequentially on the calling thread.
+	 *
+	 * @param parallelism the maximum number of slabs labeled in parallel
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Sets the brick mode. In brick mode, the image is copied to bricks of 32 x 32 x 32 pixels
+	 * with a halo ({@link BrickedVolume}), and each brick is labeled in the cache. The labels
+	 * are identical to the labels in raster order, and the bricks are kept with the labels
+	 * ({@link #getBricks()}), so that the following neighbor-heavy passes can use them.
+	 * The bricks take about 6 bytes per pixel in addition to the 1D array of labels.
+	 *
+	 * @param bricked the flag whether the image is labeled in bricks or not
+	 */
+	public void setBricked(boolean bricked) {
+		this.bricked = bricked;
+	}
+
+	/**
+	 * Gets the bricked volume of the labeled image, whose bricks have the pixel values and the
+	 * labels of the image with their halo. The bricks are relabeled together with the 1D array
+	 * of labels ({@link #relabel(int[], byte[])}).
+	 *
+	 * @return the bricked volume, or null if the image is not labeled in bricks
+	 */
+	public BrickedVolume getBricks() {
+		return bricks;
+	}
+
+	/**
+	 * Gets the 1D array of labels.
+	 *
+	 * @return the 1D array of labels
+	 */
+	public int[] getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Gets the number of labels (components).
+	 *
+	 * @return the number of labels
+	 */
+	public int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Gets the pixel value of given label.
+	 *
+	 * @param label the label
+	 * @return the pixel value (0 - 255) of the label
+	 */
+	public int getLabelValue(int label) {
+		return labelValue[label];
+	}
+
+	/**
+	 * Gets the index (in 1D array) of the first pixel of given label in raster order.
+	 *
+	 * @param label the label
+	 * @return the index of the first pixel of the label
+	 */
+	public int getFirstIndex(int label) {
+		return firstIndex[label];
+	}
+}
@@ -0,0 +1,223 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.Arrays;
+
+/**
+ * The class ComponentMerger, which merges the small components (labels) of a labeled image into
+ * their dominant neighbors. A component which has fewer pixels than the minimum size is merged into
+ * the adjacent component which shares the most faces with it, so that the specks of a segmentation
+ * do not become domains of a model. The merge is decided only from the number of pixels of each
+ * label and the table of contact faces between labels ({@link DomainStatistics}), so that the image
+ * is not scanned again. The components are merged from the smallest one in a union-find table,
+ * and a merged component is merged again as a whole if it is still smaller than the minimum size.
+ * If a merged component touches another component which has the same pixel value as the dominant
+ * neighbor, both components become one component, as they are connected now.
+ * A component which has no neighbor (e.g. the only component of an image) is kept.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ComponentMerger {
+
+	/** The number of labels. */
+	private int labelCount;
+
+	/** The pixel value of each label. */
+	private int[] labelValue;
+
+	/** The number of pixels of each merged component, indexed by its root label. */
+	private long[] count;
+
+	/** The start of the neighbors of each label in neighbor and faces (compressed rows). */
+	private int[] offset;
+
+	/** The neighbors of each label. */
+	private int[] neighbor;
+
+	/** The number of faces shared with each neighbor of each label. */
+	private long[] faces;
+
+	/** The union-find table of labels. */
+	private int[] parent;
+
+	/** The next label in the list of labels of each merged component, or 0 at the end. */
+	private int[] next;
+
+	/** The last label in the list of labels of each merged component, indexed by its root label. */
+	private int[] last;
+
+	/**
+	 * Instantiates a new component merger for given statistics of labels and pixel values of labels.
+	 *
+	 * @param statistics the geometry statistics of each label
+	 * @param labeler the connected-component labeler, which holds the pixel value of each label
+	 */
+	public ComponentMerger(DomainStatistics statistics, ComponentLabeler labeler) {
+		labelCount = statistics.getLabelCount();
+		labelValue = new int[labelCount + 1];
+		count = new long[labelCount + 1];
+		for (int label = 1; label <= labelCount; label++) {
+			labelValue[label] = labeler.getLabelValue(label);
+			count[label] = statistics.getCount(label);
+		}
+		createNeighbors(statistics.getContacts());
+	}
+
+	/**
+	 * Creates the lists of neighbors of each label from given table of contact faces.
+	 * Each pair of labels is listed for both labels.
+	 *
+	 * @param contacts the table of pairs of labels and their shared faces
+	 */
+	private void createNeighbors(LabelPairTable contacts) {
+		offset = new int[labelCount + 2];
+		for (int n = 0; n < contacts.size(); n++) {
+			offset[contacts.getHigher(n) + 1]++;
+			offset[contacts.getLower(n) + 1]++;
+		}
+		for (int label = 1; label < offset.length; label++)
+			offset[label] += offset[label - 1];
+		neighbor = new int[offset[labelCount + 1]];
+		faces = new long[neighbor.length];
+		int[] fill = Arrays.copyOf(offset, labelCount + 1);
+		for (int n = 0; n < contacts.size(); n++) {
+			int higher = contacts.getHigher(n), lower = contacts.getLower(n);
+			neighbor[fill[higher]] = lower;
+			faces[fill[higher]++] = contacts.getCount(n);
+			neighbor[fill[lower]] = higher;
+			faces[fill[lower]++] = contacts.getCount(n);
+		}
+	}
+
+	/**
+	 * Merges the components which have fewer pixels than given minimum size into their dominant
+	 * neighbors, and returns the label which each label is merged into. The dominant neighbor is
+	 * the component which shares the most faces with the component. If several neighbors share
+	 * the same number of faces, the larger one is chosen.
+	 *
+	 * @param minSize the minimum number of pixels of a component
+	 * @return the root label of the merged component of each label, or null if no component is merged
+	 */
+	public int[] merge(long minSize) {
+		parent = new int[labelCount + 1];
+		next = new int[labelCount + 1];
+		last = new int[labelCount + 1];
+		for (int label = 0; label <= labelCount; label++) {
+			parent[label] = label;
+			last[label] = label;
+		}
+
+		// small labels are sorted by the number of pixels (upper bits) and the label (lower bits)
+		long[] order = new long[labelCount];
+		int num = 0;
+		for (int label = 1; label <= labelCount; label++) {
+			if (count[label] < minSize)
+				order[num++] = (count[label] << 32) | label;
+		}
+		Arrays.sort(order, 0, num);
+
+		long[] shared = new long[labelCount + 1];
+		int[] touched = new int[labelCount];
+		boolean merged = false;
+		for (int i = 0; i < num; i++) {
+			int label = (int) order[i];
+			if (parent[label] != label || count[label] >= minSize)
+				continue;
+			int dominant = findDominant(label, shared, touched);
+			if (dominant == 0)
+				continue;
+			union(dominant, label);
+			joinSameValue(dominant, label);
+			merged = true;
+		}
+		if (!merged)
+			return null;
+
+		int[] root = new int[labelCount + 1];
+		for (int label = 1; label <= labelCount; label++)
+			root[label] = find(label);
+		return root;
+	}
+
+	/**
+	 * Finds the neighbor of given merged component which shares the most faces with it. The faces
+	 * shared with each neighbor are summed over all labels of the component in given buffer,
+	 * which is cleared again before returning.
+	 *
+	 * @param root the root label of the merged component
+	 * @param shared the buffer of the number of shared faces of each root label
+	 * @param touched the buffer of the root labels which share faces
+	 * @return the root label of the dominant neighbor, or 0 if the component has no neighbor
+	 */
+	private int findDominant(int root, long[] shared, int[] touched) {
+		int num = 0;
+		for (int label = root; label != 0; label = next[label]) {
+			for (int n = offset[label]; n < offset[label + 1]; n++) {
+				int adj = find(neighbor[n]);
+				if (adj == root)
+					continue;
+				if (shared[adj] == 0)
+					touched[num++] = adj;
+				shared[adj] += faces[n];
+			}
+		}
+		int dominant = 0;
+		for (int i = 0; i < num; i++) {
+			int adj = touched[i];
+			if (dominant == 0 || shared[adj] > shared[dominant]
+					|| (shared[adj] == shared[dominant] && count[adj] > count[dominant]))
+				dominant = adj;
+		}
+		for (int i = 0; i < num; i++)
+			shared[touched[i]] = 0;
+		return dominant;
+	}
+
+	/**
+	 * Joins the components which have the same pixel value as given root label and touch
+	 * the labels which were just merged into it. A joined component is also checked, as it
+	 * may touch other components through the labels merged into it before.
+	 *
+	 * @param root the root label of the merged component
+	 * @param first the first label of the labels which were just merged
+	 */
+	private void joinSameValue(int root, int first) {
+		for (int label = first; label != 0; label = next[label]) {
+			for (int n = offset[label]; n < offset[label + 1]; n++) {
+				int adj = find(neighbor[n]);
+				if (adj != root && labelValue[adj] == labelValue[root])
+					union(root, adj);
+			}
+		}
+	}
+
+	/**
+	 * Merges the component of given label into the component of given root label. The number of
+	 * pixels is added, and the list of labels is appended to the list of the root label.
+	 *
+	 * @param root the root label of the component which remains
+	 * @param label the root label of the component which is merged
+	 */
+	private void union(int root, int label) {
+		parent[label] = root;
+		count[root] += count[label];
+		next[last[root]] = label;
+		last[root] = last[label];
+	}
+
+	/**
+	 * Find the root of given label in the union-find table. The path to the root
+	 * is compressed by halving.
+	 *
+	 * @param label the label
+	 * @return the root of given label
+	 */
+	private int find(int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+}
@@ -0,0 +1,325 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.Arrays;
+
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
+
+/**
+ * The class DistanceTransform, which computes the exact Euclidean distance transform (EDT)
+ * of the 1D array of labels of a spatial image.
+ * The distance of each pixel is the distance to the nearest boundary pixel, which is a pixel
+ * adjacent (by a face) to a pixel of another label or to the border of an image.
+ * The transform is separable (Felzenszwalb and Huttenlocher, 2012): the squared distance is
+ * computed along x, then along y and then along z by the lower envelope of parabolas,
+ * so that the cost is linear in the number of pixels. The rows of each pass are computed
+ * in parallel.
+ * The deepest pixel of each label (the pixel which has the largest distance) is far from
+ * the border of the domain, and it is used as the InteriorPoint of the domain.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class DistanceTransform {
+
+	/** The squared distance of a pixel which has no boundary pixel in its row. */
+	private static final int INF = Integer.MAX_VALUE;
+
+	/** The width of an image. */
+	private int width;
+
+	/** The height of an image. */
+	private int height;
+
+	/** The depth of an image. */
+	private int depth;
+
+	/** The maximum number of threads. */
+	private int parallelism = ParallelUtil.getParallelism();
+
+	/**
+	 * Instantiates a new distance transform for an image of given size.
+	 *
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 */
+	public DistanceTransform(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+	}
+
+	/**
+	 * Computes the squared Euclidean distance of each pixel to the nearest boundary pixel
+	 * in given 1D array of labels. The distance of a boundary pixel is 0.
+	 *
+	 * @param matrix the 1D array of labels
+	 * @return the 1D array of squared distances
+	 */
+	public int[] transform(final int[] matrix) {
+		final int[] dist = new int[width * height * depth];
+		final int slice = width * height;
+		// boundary pixels and the distance along x
+		ParallelUtil.forEach(0, depth, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int d = from; d < to; d++) {
+					for (int h = 0; h < height; h++)
+						transformX(matrix, dist, d * slice + h * width, h, d);
+				}
+			}
+		});
+		// the distance along y
+		ParallelUtil.forEach(0, depth, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				Envelope envelope = new Envelope(height);
+				for (int d = from; d < to; d++) {
+					for (int w = 0; w < width; w++)
+						envelope.transform(dist, d * slice + w, width, height);
+				}
+			}
+		});
+		// the distance along z
+		if (depth > 1) {
+			ParallelUtil.forEach(0, height, parallelism, new ParallelUtil.RangeTask() {
+				@Override
+				public void run(int from, int to) {
+					Envelope envelope = new Envelope(depth);
+					for (int h = from; h < to; h++) {
+						for (int w = 0; w < width; w++)
+							envelope.transform(dist, h * width + w, slice, depth);
+					}
+				}
+			});
+		}
+		return dist;
+	}
+
+	/**
+	 * Computes the signed distance of each pixel of a slice to the contour of the pixels which
+	 * have given value (the mask). The distance is positive inside of the mask and negative
+	 * outside of the mask, and the contour lies halfway between an inside pixel and an outside
+	 * pixel. Unlike {@link #transform(int[])}, the border of an image is not a boundary, so that
+	 * the signed distance field of each slice can be interpolated between slices. If the slice has
+	 * no pixel inside (or outside) of the mask, the distance is -(width + height) (or width + height).
+	 *
+	 * @param raw the raw data (1D array) which contains the slice
+	 * @param offset the index of the first pixel of the slice
+	 * @param value the pixel value of the mask
+	 * @param sdf the array to store the signed distances, which has at least width * height elements
+	 */
+	public void signedDistance(byte[] raw, int offset, byte value, float[] sdf) {
+		int slice = width * height;
+		int[] inside = new int[slice];
+		int[] outside = new int[slice];
+		boolean hasInside = false, hasOutside = false;
+		for (int i = 0; i < slice; i++) {
+			boolean in = raw[offset + i] == value;
+			hasInside |= in;
+			hasOutside |= !in;
+			// squared distance to the nearest inside pixel, and to the nearest outside pixel
+			inside[i] = in ? 0 : INF;
+			outside[i] = in ? INF : 0;
+		}
+		float far = width + height;
+		if (!hasInside || !hasOutside) {
+			Arrays.fill(sdf, 0, slice, hasInside ? far : -far);
+			return;
+		}
+		transform2D(inside);
+		transform2D(outside);
+		for (int i = 0; i < slice; i++) {
+			if (inside[i] == 0)
+				sdf[i] = (float) Math.sqrt(outside[i]) - 0.5f;
+			else
+				sdf[i] = 0.5f - (float) Math.sqrt(inside[i]);
+		}
+	}
+
+	/**
+	 * Computes the squared distance of each pixel of a slice to the nearest pixel whose distance is 0
+	 * in place. The distance along x is computed by a forward and a backward scan of each row, and
+	 * the distance along y by the lower envelope of parabolas.
+	 *
+	 * @param dist the squared distances of a slice, which are 0 or INF
+	 */
+	private void transform2D(int[] dist) {
+		for (int h = 0; h < height; h++) {
+			int start = h * width;
+			int last = -1;
+			for (int w = 0; w < width; w++) {
+				if (dist[start + w] == 0)
+					last = w;
+				else if (last >= 0)
+					dist[start + w] = w - last;
+			}
+			last = -1;
+			for (int w = width - 1; w >= 0; w--) {
+				int index = start + w;
+				if (dist[index] == 0)
+					last = w;
+				else if (last >= 0 && last - w < dist[index])
+					dist[index] = last - w;
+				if (dist[index] != INF)
+					dist[index] *= dist[index];
+			}
+		}
+		Envelope envelope = new Envelope(height);
+		for (int w = 0; w < width; w++)
+			envelope.transform(dist, w, width, height);
+	}
+
+	/**
+	 * Computes the squared distance along x of each pixel in a row to the nearest boundary
+	 * pixel in the row. The boundary pixels are detected here by checking the faces of each pixel.
+	 *
+	 * @param matrix the 1D array of labels
+	 * @param dist the 1D array of squared distances
+	 * @param start the index of the first pixel of the row
+	 * @param h the y offset of the row
+	 * @param d the z offset of the row
+	 */
+	private void transformX(int[] matrix, int[] dist, int start, int h, int d) {
+		int slice = width * height;
+		boolean is3D = depth > 1;
+		// forward scan: the distance to the preceding boundary pixel
+		int last = -1;
+		for (int w = 0; w < width; w++) {
+			int index = start + w;
+			int label = matrix[index];
+			boolean boundary = w == 0 || w == width - 1 || h == 0 || h == height - 1
+					|| (is3D && (d == 0 || d == depth - 1))
+					|| matrix[index - 1] != label || matrix[index + 1] != label
+					|| matrix[index - width] != label || matrix[index + width] != label
+					|| (is3D && (matrix[index - slice] != label || matrix[index + slice] != label));
+			if (boundary)
+				last = w;
+			dist[index] = last < 0 ? INF : w - last;
+		}
+		// backward scan: the distance to the following boundary pixel
+		last = -1;
+		for (int w = width - 1; w >= 0; w--) {
+			int index = start + w;
+			if (dist[index] == 0)
+				last = w;
+			else if (last >= 0 && last - w < dist[index])
+				dist[index] = last - w;
+		}
+		for (int w = 0; w < width; w++) {
+			int index = start + w;
+			if (dist[index] != INF)
+				dist[index] *= dist[index];
+		}
+	}
+
+	/**
+	 * The class Envelope, which computes the 1D squared distance transform of sampled function
+	 * by the lower envelope of parabolas. The buffers are reused for each line.
+	 */
+	private static class Envelope {
+
+		/** The values of the function of a line. */
+		private int[] f;
+
+		/** The locations of parabolas in the lower envelope. */
+		private int[] v;
+
+		/** The boundaries between parabolas in the lower envelope. */
+		private double[] z;
+
+		/**
+		 * Instantiates a new envelope for lines of given length.
+		 *
+		 * @param length the length of a line
+		 */
+		private Envelope(int length) {
+			f = new int[length];
+			v = new int[length];
+			z = new double[length + 1];
+		}
+
+		/**
+		 * Transform a line of given 1D array in place. The line starts from given index, and
+		 * each pixel of the line is separated by given stride.
+		 *
+		 * @param dist the 1D array of squared distances
+		 * @param start the index of the first pixel of the line
+		 * @param stride the stride between pixels of the line
+		 * @param length the length of the line
+		 */
+		private void transform(int[] dist, int start, int stride, int length) {
+			int k = -1;
+			for (int q = 0; q < length; q++) {
+				f[q] = dist[start + q * stride];
+				if (f[q] == INF)
+					continue;
+				double s = 0;
+				while (k >= 0) {
+					s = intersect(v[k], q);
+					if (s > z[k])
+						break;
+					k--;
+				}
+				k++;
+				v[k] = q;
+				z[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+				z[k + 1] = Double.POSITIVE_INFINITY;
+			}
+			if (k < 0)
+				return; // no boundary pixel in the line
+			int j = 0;
+			for (int q = 0; q < length; q++) {
+				while (z[j + 1] < q)
+					j++;
+				long dq = q - v[j];
+				dist[start + q * stride] = (int) Math.min(INF - 1, dq * dq + f[v[j]]);
+			}
+		}
+
+		/**
+		 * Computes the intersection of parabolas rooted at given two locations.
+		 *
+		 * @param p the location of the first parabola
+		 * @param q the location of the second parabola
+		 * @return the intersection of two parabolas
+		 */
+		private double intersect(int p, int q) {
+			return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * (q - p));
+		}
+	}
+
+	/**
+	 * Finds the deepest pixel of each label, which has the largest distance to the nearest
+	 * boundary pixel. If several pixels have the largest distance, the first pixel in raster
+	 * order is returned.
+	 *
+	 * @param matrix the 1D array of labels
+	 * @param labelCount the number of labels
+	 * @param dist the 1D array of squared distances
+	 * @return the index of the deepest pixel of each label (index 0 is unused)
+	 */
+	public static int[] findDeepest(int[] matrix, int labelCount, int[] dist) {
+		int[] deepest = new int[labelCount + 1];
+		int[] max = new int[labelCount + 1];
+		Arrays.fill(max, -1);
+		for (int i = 0; i < matrix.length; i++) {
+			int label = matrix[i];
+			if (dist[i] > max[label]) {
+				max[label] = dist[i];
+				deepest[label] = i;
+			}
+		}
+		return deepest;
+	}
+
+	/**
+	 * Sets the maximum number of threads. If 1, the transform is computed on the calling thread.
+	 *
+	 * @param parallelism the maximum number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+}
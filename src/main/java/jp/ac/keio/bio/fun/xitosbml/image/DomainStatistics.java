@@ -0,0 +1,309 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.Arrays;
+
+import org.scijava.vecmath.Point3d;
+
+/**
+ * The class DomainStatistics, which computes the geometry statistics of each domain
+ * (label) in the 1D array of labels in one linear sweep.
+ * The statistics are the number of pixels (volume), the number of faces of pixels which
+ * are not shared with the same domain (surface area), the bounding box and the centroid.
+ * For a 2D image, the surface area is the number of edges (perimeter).
+ * The faces shared by two different domains are also counted for each pair of domains,
+ * which is the contact area of two domains used to merge small domains ({@link ComponentMerger}).
+ * The size of a membrane is counted by {@link ImageEdit} with the connectivity of the image instead.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class DomainStatistics {
+
+	/** The width of an image. */
+	private int width;
+
+	/** The height of an image. */
+	private int height;
+
+	/** The depth of an image. */
+	private int depth;
+
+	/** The number of labels. */
+	private int labelCount;
+
+	/** The number of pixels of each label. */
+	private long[] count;
+
+	/** The number of faces on the surface of each label. */
+	private long[] surface;
+
+	/** The minimum x offset of each label. */
+	private int[] minX;
+
+	/** The minimum y offset of each label. */
+	private int[] minY;
+
+	/** The minimum z offset of each label. */
+	private int[] minZ;
+
+	/** The maximum x offset of each label. */
+	private int[] maxX;
+
+	/** The maximum y offset of each label. */
+	private int[] maxY;
+
+	/** The maximum z offset of each label. */
+	private int[] maxZ;
+
+	/** The sum of x offsets of each label. */
+	private double[] sumX;
+
+	/** The sum of y offsets of each label. */
+	private double[] sumY;
+
+	/** The sum of z offsets of each label. */
+	private double[] sumZ;
+
+	/** The table of pairs of labels (larger label, smaller label) and their shared faces. */
+	private LabelPairTable contacts;
+
+	/**
+	 * Instantiates a new domain statistics, and computes the statistics of each label
+	 * in given 1D array of labels. Labels start from 1.
+	 *
+	 * @param matrix the 1D array of labels
+	 * @param labelCount the number of labels
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 */
+	public DomainStatistics(int[] matrix, int labelCount, int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.labelCount = labelCount;
+		compute(matrix);
+	}
+
+	/**
+	 * Instantiates a new empty domain statistics of given number of labels.
+	 *
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @param labelCount the number of labels
+	 */
+	private DomainStatistics(int width, int height, int depth, int labelCount) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.labelCount = labelCount;
+	}
+
+	/**
+	 * Computes the statistics of each label by one raster scan. A face between two pixels
+	 * is checked once from the pixel which precedes in raster order, and a face on the
+	 * border of an image is counted as a surface.
+	 *
+	 * @param matrix the 1D array of labels
+	 */
+	private void compute(int[] matrix) {
+		allocate();
+		int slice = width * height;
+		boolean is3D = depth > 1;
+		for (int d = 0, index = 0; d < depth; d++) {
+			for (int h = 0; h < height; h++) {
+				for (int w = 0; w < width; w++, index++) {
+					int label = matrix[index];
+					count[label]++;
+					if (w < minX[label]) minX[label] = w;
+					if (w > maxX[label]) maxX[label] = w;
+					if (h < minY[label]) minY[label] = h;
+					if (h > maxY[label]) maxY[label] = h;
+					if (d < minZ[label]) minZ[label] = d;
+					if (d > maxZ[label]) maxZ[label] = d;
+					sumX[label] += w;
+					sumY[label] += h;
+					sumZ[label] += d;
+
+					// faces on the border of an image
+					if (w == 0) surface[label]++;
+					if (w == width - 1) surface[label]++;
+					if (h == 0) surface[label]++;
+					if (h == height - 1) surface[label]++;
+					if (is3D && d == 0) surface[label]++;
+					if (is3D && d == depth - 1) surface[label]++;
+
+					// faces shared with the following pixels
+					if (w != width - 1) addFace(label, matrix[index + 1]);
+					if (h != height - 1) addFace(label, matrix[index + width]);
+					if (d != depth - 1) addFace(label, matrix[index + slice]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Allocates the arrays of the statistics of each label, and creates an empty table of contacts.
+	 */
+	private void allocate() {
+		int num = labelCount + 1;
+		count = new long[num];
+		surface = new long[num];
+		minX = new int[num];
+		minY = new int[num];
+		minZ = new int[num];
+		maxX = new int[num];
+		maxY = new int[num];
+		maxZ = new int[num];
+		sumX = new double[num];
+		sumY = new double[num];
+		sumZ = new double[num];
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minY, Integer.MAX_VALUE);
+		Arrays.fill(minZ, Integer.MAX_VALUE);
+		Arrays.fill(maxX, -1);
+		Arrays.fill(maxY, -1);
+		Arrays.fill(maxZ, -1);
+		contacts = new LabelPairTable();
+	}
+
+	/**
+	 * Creates the statistics of the labels merged by given new labels ({@link ComponentLabeler#relabel(int[], byte[])})
+	 * from the statistics of this object, without scanning the 1D array of labels again. The volume,
+	 * bounding box and centroid are merged from the merged labels, and the faces shared by the merged
+	 * labels are removed from the surface area and the contacts.
+	 *
+	 * @param newLabel the new label of each label of this object
+	 * @param newCount the number of new labels
+	 * @return the statistics of the new labels
+	 */
+	public DomainStatistics merge(int[] newLabel, int newCount) {
+		DomainStatistics merged = new DomainStatistics(width, height, depth, newCount);
+		merged.allocate();
+		for (int label = 1; label <= labelCount; label++) {
+			int n = newLabel[label];
+			merged.count[n] += count[label];
+			merged.surface[n] += surface[label];
+			merged.minX[n] = Math.min(merged.minX[n], minX[label]);
+			merged.minY[n] = Math.min(merged.minY[n], minY[label]);
+			merged.minZ[n] = Math.min(merged.minZ[n], minZ[label]);
+			merged.maxX[n] = Math.max(merged.maxX[n], maxX[label]);
+			merged.maxY[n] = Math.max(merged.maxY[n], maxY[label]);
+			merged.maxZ[n] = Math.max(merged.maxZ[n], maxZ[label]);
+			merged.sumX[n] += sumX[label];
+			merged.sumY[n] += sumY[label];
+			merged.sumZ[n] += sumZ[label];
+		}
+		for (int index = 0; index < contacts.size(); index++) {
+			int label1 = newLabel[contacts.getHigher(index)];
+			int label2 = newLabel[contacts.getLower(index)];
+			int faces = contacts.getCount(index);
+			if (label1 == label2) {
+				merged.surface[label1] -= 2L * faces;
+				continue;
+			}
+			merged.contacts.add(Math.max(label1, label2), Math.min(label1, label2), faces);
+		}
+		return merged;
+	}
+
+	/**
+	 * Adds a face between given two labels. If the labels are different, the face is
+	 * counted as a surface of both labels and as a contact of the pair.
+	 *
+	 * @param label1 the label 1
+	 * @param label2 the label 2
+	 */
+	private void addFace(int label1, int label2) {
+		if (label1 == label2)
+			return;
+		surface[label1]++;
+		surface[label2]++;
+		contacts.add(Math.max(label1, label2), Math.min(label1, label2));
+	}
+
+	/**
+	 * Gets the number of labels.
+	 *
+	 * @return the number of labels
+	 */
+	public int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Gets the number of pixels (volume) of given label.
+	 *
+	 * @param label the label
+	 * @return the number of pixels
+	 */
+	public long getCount(int label) {
+		return count[label];
+	}
+
+	/**
+	 * Gets the number of faces on the surface (surface area) of given label.
+	 *
+	 * @param label the label
+	 * @return the number of faces on the surface
+	 */
+	public long getSurface(int label) {
+		return surface[label];
+	}
+
+	/**
+	 * Gets the number of faces shared by given two labels (contact area).
+	 *
+	 * @param label1 the label 1
+	 * @param label2 the label 2
+	 * @return the number of shared faces
+	 */
+	public long getContact(int label1, int label2) {
+		int index = contacts.indexOf(Math.max(label1, label2), Math.min(label1, label2));
+		return index < 0 ? 0 : contacts.getCount(index);
+	}
+
+	/**
+	 * Gets the table of pairs of labels (larger label, smaller label) which share faces,
+	 * with the number of shared faces of each pair.
+	 *
+	 * @return the table of pairs of labels
+	 */
+	public LabelPairTable getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * Gets the minimum corner of the bounding box of given label.
+	 *
+	 * @param label the label
+	 * @return the minimum x, y and z offsets
+	 */
+	public int[] getBoundingBoxMin(int label) {
+		return new int[] { minX[label], minY[label], minZ[label] };
+	}
+
+	/**
+	 * Gets the maximum corner (inclusive) of the bounding box of given label.
+	 *
+	 * @param label the label
+	 * @return the maximum x, y and z offsets
+	 */
+	public int[] getBoundingBoxMax(int label) {
+		return new int[] { maxX[label], maxY[label], maxZ[label] };
+	}
+
+	/**
+	 * Gets the centroid of given label.
+	 *
+	 * @param label the label
+	 * @return the centroid as Point3d
+	 */
+	public Point3d getCentroid(int label) {
+		if (count[label] == 0)
+			return new Point3d();
+		return new Point3d(sumX[label] / count[label], sumY[label] / count[label], sumZ[label] / count[label]);
+	}
+}
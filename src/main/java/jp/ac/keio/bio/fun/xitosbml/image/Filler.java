@@ -9,6 +9,7 @@ import java.util.Map.Entry;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
 
 
 /**
@@ -44,6 +45,9 @@ public class Filler {
 	/** The mask which stores the label of each pixel. */
 	private int[] mask;
 	
+	/** The neighborhood of a pixel in the mask, which includes padding. */
+	private Neighborhood paddedNeighborhood;
+	
 	/**
 	 * The hashmap of pixel value. &lt;labelnumber, pixel value&gt;.
 	 * The domain which has pixel value = 0 will have a label = 1.
@@ -53,8 +57,27 @@ public class Filler {
 	/** The raw data (1D byte array) of the image. */
 	private byte[] pixels;
 	
-	/** The raw data (1D int array) of inverted the image. */
-	private int[] invert;
+	/** The bit-packed mask of inverted the image, in which the background pixels and the padding are set. */
+	private BitVolume invert;
+	
+	/**
+	 * The flag whether holes are filled by the single-pass flood fill ({@link #floodFillHole()})
+	 * instead of the iterative labeling ({@link #label()}, {@link #checkHole()} and {@link #fillHole()}).
+	 */
+	private boolean floodFill = false;
+	
+	/**
+	 * The maximum number of threads used by the flood fill. If more than 1, the background
+	 * of a Z-stack image is labeled by the slab-parallel {@link ComponentLabeler} instead of
+	 * the queue-based flood fill ({@link #labelFillHole()}).
+	 */
+	private int parallelism = ParallelUtil.getParallelism();
+	
+	/** The connectivity of adjacent pixels. 0 means the default connectivity. */
+	private int connectivity = 0;
+	
+	/** The neighborhood of a pixel with the connectivity. */
+	private Neighborhood neighborhood;
 	
 	/**
 	 * Fill a hole in the given image (ImagePlus object) by morphology operation,
@@ -70,14 +93,7 @@ public class Filler {
 		this.image = image;
 
 		pixels = ImgProcessUtil.copyMat(image);
-		invertMat();
-		label();
-		if (checkHole()) {
-			while (checkHole()) {
-				fillHole();
-				hashPix.clear();
-				label();
-			}
+		if (fillPixels()) {
 			ImageStack stack = createStack();
 			image.setStack(stack);
 			image.updateImage();
@@ -96,17 +112,11 @@ public class Filler {
 		this.width = spImg.getWidth();
 		this.height = spImg.getHeight();
 		this.depth = spImg.getDepth();
-		this.image = spImg.getImage();
-		this.pixels = spImg.getRaw();
-		invertMat();
-		label();
-		if(checkHole()){
-			while(checkHole()){	
-				fillHole();
-				hashPix.clear();
-				label();
-			}
-			ImageStack stack = createStack();
+		this.connectivity = spImg.getConnectivity();
+		VoxelVolume volume = spImg.getVolume();
+		ImagePlus image = spImg.getImage();
+		if(fill(volume)){
+			ImageStack stack = createStack(volume);
 			image.setStack(stack);
 			image.updateImage();
 		}
@@ -114,6 +124,298 @@ public class Filler {
 		return image;
 	}
 	
+	/**
+	 * Fill a hole in given raw data (1D array) of an image in place by morphology operation.
+	 * No ImageJ image object is created, so that this method can be used in a pipeline
+	 * which shares one raw data between image processing filters ({@link ImagePipeline}).
+	 *
+	 * @param pixels the raw data (1D array) of an image
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @return true, if a hole existed and was filled
+	 */
+	public boolean fill(byte[] pixels, int width, int height, int depth){
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.image = null;
+		this.pixels = pixels;
+		return fillPixels();
+	}
+	
+	/**
+	 * Fill a hole in given volume in place by morphology operation. The volume is filled as
+	 * the raw data (1D array) of an image, which is written back to the volume if it is not
+	 * stored in one Java array.
+	 *
+	 * @param volume the volume of an image
+	 * @return true, if a hole existed and was filled
+	 * @throws IllegalStateException if the volume does not fit in one Java array
+	 */
+	public boolean fill(VoxelVolume volume){
+		this.width = volume.getWidth();
+		this.height = volume.getHeight();
+		this.depth = volume.getDepth();
+		this.image = null;
+		this.pixels = volume.toArray();
+		boolean filled = fillPixels();
+		if (filled && !volume.hasArray())
+			volume.setArray(pixels);
+		return filled;
+	}
+	
+	/**
+	 * Fill holes in the raw data (1D array) of the image (pixels[]) in place.
+	 * Depending on the fill mode, the holes are filled by the single-pass flood fill
+	 * or by the iterative labeling.
+	 *
+	 * @return true, if a hole existed and was filled
+	 */
+	private boolean fillPixels(){
+		neighborhood = new Neighborhood(connectivity, width, height, depth);
+		if(floodFill && parallelism > 1 && depth > 1)
+			return labelFillHole();
+		if(floodFill)
+			return floodFillHole();
+		
+		invertMat();
+		hashPix.clear();
+		label();
+		if(!checkHole())
+			return false;
+		while(checkHole()){	
+			fillHole();
+			hashPix.clear();
+			label();
+		}
+		return true;
+	}
+	
+	/**
+	 * Fill holes in the raw data (1D array) of the image (pixels[]) by a flood fill.
+	 * At first, the background (pixel value = 0) which is connected to the border of the
+	 * image is flooded from the border by a queue-based flood fill. For a 3D image, which has
+	 * more than 2 slices, the top and the bottom slices are also treated as the border.
+	 * Then, the remaining background regions are enclosed by other domains (holes), and
+	 * each hole is filled with the pixel value of its majority adjacent domain in a second
+	 * sweep. If the majority is a tie, the larger pixel value is used.
+	 * Each pixel is visited a constant number of times, so the cost is linear in the number
+	 * of pixels. The background and the visited pixels are kept in bit-packed masks
+	 * ({@link BitVolume}), and the holes are detected word-wise as the background which is
+	 * not flooded from the border, so that an image without holes needs no second sweep.
+	 *
+	 * @return true, if a hole existed and was filled
+	 */
+	private boolean floodFillHole(){
+		int slice = width * height;
+		int size = slice * depth;
+		BitVolume holes = BitVolume.of(pixels, width, height, depth, (byte) 0);
+		if (holes.isEmpty())
+			return false;
+		BitVolume visited = new BitVolume(width, height, depth);
+		int[] queue = new int[size];
+		int tail = 0;
+		
+		// seed the flood fill with the background pixels on the border
+		for (int d = 0; d < depth; d++) {
+			boolean zBorder = depth > 2 && (d == 0 || d == depth - 1);
+			for (int h = 0; h < height; h++) {
+				for (int w = 0; w < width; w++) {
+					int index = d * slice + h * width + w;
+					if ((zBorder || h == 0 || h == height - 1 || w == 0 || w == width - 1) && pixels[index] == 0) {
+						visited.set(index);
+						queue[tail++] = index;
+					}
+				}
+			}
+		}
+		tail = flood(queue, 0, tail, visited, null);
+		
+		// the holes are the background pixels which are not connected to the border
+		holes.andNot(visited);
+		if (holes.isEmpty())
+			return false;
+		
+		// fill each enclosed region with the pixel value of its majority adjacent domain
+		int[] histogram = new int[256];
+		for (int i = (int) holes.nextSetBit(0); i >= 0; i = (int) holes.nextSetBit(i + 1)) {
+			if (visited.get(i))
+				continue;
+			int head = tail;
+			visited.set(i);
+			queue[tail++] = i;
+			tail = flood(queue, head, tail, visited, histogram);
+			
+			int max = 0, count = 0;
+			for (int val = 1; val < histogram.length; val++) {
+				if (histogram[val] >= count && histogram[val] > 0) {
+					max = val;
+					count = histogram[val];
+				}
+				histogram[val] = 0;
+			}
+			histogram[0] = 0;
+			for (int n = head; n < tail; n++)
+				pixels[queue[n]] = (byte) max;
+		}
+		return true;
+	}
+	
+	/**
+	 * Fill holes in the raw data (1D array) of the image (pixels[]) by the slab-parallel
+	 * {@link ComponentLabeler} in binary mode. This is the parallel version of
+	 * {@link #floodFillHole()} and gives the identical result. The background regions
+	 * which touch the border of the image are outside, and each of the other background
+	 * regions (holes) is filled with the pixel value of its majority adjacent domain.
+	 *
+	 * @return true, if a hole existed and was filled
+	 */
+	private boolean labelFillHole(){
+		int slice = width * height;
+		int size = slice * depth;
+		ComponentLabeler labeler = new ComponentLabeler(width, height, depth);
+		labeler.setBinary(true);
+		labeler.setConnectivity(connectivity);
+		labeler.setParallelism(parallelism);
+		final int[] matrix = labeler.label(pixels);
+		int labelCount = labeler.getLabelCount();
+		
+		// mark the background regions which touch the border of the image
+		boolean[] outside = new boolean[labelCount + 1];
+		for (int d = 0; d < depth; d++) {
+			boolean zBorder = depth > 2 && (d == 0 || d == depth - 1);
+			for (int h = 0; h < height; h++) {
+				for (int w = 0; w < width; w++) {
+					int index = d * slice + h * width + w;
+					if ((zBorder || h == 0 || h == height - 1 || w == 0 || w == width - 1) && pixels[index] == 0)
+						outside[matrix[index]] = true;
+					// only the border of inner slices has to be checked
+					if (!zBorder && h != 0 && h != height - 1 && w == 0 && width > 2)
+						w = width - 2;
+				}
+			}
+		}
+		
+		// count the pixel values of adjacent domains of each hole, only for the
+		// (hole, pixel value) pairs which actually exist
+		LabelPairTable histogram = new LabelPairTable();
+		int[] neighbors = new int[neighborhood.size()];
+		for (int i = 0; i < size; i++) {
+			if (pixels[i] != 0 || outside[matrix[i]])
+				continue;
+			int num = neighborhood.getNeighbors(i, i % width, (i % slice) / width, i / slice, neighbors);
+			for (int n = 0; n < num; n++) {
+				if (pixels[neighbors[n]] != 0)
+					histogram.add(matrix[i], pixels[neighbors[n]] & 0xFF);
+			}
+		}
+		if (histogram.size() == 0)
+			return false;
+		
+		// fill each hole with the pixel value of its majority adjacent domain
+		final byte[] fillValue = new byte[labelCount + 1];
+		final boolean[] hole = new boolean[labelCount + 1];
+		int[] count = new int[labelCount + 1];
+		for (int p = 0; p < histogram.size(); p++) {
+			int label = histogram.getHigher(p);
+			int val = histogram.getLower(p);
+			int c = histogram.getCount(p);
+			if (c > count[label] || (c == count[label] && val > (fillValue[label] & 0xFF))) {
+				fillValue[label] = (byte) val;
+				count[label] = c;
+			}
+			hole[label] = true;
+		}
+		ParallelUtil.forEach(0, depth, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from * width * height, end = to * width * height; i < end; i++) {
+					if (hole[matrix[i]])
+						pixels[i] = fillValue[matrix[i]];
+				}
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * Flood the background pixels (pixel value = 0) which are connected (with the
+	 * connectivity of the neighborhood) to the pixels in queue[head, tail). Each flooded pixel
+	 * is marked as visited and appended to the queue. If a histogram is given, the pixel values
+	 * of the adjacent non-background pixels are counted to the histogram.
+	 *
+	 * @param queue the queue of indices of pixels
+	 * @param head the head of the queue
+	 * @param tail the tail of the queue
+	 * @param visited the mask of the visited pixels
+	 * @param histogram the histogram of the pixel values of adjacent domains, or null
+	 * @return the new tail of the queue
+	 */
+	private int flood(int[] queue, int head, int tail, BitVolume visited, int[] histogram){
+		int slice = width * height;
+		int[] next = new int[neighborhood.size()];
+		while (head < tail) {
+			int index = queue[head++];
+			int num = neighborhood.getNeighbors(index, index % width, (index % slice) / width, index / slice, next);
+			for (int n = 0; n < num; n++) {
+				int adj = next[n];
+				if (pixels[adj] == 0) {
+					if (!visited.get(adj)) {
+						visited.set(adj);
+						queue[tail++] = adj;
+					}
+				} else if (histogram != null) {
+					histogram[pixels[adj] & 0xFF]++;
+				}
+			}
+		}
+		return tail;
+	}
+	
+	/**
+	 * Sets the fill mode. If true, holes are filled by the single-pass flood fill, which
+	 * fills each hole with the pixel value of its majority adjacent domain. If false, holes
+	 * are filled by the iterative labeling, which repeats labeling and filling the outermost
+	 * pixels of holes until no hole remains.
+	 *
+	 * @param floodFill the flag whether holes are filled by the single-pass flood fill
+	 */
+	public void setFloodFill(boolean floodFill){
+		this.floodFill = floodFill;
+	}
+	
+	/**
+	 * Sets the connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26
+	 * for a 3D image), which is used when filling a hole in an ImagePlus object.
+	 * A SpatialImage object is filled with its own connectivity. If 0, the default
+	 * connectivity is used.
+	 *
+	 * @param connectivity the connectivity of adjacent pixels
+	 */
+	public void setConnectivity(int connectivity){
+		this.connectivity = connectivity;
+	}
+	
+	/**
+	 * Sets the maximum number of threads used by the flood fill. If 1, holes are
+	 * filled sequentially on the calling thread.
+	 *
+	 * @param parallelism the maximum number of threads
+	 */
+	public void setParallelism(int parallelism){
+		this.parallelism = Math.max(1, parallelism);
+	}
+	
+	/**
+	 * Checks if holes are filled by the single-pass flood fill.
+	 *
+	 * @return true, if holes are filled by the single-pass flood fill
+	 */
+	public boolean isFloodFill(){
+		return floodFill;
+	}
+	
 	/**
 	 * Creates the stack of images from raw data (1D array) of image (pixels[]),
 	 * and returns the stack of images.
@@ -131,9 +433,27 @@ public class Filler {
 	}
 	
 	/**
-	 * Create an inverted 1D array of an image (invert[]) from 1D array of an image (pixels[]).
+	 * Creates the stack of images from given volume, and returns the stack of images.
+	 *
+	 * @param volume the volume of an image
+	 * @return the stack of images
+	 */
+	private ImageStack createStack(VoxelVolume volume){
+		ImageStack altimage = new ImageStack(width, height);
+		for(int d = 0 ; d < depth ; d++){
+			byte[] matrix = new byte[width * height];
+			volume.getSlice(d, matrix);
+			altimage.addSlice(new ByteProcessor(width,height,matrix,null));
+		}
+		return altimage;
+	}
+	
+	/**
+	 * Create an inverted mask of an image (invert) from 1D array of an image (pixels[]).
 	 * Each pixel value will be inverted (0 -> 1, otherwise -> 0). For example, the Black and White
-	 * binary image will be converted to a White and Black binary image.
+	 * binary image will be converted to a White and Black binary image. The mask is packed
+	 * in bits ({@link BitVolume}), which costs 1/32 of an int array. The mask is kept up to date
+	 * while holes are filled ({@link #fill(int)}), so that it always has the background pixels.
 	 */
  	private void invertMat(){
 		lwidth = width + 2;
@@ -141,22 +461,20 @@ public class Filler {
 		if(depth < 3) ldepth = depth;
 		else 			ldepth = depth + 2;
 		
-		invert = new int[lwidth * lheight * ldepth]; 
-		mask = new int[lwidth * lheight * ldepth];
+		invert = new BitVolume(lwidth, lheight, ldepth);
+		mask = null;
+		paddedNeighborhood = null;
 		if (ldepth > depth) {  // 3D image
 			for (int d = 0; d < ldepth; d++) {
 				for (int h = 0; h < lheight; h++) {
 					for (int w = 0; w < lwidth; w++) {
 						if (d == 0 || d == ldepth - 1 || h == 0 || h == lheight - 1 || w == 0 || w == lwidth - 1) {
-							invert[d * lheight * lwidth + h * lwidth + w] = 1;
-							mask[d * lheight * lwidth + h * lwidth + w] = 1;
+							invert.set(d * lheight * lwidth + h * lwidth + w);
 							continue;
 						}
 
 						if (pixels[(d - 1) * height * width + (h - 1) * width + w - 1] == 0)
-							invert[d * lheight * lwidth + h * lwidth + w] = 1;
-						else
-							invert[d * lheight * lwidth + h * lwidth + w] = 0;
+							invert.set(d * lheight * lwidth + h * lwidth + w);
 					}
 				}
 			}
@@ -165,15 +483,12 @@ public class Filler {
 				for (int h = 0; h < lheight; h++) {
 					for (int w = 0; w < lwidth; w++) {
 						if(h == 0 || h == lheight - 1 || w == 0 || w == lwidth - 1){
-							invert[d * lheight * lwidth + h * lwidth + w] = 1;
-							mask[d * lheight * lwidth + h * lwidth + w] = 1;
+							invert.set(d * lheight * lwidth + h * lwidth + w);
 							continue;
 						}
 							
 						if (pixels[d * height * width + (h - 1) * width + w - 1] == 0)
-							invert[d * lheight * lwidth + h * lwidth + w] = 1;
-						else
-							invert[d * lheight * lwidth + h * lwidth + w] = 0;	
+							invert.set(d * lheight * lwidth + h * lwidth + w);
 					}
 				}
 			}
@@ -191,11 +506,13 @@ public class Filler {
 	public void label(){
 		hashPix.put(1, (byte)0);
 		labelCount = 2;
+		if (mask == null)
+			createMask();
 		if (ldepth > depth) {
 			for (int d = 1; d < ldepth - 1; d++) {
 				for (int h = 1; h < lheight - 1; h++) {
 					for (int w = 1; w < lwidth - 1; w++) {
-						if (invert[d * lheight * lwidth + h * lwidth + w] == 1 && pixels[(d-1) * height * width + (h-1) * width + w - 1] == 0) {
+						if (invert.get(d * lheight * lwidth + h * lwidth + w)) {
 							mask[d * lheight * lwidth + h * lwidth + w] = setLabel(w, h, d, pixels[(d-1) * height * width + (h-1) * width + w - 1]);
 						}else{
 							mask[d * lheight * lwidth + h * lwidth + w] = setbackLabel(w, h, d, pixels[(d-1) * height * width + (h-1) * width + w - 1]);
@@ -207,7 +524,7 @@ public class Filler {
 			for (int d = 0; d < ldepth; d++) {
 				for (int h = 1; h < lheight - 1; h++) {
 					for (int w = 1; w < lwidth - 1; w++) {
-						if (invert[d * lheight * lwidth + h * lwidth + w] == 1 && pixels[d * height * width + (h-1) * width + w - 1] == 0) {
+						if (invert.get(d * lheight * lwidth + h * lwidth + w)) {
 							mask[d * lheight * lwidth + h * lwidth + w] = setLabel(w, h, d, pixels[d * height * width + (h-1) * width + w - 1]);
 						}else{
 							mask[d * lheight * lwidth + h * lwidth + w] = setbackLabel(w, h, d, pixels[d * height * width + (h-1) * width + w - 1]);
@@ -218,6 +535,24 @@ public class Filler {
 		}
 	}
 	
+	/**
+	 * Creates the mask which stores the label of each pixel. The padding is the background
+	 * which surrounds the image, so that it has the label of the outer background (label = 1).
+	 * Only the pixels of the image are labeled by {@link #label()}, and the padding keeps its label.
+	 */
+	private void createMask(){
+		mask = new int[lwidth * lheight * ldepth];
+		for (int d = 0; d < ldepth; d++) {
+			boolean zBorder = ldepth > depth && (d == 0 || d == ldepth - 1);
+			for (int h = 0; h < lheight; h++) {
+				for (int w = 0; w < lwidth; w++) {
+					if (zBorder || h == 0 || h == lheight - 1 || w == 0 || w == lwidth - 1)
+						mask[d * lheight * lwidth + h * lwidth + w] = 1;
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Check whether a hole exists in the hashmap of pixels (HashMap&lt;label number, pixel value&gt;).
 	 *
@@ -255,6 +590,8 @@ public class Filler {
 					for (int w = 1; w < lwidth - 1; w++) {
 						if (mask[d * lheight * lwidth + h * lwidth + w] == labelNum ) {
 							pixels[(d-1) * height * width + (h-1) * width + w - 1] = checkAdjacentsLabel(w, h, d, labelNum);
+							if (pixels[(d-1) * height * width + (h-1) * width + w - 1] != 0)
+								invert.clear(d * lheight * lwidth + h * lwidth + w);
 						}
 					}
 				}
@@ -265,6 +602,8 @@ public class Filler {
 					for (int w = 1; w < lwidth - 1; w++) {
 						if (mask[d * lheight * lwidth + h * lwidth + w] == labelNum ) {
 							pixels[d * height * width + (h-1) * width + w - 1] = checkAdjacentsLabel(w, h, d, labelNum);
+							if (pixels[d * height * width + (h-1) * width + w - 1] != 0)
+								invert.clear(d * lheight * lwidth + h * lwidth + w);
 						}
 					}
 				}
@@ -286,29 +625,15 @@ public class Filler {
 	 */
 	public byte checkAdjacentsLabel(int w, int h, int d, int labelNum){
 		List<Byte> adjVal = new ArrayList<Byte>();
-			//check right
-			if(mask[d * lheight * lwidth + h * lwidth + w + 1] != labelNum)
-				adjVal.add(hashPix.get(mask[d * lheight * lwidth + h * lwidth + w + 1]));
-			
-			//check left			
-			if(mask[d * lheight * lwidth + h * lwidth + w - 1] != labelNum)
-				adjVal.add(hashPix.get(mask[d * lheight * lwidth + h * lwidth + w - 1]));
-			
-			//check down
-			if(mask[d * lheight * lwidth + (h+1) * lwidth + w ] != labelNum)
-				adjVal.add(hashPix.get(mask[d * lheight * lwidth + (h+1) * lwidth + w]));
-
-			//check up
-			if(mask[d * lheight * lwidth + (h-1) * lwidth + w ] != labelNum)
-				adjVal.add(hashPix.get(mask[d * lheight * lwidth + (h-1) * lwidth + w]));
-
-			//check above
-			if(d != depth - 1 && mask[(d+1) * lheight * lwidth + h * lwidth + w] != labelNum)
-				adjVal.add(hashPix.get(mask[(d+1) * lheight * lwidth + h * lwidth + w]));
-			
-			//check below
-			if(d != 0 && mask[(d-1) * lheight * lwidth + h * lwidth + w] != labelNum)
-				adjVal.add(hashPix.get(mask[(d - 1) * lheight * lwidth + h * lwidth + w]));
+		if(paddedNeighborhood == null)
+			paddedNeighborhood = new Neighborhood(connectivity, lwidth, lheight, ldepth);
+		int index = d * lheight * lwidth + h * lwidth + w;
+		int[] neighbors = new int[paddedNeighborhood.size()];
+		int num = paddedNeighborhood.getNeighbors(index, w, h, d, neighbors);
+		for(int n = 0 ; n < num ; n++){
+			if(mask[neighbors[n]] != labelNum)
+				adjVal.add(hashPix.get(mask[neighbors[n]]));
+		}
 			
 			if(adjVal.isEmpty())
 				return 0;
@@ -38,9 +38,12 @@ public class ImageBorder {
 	/** The depth of an image. */
 	private int depth;
 	
-	/** The raw data (1D byte array) of the image. */
+	/** The raw data (1D byte array) of the image, or null if the image is given as a SpatialImage object. */
 	private byte[] raw;
 	
+	/** The volume of the SpatialImage object, which is read and written slice by slice. */
+	private VoxelVolume volume;
+	
 	/** The image has safe border. */
 	private boolean hasSafeBorder = true;
 	
@@ -48,7 +51,8 @@ public class ImageBorder {
 	private ImageStack altStack;
 	
 	/**
-	 * Instantiates a new ImageBorder object.
+	 * Instantiates a new ImageBorder object. The volume of the SpatialImage object is
+	 * read and fixed slice by slice, so that it is not copied to one array of the whole image.
 	 *
 	 * @param spImg the SpatialImage object
 	 */
@@ -56,14 +60,40 @@ public class ImageBorder {
 		this.width = spImg.getWidth();
 		this.height = spImg.getHeight();
 		this.depth = spImg.getDepth();
-		this.raw = spImg.getRaw();
+		this.volume = spImg.getVolume();
 		
-		fixBorder();						// blackens all outside pixel
-		hasSafeBorder = isBorderSafe(); 	//depth = 0 or top/bottom slice does not have object
+		byte[] top = new byte[width * height];
+		byte[] bottom = new byte[width * height];
+		volume.getSlice(0, top);
+		fixBorder(top, 0);					// blackens all outside pixel
+		volume.getSlice(depth - 1, bottom);
+		fixBorder(bottom, 0);
+		//depth = 0 or top/bottom slice does not have object
+		hasSafeBorder = depth <= 1 || checkTopBottom(top, 0, bottom, 0);
 		createNewStack(hasSafeBorder);
 		//createNewStack();
 	}
 	
+	/**
+	 * Instantiates a new ImageBorder object with given raw data (1D array) of an image.
+	 * The X and Y border of given raw data is filled with 0 in place, and no stack of
+	 * images is created. Use {@link #getRaw()} to get the raw data which has safe border.
+	 *
+	 * @param raw the raw data (1D array) of an image
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 */
+	public ImageBorder(byte[] raw, int width, int height, int depth){
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.raw = raw;
+		
+		fixBorder();
+		hasSafeBorder = isBorderSafe();
+	}
+	
 	/**
 	 * Fill with 0 for X and Y border. This method is like a zero-padding, but will not
 	 * extend the image size.
@@ -71,12 +101,21 @@ public class ImageBorder {
 	private void fixBorder() {
 		int init = 0, end = depth;
 		
-		for (int d = init; d < end; d++) {
-			for (int h = 0; h < height; h++) {
-				for (int w = 0; w < width; w++) {
-					if (h == 0 || h == height - 1 || w == 0 || w == width - 1) {
-						raw[d * height * width + h * width + w] = 0;
-					}
+		for (int d = init; d < end; d++)
+			fixBorder(raw, d * height * width);
+	}
+	
+	/**
+	 * Fill with 0 for X and Y border of a slice which starts at given offset of given array.
+	 *
+	 * @param matrix the array which contains the slice
+	 * @param offset the index of the first pixel of the slice
+	 */
+	private void fixBorder(byte[] matrix, int offset) {
+		for (int h = 0; h < height; h++) {
+			for (int w = 0; w < width; w++) {
+				if (h == 0 || h == height - 1 || w == 0 || w == width - 1) {
+					matrix[offset + h * width + w] = 0;
 				}
 			}
 		}
@@ -89,33 +128,33 @@ public class ImageBorder {
 	 */
 	private boolean isBorderSafe(){
 		boolean safez = true;
-		if(depth > 1)	safez = checkTopBottom();
+		if(depth > 1)	safez = checkTopBottom(raw, 0, raw, (depth - 1) * width * height);
 		return safez;
 	}
 	
 	/**
 	 * Check whether top and bottom z-stack image contains non zero value.
      * If the z-stack image contains non zero value, this means that the 3D image is not
-	 * surrounded with zero values.
+	 * surrounded with zero values. The background of both slices is packed in bits
+	 * ({@link BitVolume}) and intersected, so that it is checked by 64 voxels per word.
 	 *
+	 * @param top the array which contains the top slice
+	 * @param topOffset the index of the first pixel of the top slice
+	 * @param bottom the array which contains the bottom slice
+	 * @param bottomOffset the index of the first pixel of the bottom slice
 	 * @return true, if the top and bottom z-stack image only contains zero value
 	 */
-	private boolean checkTopBottom(){
-		int bottomSlice = (depth - 1) * width * height;
+	private boolean checkTopBottom(byte[] top, int topOffset, byte[] bottom, int bottomOffset){
+		BitVolume background = BitVolume.of(top, topOffset, width, height, 1, (byte) 0);
+		background.and(BitVolume.of(bottom, bottomOffset, width, height, 1, (byte) 0));
 		
-		for(int h = 0 ; h < height ; h++){
-			for(int w = 0 ; w < width ; w++){
-				if(raw[bottomSlice + width * h + w] != 0 || raw[width * h + w] != 0)
-					return false;
-			}
-		}
-		
-		return true;
+		return background.cardinality() == background.size();
 	}
 	
 	/**
-	 * Creates the new stack of images. If the border of Z axis is not safe,
-	 * then add a layer which is filled with zero (border layer).
+	 * Creates the new stack of images from the volume of the SpatialImage object. The X and Y
+	 * border of each slice is filled with 0, and the slice is written back to the volume.
+	 * If the border of Z axis is not safe, then add a layer which is filled with zero (border layer).
 	 *
 	 * @param hasSafeBorder the flag whether the border of Z axis is safe
 	 */
@@ -127,7 +166,9 @@ public class ImageBorder {
 		
 		for(int i = 1 ; i <= depth ; i++){
 			byte[] slice = new byte[height * width];
-			System.arraycopy(raw, (i-1) * height * width, slice, 0, height * width);
+			volume.getSlice(i - 1, slice);
+			fixBorder(slice, 0);
+			volume.setSlice(i - 1, slice);
 			altStack.addSlice(new ByteProcessor(width,height,slice,null));
     	} 
 		
@@ -168,6 +209,35 @@ public class ImageBorder {
 		is.addSlice(new ByteProcessor(width,height,blackSlice,null));
 	}
 	
+	/**
+	 * Gets the raw data (1D array) which has safe border. If the border of Z axis is
+	 * safe, the raw data is returned as is. Otherwise, a new raw data which has a border
+	 * layer (filled with zero) on the top and the bottom is returned.
+	 *
+	 * @return the raw data (1D array) which has safe border
+	 * @throws IllegalStateException if the image is given as a SpatialImage object, whose
+	 * image with safe border is given as the stack of images ({@link #getStackImage()})
+	 */
+	public byte[] getRaw(){
+		if(raw == null)
+			throw new IllegalStateException("The raw data is only given by ImageBorder(byte[], int, int, int)");
+		if(hasSafeBorder)
+			return raw;
+		int slice = width * height;
+		byte[] padded = new byte[slice * (depth + 2)];
+		System.arraycopy(raw, 0, padded, slice, slice * depth);
+		return padded;
+	}
+	
+	/**
+	 * Gets the depth of the image which has safe border.
+	 *
+	 * @return the depth of the image which has safe border
+	 */
+	public int getDepth(){
+		return hasSafeBorder ? depth : depth + 2;
+	}
+	
 	/**
 	 * Gets the stack of images.
 	 *
@@ -1,14 +1,14 @@
 package jp.ac.keio.bio.fun.xitosbml.image;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map.Entry;
 
 import org.scijava.vecmath.Point3d;
 
 import ij.ImagePlus;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
 
 
 /**
@@ -51,15 +51,27 @@ public class ImageEdit {
 	/** The 1D array of labels. */
 	private int[] matrix;	
 	
-	/** The inverted 1D array of an image */
-	private int[] invert;
+	/** The connected-component labeler, which holds the pixel value and the first pixel of each label. */
+	private ComponentLabeler labeler;
 	
-	/** The hashmap of pixels. HashMap&lt;Integer label, Integer pixel value&gt; */
-	private HashMap<Integer, Integer>  hashPix = new HashMap<Integer,Integer>(); //label + pixel value
+	/** The index of each label among the labels which have the same pixel value. */
+	private int[] domainIndex;
+	
+	/** The connectivity of adjacent pixels. 0 means the default connectivity. */
+	private int connectivity = 0;
+	
+	/** The minimum number of pixels of a domain. Smaller domains are merged into their dominant neighbors. 0 means no limit. */
+	private long minDomainSize = 0;
+	
+	/** The flag whether the image is labeled and its membranes are added in bricks ({@link BrickedVolume}). */
+	private boolean bricked = false;
+	
+	/** The geometry statistics of each label. */
+	private DomainStatistics statistics;
+	
+	/** The hashmap of the size (number of pixels or faces) of each domain type. HashMap&lt;String, Long&gt;*/
+	private HashMap<String,Long> hashDomainTypeSize;
 	
-	/** The hashmap of Point3d objects. HashMap&lt;Integer label, Point3d coordinate&gt; */
-	private HashMap<Integer, Point3d> hashLabelPt = new HashMap<Integer,Point3d>();  //label + coordinates
-    
 	/** The hashmap of domain InteriorPoint of spatial image. HashMap&lt;String domain name, Point3d coordinate&gt; */
     private HashMap<String, Point3d> hashDomInteriorPt = new HashMap<String,Point3d>();  //domain name + coordinates
 	
@@ -78,9 +90,9 @@ public class ImageEdit {
         this.hashDomainTypes = hashDomainTypes;
         this.hashSampledValue = hashSampledValue;
         pixels = ImgProcessUtil.copyMat(image);
-        listVal();
-        invertMat();
         label();
+        listVal();
+        computeStatistics();
         createMembrane();
     }
     
@@ -90,171 +102,161 @@ public class ImageEdit {
      * @param spImg the spatial image object
      */
     public ImageEdit(SpatialImage spImg){
-    	spImg.getImage();    	
         this.width = spImg.getWidth();
         this.height = spImg.getHeight();
         this.depth = spImg.getDepth();
-        this.size = width * height * depth;
+        this.size = checkSize(spImg.getVolume());
         this.hashDomainTypes = spImg.getHashDomainTypes();
         this.hashSampledValue = spImg.getHashSampledValue();
-        this.pixels = spImg.getRaw();
+        this.pixels = spImg.getVolume().toArray();
+        this.connectivity = spImg.getConnectivity();
+        this.minDomainSize = spImg.getMinDomainSize();
+        this.bricked = spImg.isBricked();
 
-        listVal();
-        invertMat();
         label();
+        computeStatistics();
+        if (mergeSmallDomains())
+        	spImg.setRaw(pixels);
+        listVal();
         createMembrane();
+        computeDomainTypeSize();
         spImg.setHashDomainNum(hashDomainNum);
+        spImg.setHashDomainTypeSize(hashDomainTypeSize);
         spImg.setAdjacentsList(adjacentsList);
         createDomInteriorPt();
         spImg.setHashDomInteriorpt(hashDomInteriorPt);
     }
     
     /**
-	 * Create a new labelList object, which is a list of unique pixel values.
+     * Checks the size of given volume and returns it. The 1D array of labels is indexed with
+     * int values, so that an image which has more than Integer.MAX_VALUE voxels can not be
+     * labeled, and it has to be downsampled before adding membranes.
+     *
+     * @param volume the volume of an image
+     * @return the number of voxels of the volume
+     * @throws IllegalArgumentException if the volume does not fit in one Java array
      */
-    private void listVal(){
-    	int temp;
-    	labelList = new ArrayList<Integer>();
-    	for (int i = 0 ; i < size ; i++) {
-			temp = pixels[i] & 0xFF;
-			if (!labelList.contains(temp)) {	
-				labelList.add(new Integer(temp));
-			}
-		}
-    	Collections.sort(labelList);
+    private static int checkSize(VoxelVolume volume){
+    	if (!volume.fitsInArray())
+    		throw new IllegalArgumentException("The image of " + volume.getWidth() + " x " + volume.getHeight()
+    				+ " x " + volume.getDepth() + " voxels is too large to be labeled");
+    	return (int) volume.size();
     }
     
     /**
-     * Create hashmap of count number of labels and set the value with given
-	 * hashmap of pixels.
-     *
-     * @param num the hashmap of pixels (HashMap&lt;Integer, Integer&gt;).
+	 * Create a new labelList object, which is a list of unique pixel values.
+	 * The pixel values are taken from the labels, so that the raw data is not scanned again.
      */
-    public void domtype(HashMap<Integer,Integer> num){
-    	hashLabelNum = new HashMap<Integer,Integer>();
-    	for(Entry<Integer, Integer> e : num.entrySet()){
-    		if(!hashLabelNum.containsKey(e.getValue()))
-    			hashLabelNum.put((Integer) e.getValue(), Collections.frequency(num.values(), e.getValue()));
-    	}	
+    private void listVal(){
+    	boolean[] exists = new boolean[256];
+    	for (int label = 1; label <= labeler.getLabelCount(); label++)
+    		exists[labeler.getLabelValue(label)] = true;
+    	labelList = new ArrayList<Integer>();
+    	for (int i = 0; i < exists.length; i++) {
+    		if (exists[i])
+    			labelList.add(i);
+    	}
     }
-
-	/**
-	 * Create an inverted 1D array of an image (invert[]) from 1D array of an image (pixels[]).
-	 * Each pixel value will be inverted (0 -> 1, otherwise -> 0). For example, the Black and White
-	 * binary image will be converted to a White and Black binary image.
-	 */
- 	private void invertMat(){		
-		invert = new int[width * height * depth]; 
-		matrix = new int[width * height * depth];
-			for (int d = 0; d < depth; d++) {
-				for (int h = 0; h < height; h++) {
-					for (int w = 0; w < width; w++) {
-						if (pixels[d * height * width + h * width + w] == 0)
-							invert[d * height * width + h * width + w] = 1;
-						else
-							invert[d * height * width + h * width + w] = 0;
-					}
-				}
-			}
-	 }
-	 
-	/** The count number of labels. */
-	private int labelCount = 1;
-	
+    
 	/**
-	 * Set the label of each pixel to the 1D array of labels (matrix).
+	 * Set the label of each pixel to the 1D array of labels (matrix) by the
+	 * two-pass connected-component labeling ({@link ComponentLabeler}).
 	 * After the labels are set to all pixels, then count the number of labels
-	 * and set to the hashmap of count number of labels.
+	 * for each pixel value and set to the hashmap of count number of labels.
+	 * The index of each label among the labels which have the same pixel value
+	 * is also computed here, and it is used as a suffix of the domain name.
+	 * A Z-stack image is labeled in parallel by slabs of slices (or by bricks, if the
+	 * spatial image is bricked), which gives the same labels as the sequential labeling.
 	 */
 	public void label(){
-			for (int d = 0; d < depth; d++) {
-				for (int h = 0; h < height; h++) {
-					for (int w = 0; w < width; w++) {
-						matrix[d * height * width + h * width + w] = setLabel(w, h, d, pixels[d * height * width + h * width + w] & 0xFF);
-					}
-				}
-			}
-		domtype(hashPix);
+		labeler = new ComponentLabeler(width, height, depth);
+		labeler.setConnectivity(connectivity);
+		labeler.setBricked(bricked);
+		matrix = labeler.label(pixels);
+		countLabels();
 	}
 	
 	/**
-	 * Sets the label of the given pixel (x offset, y offset, z offset) with its pixel value.
-     * Checks whether the adjacent pixel has the same pixel value, and its label is already assigned.
-	 *
-	 * @param w the x offset
-	 * @param h the y offset
-	 * @param d the z offset
-	 * @param pixVal the pixel value
-	 * @return the label as integer value
+	 * Counts the number of labels for each pixel value and set to the hashmap of count number
+	 * of labels, and computes the index of each label among the labels which have the same pixel value.
 	 */
-	private int setLabel(int w , int h, int d, int pixVal){
-		List<Integer> adjVal = new ArrayList<Integer>();
-		//check left			
-		if(w != 0 && hashPix.get(matrix[d * height * width + h * width + w - 1]).equals(pixVal))
-			adjVal.add(matrix[d * height * width + h * width + w - 1]);
-
-		//check right			
-		if(w != width - 1 && matrix[d * height * width + h * width + w + 1] != 0 && hashPix.get(matrix[d * height * width + h * width + w + 1]).equals(pixVal))
-			adjVal.add(matrix[d * height * width + h * width + w + 1]);
+	private void countLabels(){
+		int labelCount = labeler.getLabelCount();
+		int[] countPerValue = new int[256];
+		domainIndex = new int[labelCount + 1];
+		for (int label = 1; label <= labelCount; label++)
+			domainIndex[label] = countPerValue[labeler.getLabelValue(label)]++;
 
-		//check up
-		if(h != 0 && hashPix.get(matrix[d * height * width + (h-1) * width + w]).equals(pixVal))
-			adjVal.add(matrix[d * height * width + (h-1) * width + w]);
-
-		//check down
-		if(h != height - 1 && matrix[d * height * width + (h+1) * width + w ] != 0 && hashPix.get(matrix[d * height * width + (h+1) * width + w]).equals(pixVal))
-			adjVal.add(matrix[d * height * width + (h+1) * width + w]);
-		
-		//check below
-		if(d != 0 && hashPix.get(matrix[(d-1) * height * width + h * width + w]).equals(pixVal))
-			adjVal.add(matrix[(d-1) * height * width + h * width + w]);
-
-		//check above
-		if(d != depth - 1 && matrix[(d+1) * height * width + h * width + w ] != 0 && hashPix.get(matrix[(d+1) * height * width + h * width + w]).equals(pixVal))
-			adjVal.add(matrix[(d+1) * height * width + h * width + w]);
-		
-		if(adjVal.isEmpty()){
-			hashPix.put(labelCount, pixVal);
-			hashLabelPt.put(labelCount, new Point3d(w,h,d));
-			return labelCount++;
+		hashLabelNum = new HashMap<Integer,Integer>();
+		for (int i = 0; i < countPerValue.length; i++) {
+			if (countPerValue[i] > 0)
+				hashLabelNum.put(i, countPerValue[i]);
 		}
-			
-		Collections.sort(adjVal);
-		
-		//if all element are same or list has only one element 
-		if(Collections.frequency(adjVal, adjVal.get(0)) == adjVal.size())
-			return adjVal.get(0);
+	}
+	
+	/**
+	 * Computes the geometry statistics (volume, surface area, bounding box and centroid)
+	 * of each label by one sweep over the 1D array of labels ({@link DomainStatistics}).
+	 */
+	private void computeStatistics(){
+		statistics = new DomainStatistics(matrix, labeler.getLabelCount(), width, height, depth);
+	}
+	
+	/**
+	 * Merges the domains (labels) which have fewer pixels than the minimum size into their
+	 * dominant neighbors ({@link ComponentMerger}). The merge is decided from the statistics of
+	 * each label, and the labels, the raw data and the statistics are updated by one pass over
+	 * the pixels without labeling the image again.
+	 *
+	 * @return true, if any domain is merged
+	 */
+	private boolean mergeSmallDomains(){
+		if (minDomainSize <= 1)
+			return false;
+		int[] root = new ComponentMerger(statistics, labeler).merge(minDomainSize);
+		if (root == null)
+			return false;
+		int[] newLabel = labeler.relabel(root, pixels);
+		statistics = statistics.merge(newLabel, labeler.getLabelCount());
+		countLabels();
+		return true;
+	}
+	
+	/**
+	 * Computes the size of each domain type and store it to the hashmap
+	 * (hashDomainTypeSize&lt;String domain type, Long size&gt;). The size of a domain type
+	 * is the number of pixels of its domains, and the size of a membrane is the number
+	 * of pairs of adjacent pixels of the two domains, which are counted by {@link #addMembrane()}
+	 * with the connectivity of the image. With the default connectivity, it is the number of
+	 * faces shared by the two domains, and with a higher connectivity, the pixels which touch
+	 * only at an edge or a corner are counted as well, so that each membrane has a size.
+	 */
+	private void computeDomainTypeSize(){
+		hashDomainTypeSize = new HashMap<String,Long>();
+		String[] domainType = new String[256];
+		for (Integer val : labelList)
+			domainType[val] = getKeyFromValue(hashSampledValue, val);
+		for (int label = 1; label <= labeler.getLabelCount(); label++)
+			addDomainTypeSize(domainType[labeler.getLabelValue(label)], statistics.getCount(label));
 		
-		int min = adjVal.get(0);
-		for(int i = 1; i < adjVal.size(); i++){
-			if(min == adjVal.get(i))
-				continue;
-			
-			rewriteLabel(d, min, adjVal.get(i));
-			hashPix.remove(adjVal.get(i));
-			hashLabelPt.remove(adjVal.get(i));
+		for (int n = 0; n < adjacentPairs.size(); n++) {
+			int higher = adjacentPairs.getHigher(n), lower = adjacentPairs.getLower(n);
+			String membrane = domainType[labeler.getLabelValue(higher)] + "_" + domainType[labeler.getLabelValue(lower)] + "_membrane";
+			addDomainTypeSize(membrane, adjacentPairs.getCount(n));
 		}
-		return min;
 	}
-
+	
 	/**
-	 * Replace the label of pixels in the spatial image which has "before" to "after".
+	 * Adds given size to the size of given domain type.
 	 *
-	 * @param dEnd the end of the depth
-	 * @param after the label to set by this replacement
-	 * @param before the label to be replaced
+	 * @param domainType the domain type
+	 * @param size the size to be added
 	 */
-	private void rewriteLabel(int dEnd, int after, int before){
-		for (int d = 0; d <= dEnd; d++) {
-				for (int h = 0; h < height; h++) {
-					for (int w = 0; w < width; w++) {
-						if (matrix[d * height * width + h * width + w] == before)
-							matrix[d * height * width + h * width + w] = after;
-					}
-				}
-			}
+	private void addDomainTypeSize(String domainType, long size){
+		Long temp = hashDomainTypeSize.get(domainType);
+		hashDomainTypeSize.put(domainType, temp == null ? size : temp + size);
 	}
-    
+	
     /** count number of domains in each domain types and add membrane to adjacents. */
 	private HashMap<String,Integer> hashDomainNum;
     
@@ -272,62 +274,156 @@ public class ImageEdit {
      */
     public void countDomain(){
     	hashDomainNum = new HashMap<String,Integer>();
-    	Integer temp;
+    	Integer temp, num;
     	for(Entry<String,Integer> e : hashDomainTypes.entrySet()){
 			temp = hashSampledValue.get(e.getKey());
-			hashDomainNum.put(e.getKey(), Collections.frequency(hashPix.values(), temp));
+			num = (temp == null) ? null : hashLabelNum.get(temp);
+			hashDomainNum.put(e.getKey(), num == null ? 0 : num);
 		}
     }
 
-    /** The list of adjacent pixels. */
-    private ArrayList<ArrayList<Integer>> adjacentsPixel;
+    /** The table of pairs of adjacent labels (higher label, lower label) and their pairs of adjacent pixels. */
+    private LabelPairTable adjacentPairs;
     
     /** The list of adjacent domains. */
     private ArrayList<ArrayList<String>> adjacentsList;
     
     /**
      * Adds a membrane between two different domains.
+     * Each pair of adjacent pixels (with the connectivity of the image) is visited
+     * once by checking the neighbors following each pixel in raster order, and the
+     * pairs of adjacent labels are counted in a hash table ({@link LabelPairTable}).
+     * Two adjacent labels which have the same pixel value (which may touch only at an edge or
+     * a corner after small domains are merged) do not have a membrane.
+     * If the image is labeled in bricks, the pairs are counted by {@link #countBrickedPairs(BrickedVolume)}.
+     * Then a membrane is added for each pair in the order of its first contact.
      */
     public void addMembrane(){
-    	adjacentsPixel = new ArrayList<ArrayList<Integer>>();
         adjacentsList = new ArrayList<ArrayList<String>>();
-        int lower, higher;
-        //adds the membrane 					may need changes in the future
+        BrickedVolume bricks = labeler.getBricks();
+        if (bricks != null)
+        	adjacentPairs = countBrickedPairs(bricks);
+        else
+        	adjacentPairs = countPairs();
+		for (int n = 0; n < adjacentPairs.size(); n++)
+			addmem(adjacentPairs.getHigher(n), adjacentPairs.getLower(n));
+    }
+    
+    /**
+     * Counts the pairs of adjacent labels by one pass over the 1D array of labels in raster order.
+     *
+     * @return the table of pairs of adjacent labels in the order of their first contact
+     */
+    private LabelPairTable countPairs(){
+    	LabelPairTable pairs = new LabelPairTable();
+        Neighborhood forward = new Neighborhood(connectivity, width, height, depth).forward();
+        int[] neighbors = new int[forward.size()];
 		for (int d = 0; d < depth; d++) {
-			for (int i = 0; i < height - 1; i++) {
-				for (int j = 0; j < width - 1; j++) {
-					// right
-					if (checkAdjacent(d * height * width + i * width + j, d * height * width + i * width + j + 1)) {
-						ArrayList<Integer> temp = new ArrayList<Integer>(2);
-						lower = getLowerLabel(matrix[d * height * width + i * width + j + 1], matrix[d * height * width + i * width + j]);
-						higher = getHigherLabel(matrix[d * height * width + i * width + j + 1], matrix[d * height * width + i * width + j]);
-						temp.add(higher); temp.add(lower);
-						adjacentsPixel.add(temp);
-						addmem(higher,lower);
-					}
-
-					// down
-					if (checkAdjacent(d * height * width + i * width + j, d * height * width + (i + 1) * width + j)) {
-						ArrayList<Integer> temp = new ArrayList<Integer>(2);
-						lower = getLowerLabel(matrix[d * height * width + (i + 1) * width + j], matrix[d * height * width + i * width + j]);
-						higher = getHigherLabel(matrix[d * height * width + (i + 1) * width + j], matrix[d * height * width + i * width + j]);
-						temp.add(higher); temp.add(lower);
-						adjacentsPixel.add(temp);
-						addmem(higher,lower);
-					}
-					
-					//above
-					if ( d != depth -1 && checkAdjacent(d * height * width + i * width + j, (d + 1) * height * width + i * width + j)) {
-						ArrayList<Integer> temp = new ArrayList<Integer>(2);
-						lower = getLowerLabel(matrix[(d + 1) * height * width + i * width + j], matrix[d * height * width + i * width + j]);
-						higher = getHigherLabel(matrix[(d + 1) * height * width + i * width + j], matrix[d * height * width + i * width + j]);
-						temp.add(higher); temp.add(lower);
-						adjacentsPixel.add(temp);
-						addmem(higher,lower);	
+			for (int i = 0; i < height; i++) {
+				for (int j = 0; j < width; j++) {
+					int index = d * height * width + i * width + j;
+					int num = forward.getNeighbors(index, j, i, d, neighbors);
+					for (int n = 0; n < num; n++) {
+						int next = neighbors[n];
+						if (matrix[index] != matrix[next] && pixels[index] != pixels[next])
+							pairs.add(getHigherLabel(matrix[next], matrix[index]), getLowerLabel(matrix[next], matrix[index]));
 					}
 				}
 			}
 		}
+		return pairs;
+    }
+    
+    /**
+     * Counts the pairs of adjacent labels in the bricks of the labeled image ({@link BrickedVolume}).
+     * Each brick is scanned in parallel with its own table, where the neighbors following a pixel
+     * are read from the brick and its halo by fixed offsets, and the first contact of each pair is
+     * kept as the index of the pixel and the neighbor. The tables are joined, and the pairs are sorted
+     * by their first contact in the whole image, so that the table is identical to {@link #countPairs()}.
+     *
+     * @param bricks the bricked volume of the labeled image
+     * @return the table of pairs of adjacent labels in the order of their first contact
+     */
+    private LabelPairTable countBrickedPairs(final BrickedVolume bricks){
+    	Neighborhood forward = bricks.getNeighborhood(connectivity).forward();
+    	final int[] offsets = new int[forward.size()];
+    	for (int n = 0; n < offsets.length; n++)
+    		offsets[n] = forward.getOffset(n);
+    	final LabelPairTable[] tables = new LabelPairTable[bricks.getBrickCount()];
+    	final long[][] contacts = new long[tables.length][];
+    	ParallelUtil.forEach(0, tables.length, ParallelUtil.getParallelism(), new ParallelUtil.RangeTask() {
+    		@Override
+    		public void run(int from, int to) {
+    			for (int b = from; b < to; b++)
+    				contacts[b] = countBrickPairs(bricks, b, offsets, tables[b] = new LabelPairTable());
+    		}
+    	});
+    	
+    	LabelPairTable joined = new LabelPairTable();
+    	long[] first = new long[16];
+    	for (int b = 0; b < tables.length; b++) {
+    		for (int n = 0; n < tables[b].size(); n++) {
+    			int size = joined.size();
+    			int index = joined.add(tables[b].getHigher(n), tables[b].getLower(n), tables[b].getCount(n));
+    			if (index == size) {
+    				if (size == first.length)
+    					first = Arrays.copyOf(first, size * 2);
+    				first[index] = contacts[b][n];
+    			} else
+    				first[index] = Math.min(first[index], contacts[b][n]);
+    		}
+    		tables[b] = null;
+    	}
+    	// the first contacts are unique, so that the rank of each pair is found in the sorted contacts
+    	long[] sorted = Arrays.copyOf(first, joined.size());
+    	Arrays.sort(sorted);
+    	int[] order = new int[sorted.length];
+    	for (int index = 0; index < sorted.length; index++)
+    		order[Arrays.binarySearch(sorted, first[index])] = index;
+    	LabelPairTable pairs = new LabelPairTable(order.length);
+    	for (int n = 0; n < order.length; n++)
+    		pairs.add(joined.getHigher(order[n]), joined.getLower(order[n]), joined.getCount(order[n]));
+    	return pairs;
+    }
+    
+    /**
+     * Counts the pairs of adjacent labels in given brick to given table. The neighbor whose label
+     * is 0 is outside of the image. The first contact of each pair is the index (in 1D array) of the
+     * pixel times the number of neighbors plus the index of the neighbor, which is the order of
+     * the contact in {@link #countPairs()}.
+     *
+     * @param bricks the bricked volume of the labeled image
+     * @param brick the index of the brick
+     * @param offsets the offsets of the neighbors following a pixel in the layout of a brick
+     * @param table the table of pairs of adjacent labels of the brick
+     * @return the first contact of each pair in the table
+     */
+    private long[] countBrickPairs(BrickedVolume bricks, int brick, int[] offsets, LabelPairTable table){
+    	int[] labels = bricks.getLabels(brick);
+    	byte[] voxels = bricks.getVoxels(brick);
+    	int bw = bricks.getBrickWidth(brick), bh = bricks.getBrickHeight(brick), bd = bricks.getBrickDepth(brick);
+    	long[] first = new long[16];
+    	for (int z = 0; z < bd; z++) {
+    		for (int y = 0; y < bh; y++) {
+    			int index = bricks.getIndex(brick, 0, y, z);
+    			for (int x = 0, i = bricks.index(0, y, z); x < bw; x++, i++) {
+    				int label = labels[i];
+    				for (int n = 0; n < offsets.length; n++) {
+    					int j = i + offsets[n];
+    					int next = labels[j];
+    					if (next == 0 || next == label || voxels[j] == voxels[i])
+    						continue;
+    					int size = table.size();
+    					if (table.add(getHigherLabel(next, label), getLowerLabel(next, label)) == size) {
+    						if (size == first.length)
+    							first = Arrays.copyOf(first, size * 2);
+    						first[size] = (long) (index + x) * offsets.length + n;
+    					}
+    				}
+    			}
+    		}
+    	}
+    	return first;
     }
     
     /**
@@ -338,8 +434,8 @@ public class ImageEdit {
      * @return the label which has lower pixel value
      */
     private int getLowerLabel(int dom1, int dom2){
-    	int min = Math.min(hashPix.get(dom1), hashPix.get(dom2));
-    	if(min  == hashPix.get(dom1) )
+    	int min = Math.min(labeler.getLabelValue(dom1), labeler.getLabelValue(dom2));
+    	if(min  == labeler.getLabelValue(dom1) )
     		return dom1;
     	else 
     		return dom2;
@@ -353,59 +449,24 @@ public class ImageEdit {
 	 * @return the label which has higher pixel value
 	 */
 	private int getHigherLabel(int dom1, int dom2){
-    	int max = Math.max(hashPix.get(dom1), hashPix.get(dom2));
-    	if(max  == hashPix.get(dom1) )
+    	int max = Math.max(labeler.getLabelValue(dom1), labeler.getLabelValue(dom2));
+    	if(max  == labeler.getLabelValue(dom1) )
     		return dom1;
     	else 
     		return dom2;
     }
 
-	/**
-	 * Checks the given two labels are already registered in adjacentsPixel.
-	 *
-	 * @param dom1 the label of domain 1
-	 * @param dom2 the label of domain 2
-	 * @return true, if the pixel value of domain 1 has higher value than that of domain 2 in adjacentsPixel
-	 */
-	private boolean hasLabel(int dom1, int dom2) {
-		if(adjacentsPixel.isEmpty()) return false;
-		
-		for (ArrayList<Integer> i : adjacentsPixel) {
-			if (i.get(0) == dom1 && i.get(1) == dom2) {
-				return true;
-			}
-		}
-		return false;
-	}
-    
-	/**
-	 * Check adjacent pixels have different pixel values.
-	 * If the adjacent pixel has different label with origin pixel, and the origin pixel and next pixel
-	 * are already registered in adjacentsPixel.
-	 *
-	 * @param org the index of origin pixel in an 1D array
-	 * @param next the index of next pixel in an 1D array
-	 * @return true, if two pixel has different label and both pixels are registered in adjacentsPixel
-	 */
-	private boolean checkAdjacent(int org, int next){
-		if(matrix[org] != matrix[next] &&
-				!hasLabel(getHigherLabel(matrix[next], matrix[org]), getLowerLabel(matrix[next], matrix[org])))
-			return true;
-		 else 
-			return false;
-	}
-
 	/**
 	 * Add a membrane between given two labels (domains).
 	 *
 	 * @param bignum the label of pixel which has higher value
 	 * @param smallnum the label of pixel which has lower value
 	 */
-	private void addmem(Integer bignum, Integer smallnum){
+	private void addmem(int bignum, int smallnum){
 		String big ,small;
 
-		big = getKeyFromValue(hashSampledValue, hashPix.get(bignum));
-		small = getKeyFromValue(hashSampledValue, hashPix.get(smallnum));
+		big = getKeyFromValue(hashSampledValue, labeler.getLabelValue(bignum));
+		small = getKeyFromValue(hashSampledValue, labeler.getLabelValue(smallnum));
 		String buf = big + "_" + small + "_membrane";
 
 		ArrayList<String> adjacentDom = new ArrayList<String>();
@@ -424,22 +485,33 @@ public class ImageEdit {
 	}
 
 	/**
-	 * Gets the index of given label as string.
+	 * Gets the geometry statistics (volume, surface area, bounding box and centroid) of each label.
+	 *
+	 * @return the geometry statistics of each label
+	 */
+	public DomainStatistics getStatistics(){
+		return statistics;
+	}
+
+	/**
+	 * Gets the table of pairs of adjacent labels (higher label, lower label), which
+	 * has the number of pairs of adjacent pixels (with the connectivity of the image) of each pair.
+	 *
+	 * @return the table of pairs of adjacent labels
+	 */
+	public LabelPairTable getAdjacentPairs(){
+		return adjacentPairs;
+	}
+
+	/**
+	 * Gets the index of given label as string. The index is the order of the label
+	 * among the labels which have the same pixel value.
 	 *
 	 * @param label the label of the pixel
-	 * @return count.toString() the index of label
+	 * @return the index of label as string
 	 */
 	private String getIndexLabel(int label){
-		Integer count = 0;
-		
-		for(Entry<Integer, Integer> e : hashPix.entrySet()){
-			if(e.getKey().equals(label))
-				break;
-			if(e.getValue().equals(hashPix.get(label)))
-				count++;
-		}
-		
-		return count.toString();
+		return String.valueOf(domainIndex[label]);
 	}
 	
 	/**
@@ -462,12 +534,17 @@ public class ImageEdit {
 	
 	/**
 	 * Creates the hashmap of domain InteriorPoint of spatial image.
+	 * The deepest pixel of each label, which is the farthest from the border of the domain
+	 * by the Euclidean distance transform ({@link DistanceTransform}), is used as the InteriorPoint.
 	 */
 	private void createDomInteriorPt(){
-		for(Entry<Integer,Point3d> e : hashLabelPt.entrySet()){
-			int pixelVal = hashPix.get(e.getKey());
-			String domName = getKeyFromValue(hashSampledValue, pixelVal) + getIndexLabel(e.getKey());
-			hashDomInteriorPt.put(domName, e.getValue());
+		int slice = width * height;
+		int[] dist = new DistanceTransform(width, height, depth).transform(matrix);
+		int[] deepest = DistanceTransform.findDeepest(matrix, labeler.getLabelCount(), dist);
+		for (int label = 1; label <= labeler.getLabelCount(); label++) {
+			int index = deepest[label];
+			String domName = getKeyFromValue(hashSampledValue, labeler.getLabelValue(label)) + getIndexLabel(label);
+			hashDomInteriorPt.put(domName, new Point3d(index % width, (index % slice) / width, index / slice));
 		}
 	}
 }
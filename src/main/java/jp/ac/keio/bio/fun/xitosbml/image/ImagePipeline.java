@@ -0,0 +1,328 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import org.scijava.vecmath.Point3d;
+
+import ij.ImagePlus;
+import ij.io.FileInfo;
+
+/**
+ * The class ImagePipeline, which converts domain images to a {@link SpatialImage} by
+ * the following image processing filters:
+ * <ol>
+ * <li>Interpolate each domain image if it is a Z-stack image (3D image) and the voxel
+ * size of each axis (x, y and z) is not equal, or resample it if it exceeds the voxel
+ * budget ({@link Interpolator})</li>
+ * <li>Remove noise and thin bridges from each domain image by a binary morphology operation,
+ * if it is given ({@link BinaryMorphology})</li>
+ * <li>Fill holes (blank pixels) in each domain image ({@link Filler}), and pack it to a
+ * bit-packed mask ({@link BitVolume})</li>
+ * <li>Composite the masks of all domain images to one image in one pass, slice by slice in
+ * parallel ({@link CreateImage})</li>
+ * <li>Fill holes (blank pixels) in the composite image ({@link Filler})</li>
+ * <li>Crop the composite image to the bounding box of its foreground with a margin, if it is
+ * enabled ({@link ImageCropper})</li>
+ * <li>Make the X-Y and Z border safe ({@link ImageBorder})</li>
+ * <li>Merge the domains smaller than the minimum size into their dominant neighbors, if it is
+ * given ({@link ComponentMerger}), and add a membrane between two different domains if exists
+ * ({@link ImageEdit})</li>
+ * <li>Create the label pyramid of the spatial image for the preview ({@link LabelPyramid})</li>
+ * </ol>
+ * All filters operate in place on one raw data (1D array) reused for each domain image,
+ * and then on one shared raw data of the composite image, which is allocated after the
+ * domain images are packed to masks (1/8 of the raw data each). No stack of images is created between
+ * the filters, and the ImageJ image object of the spatial image is created only when it
+ * is needed ({@link SpatialImage#getImage()}). As the raw data is one Java array, the
+ * interpolated image (with the border layers) can have at most {@link VoxelVolume#MAX_ARRAY_SIZE}
+ * voxels, and a larger image has to be resampled by a voxel budget or a larger voxel size.
+ * The spatial image keeps the raw data on the heap while membranes are added, and then it is
+ * moved to the storage of the pipeline ({@link #setStorage(int)}).
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ImagePipeline {
+
+	/** The hashmap of domain images. */
+	private HashMap<String, ImagePlus> hashDomFile;
+
+	/** The hashmap of sampled value of spatial image. */
+	private HashMap<String, Integer> hashSampledValue;
+
+	/** The hashmap of domain types. */
+	private HashMap<String, Integer> hashDomainTypes;
+
+	/** The connectivity of adjacent pixels. 0 means the default connectivity. */
+	private int connectivity = 0;
+
+	/** The interpolation mode of Z-stack images. */
+	private int interpolation = Interpolator.NEAREST_NEIGHBOR;
+
+	/** The maximum number of voxels of the spatial image. 0 means no limit. */
+	private long voxelBudget = 0;
+
+	/** The voxel size of the spatial image. 0 means the voxel size of x axis of domain images. */
+	private double voxelSize = 0;
+
+	/** The number of coarse levels of the label pyramid of the spatial image. */
+	private int pyramidLevels = LabelPyramid.DEFAULT_LEVELS;
+
+	/** The flag whether holes are filled by the single-pass flood fill ({@link Filler#setFloodFill(boolean)}). */
+	private boolean floodFill = false;
+
+	/** The binary morphology operation applied to each domain image before hole filling. */
+	private int morphology = BinaryMorphology.NONE;
+
+	/** The radius of the structuring element of the binary morphology operation. */
+	private int morphologyRadius = 1;
+
+	/** The minimum number of voxels of a domain. 0 means no limit. */
+	private long minDomainSize = 0;
+
+	/** The flag whether the spatial image is labeled and its membranes are added in bricks. */
+	private boolean bricked = false;
+
+	/** The storage of the voxels of the finished spatial image. */
+	private int storage = SpatialImage.STORAGE_HEAP;
+
+	/** The flag whether the composite image is cropped to the bounding box of its foreground. */
+	private boolean autoCrop = false;
+
+	/** The margin around the bounding box of the foreground in voxels. */
+	private int cropMargin = 1;
+
+	/**
+	 * Instantiates a new image pipeline with given hashmap of domain images, hashmap of
+	 * sampled value and hashmap of domain types.
+	 *
+	 * @param hashDomFile the hashmap of domain images
+	 * @param hashSampledValue the hashmap of sampled value of spatial image
+	 * @param hashDomainTypes the hashmap of domain types
+	 */
+	public ImagePipeline(HashMap<String, ImagePlus> hashDomFile, HashMap<String, Integer> hashSampledValue,
+			HashMap<String, Integer> hashDomainTypes) {
+		this.hashDomFile = hashDomFile;
+		this.hashSampledValue = hashSampledValue;
+		this.hashDomainTypes = hashDomainTypes;
+	}
+
+	/**
+	 * Run the image processing filters and returns the spatial image.
+	 *
+	 * @return the spatial image
+	 * @throws IllegalArgumentException if the interpolated image is too large to be stored in one Java array
+	 */
+	public SpatialImage run() {
+		ImagePlus first = hashDomFile.values().iterator().next();
+		Interpolator interpolator = new Interpolator();
+		interpolator.setMode(interpolation);
+		interpolator.setVoxelBudget(voxelBudget);
+		interpolator.setTargetVoxelSize(voxelSize);
+		Filler filler = new Filler();
+		filler.setConnectivity(connectivity);
+		filler.setFloodFill(floodFill);
+		int width = interpolator.getInterpolatedWidth(first);
+		int height = interpolator.getInterpolatedHeight(first);
+		int depth = interpolator.getInterpolatedDepth(first);
+		checkSize(width, height, depth);
+		BinaryMorphology morph = new BinaryMorphology(width, height, depth);
+		morph.setStructuringElement(morphologyRadius);
+
+		byte[] domain = new byte[width * height * depth];
+		BitVolume[] masks = new BitVolume[hashDomFile.size()];
+		byte[] pixVals = new byte[masks.length];
+		int n = 0;
+		double pixelDepth = first.getOriginalFileInfo().pixelDepth;
+		for (Entry<String, ImagePlus> e : hashDomFile.entrySet()) {
+			ImagePlus img = e.getValue();
+			if (img.isInvertedLut())
+				img.getProcessor().invertLut();
+			pixelDepth = interpolator.interpolate(img, domain);
+			morph.apply(morphology, domain);
+			filler.fill(domain, width, height, depth);
+			masks[n] = BitVolume.ofForeground(domain, width, height, depth);
+			pixVals[n++] = hashSampledValue.get(e.getKey()).byteValue();
+		}
+		domain = null;
+		byte[] raw = new byte[width * height * depth];
+		CreateImage.composite(raw, masks, pixVals, width, height, depth);
+		masks = null;
+
+		filler.fill(raw, width, height, depth);
+		Point3d origin = new Point3d();
+		if (autoCrop) {
+			ImageCropper cropper = new ImageCropper(raw, width, height, depth, cropMargin);
+			raw = cropper.getRaw();
+			width = cropper.getWidth();
+			height = cropper.getHeight();
+			depth = cropper.getDepth();
+			origin = new Point3d(cropper.getOffsetX(), cropper.getOffsetY(), cropper.getOffsetZ());
+		}
+		ImageBorder imgBorder = new ImageBorder(raw, width, height, depth);
+		raw = imgBorder.getRaw();
+		// a border layer added on the top shifts the cropped image by one slice
+		if (autoCrop && imgBorder.getDepth() > depth)
+			origin.z -= 1;
+		depth = imgBorder.getDepth();
+
+		FileInfo info = (FileInfo) first.getOriginalFileInfo().clone();
+		info.pixelWidth = interpolator.getPixelWidth();
+		info.pixelHeight = interpolator.getPixelHeight();
+		info.pixelDepth = pixelDepth;
+		SpatialImage spImg = new SpatialImage(hashSampledValue, hashDomainTypes, raw, width, height, depth, info,
+				first.getCalibration());
+		spImg.setConnectivity(connectivity);
+		spImg.setMinDomainSize(minDomainSize);
+		spImg.setBricked(bricked);
+		spImg.setOrigin(origin);
+		new ImageEdit(spImg);
+		// the raw data is edited on the heap, and moved to the storage only when it is finished
+		spImg.setStorage(storage);
+		spImg.createPyramid(pyramidLevels);
+		return spImg;
+	}
+
+	/**
+	 * Checks that the raw data of the interpolated image fits in one Java array, before any
+	 * raw data is allocated. The size is computed in long, including the border layers which
+	 * may be added on the top and the bottom ({@link ImageBorder}).
+	 *
+	 * @param width the width of the interpolated image
+	 * @param height the height of the interpolated image
+	 * @param depth the depth of the interpolated image
+	 * @throws IllegalArgumentException if the interpolated image has too many voxels
+	 */
+	private static void checkSize(int width, int height, int depth) {
+		long size = (long) width * height * (depth + 2);
+		if (size > VoxelVolume.MAX_ARRAY_SIZE)
+			throw new IllegalArgumentException("The image of " + width + " x " + height + " x " + depth
+					+ " voxels is too large to be converted: at most " + VoxelVolume.MAX_ARRAY_SIZE
+					+ " voxels (including 2 border slices) are supported. Set a voxel budget or a larger"
+					+ " voxel size to resample the domain images.");
+	}
+
+	/**
+	 * Sets the connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26
+	 * for a 3D image). If 0, the default connectivity is used.
+	 *
+	 * @param connectivity the connectivity of adjacent pixels
+	 */
+	public void setConnectivity(int connectivity) {
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * Sets the interpolation mode of Z-stack images ({@link Interpolator#NEAREST_NEIGHBOR}
+	 * or {@link Interpolator#SHAPE_BASED}).
+	 *
+	 * @param interpolation the interpolation mode
+	 */
+	public void setInterpolation(int interpolation) {
+		this.interpolation = interpolation;
+	}
+
+	/**
+	 * Sets the maximum number of voxels of the spatial image. If the interpolated image has
+	 * more voxels, it is resampled to larger isotropic voxels by majority vote. If 0, there is no limit.
+	 *
+	 * @param voxelBudget the maximum number of voxels
+	 */
+	public void setVoxelBudget(long voxelBudget) {
+		this.voxelBudget = voxelBudget;
+	}
+
+	/**
+	 * Sets the voxel size of the spatial image. The domain images are resampled to isotropic
+	 * voxels of given size by majority vote. If 0, the voxel size of x axis of domain images is used.
+	 *
+	 * @param voxelSize the voxel size of the spatial image
+	 */
+	public void setVoxelSize(double voxelSize) {
+		this.voxelSize = voxelSize;
+	}
+
+	/**
+	 * Sets the number of coarse levels of the label pyramid of the spatial image, which is
+	 * used for the preview. If 0, only the full resolution is kept.
+	 *
+	 * @param pyramidLevels the number of coarse levels
+	 */
+	public void setPyramidLevels(int pyramidLevels) {
+		this.pyramidLevels = Math.max(0, pyramidLevels);
+	}
+
+	/**
+	 * Sets whether holes are filled by the single-pass flood fill, which fills each hole with
+	 * the pixel value of its majority adjacent domain, instead of the iterative labeling.
+	 *
+	 * @param floodFill the flag whether holes are filled by the single-pass flood fill
+	 */
+	public void setFloodFill(boolean floodFill) {
+		this.floodFill = floodFill;
+	}
+
+	/**
+	 * Sets the binary morphology operation applied to each domain image before hole filling
+	 * ({@link BinaryMorphology#NONE}, {@link BinaryMorphology#ERODE}, {@link BinaryMorphology#DILATE},
+	 * {@link BinaryMorphology#OPEN} or {@link BinaryMorphology#CLOSE}), and the radius of its
+	 * structuring element, which is a cube.
+	 *
+	 * @param morphology the binary morphology operation
+	 * @param radius the radius of the structuring element
+	 */
+	public void setMorphology(int morphology, int radius) {
+		this.morphology = morphology;
+		this.morphologyRadius = radius;
+	}
+
+	/**
+	 * Sets the minimum number of voxels of a domain. A connected domain which has fewer voxels
+	 * is merged into the adjacent domain which shares the most faces with it. If 0, no domain is merged.
+	 *
+	 * @param minDomainSize the minimum number of voxels of a domain
+	 */
+	public void setMinDomainSize(long minDomainSize) {
+		this.minDomainSize = minDomainSize;
+	}
+
+	/**
+	 * Sets whether the spatial image is labeled and its membranes are added in bricks of
+	 * 32 x 32 x 32 voxels with a halo ({@link BrickedVolume}) instead of raster order, so that
+	 * the neighbors of each voxel are read in the cache and the bricks are processed in parallel.
+	 * The bricks are kept with the labels while membranes are added, which needs about 1.2 times
+	 * the memory of the raw data and the labels in addition.
+	 *
+	 * @param bricked the flag whether the spatial image is processed in bricks
+	 */
+	public void setBricked(boolean bricked) {
+		this.bricked = bricked;
+	}
+
+	/**
+	 * Sets the storage of the voxels of the finished spatial image ({@link SpatialImage#STORAGE_HEAP},
+	 * {@link SpatialImage#STORAGE_MAPPED} or {@link SpatialImage#STORAGE_DIRECT}). The spatial image
+	 * is built on the heap, and moved to the storage once its membranes are added.
+	 *
+	 * @param storage the storage of the voxels
+	 * @throws IllegalArgumentException if the storage is not supported
+	 */
+	public void setStorage(int storage) {
+		SpatialImage.checkStorage(storage);
+		this.storage = storage;
+	}
+
+	/**
+	 * Sets whether the composite image is cropped to the bounding box of its foreground (non-zero
+	 * voxels), and the margin around the bounding box. The margin is at least 1 voxel.
+	 *
+	 * @param autoCrop the flag whether the composite image is cropped
+	 * @param margin the margin around the bounding box in voxels
+	 */
+	public void setAutoCrop(boolean autoCrop, int margin) {
+		this.autoCrop = autoCrop;
+		this.cropMargin = margin;
+	}
+}
@@ -7,12 +7,17 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.io.FileInfo;
 import ij.process.ByteProcessor;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
 
 
 /**
  * The class Interpolator, which provides interpolation operations for Z-stack images.
  * If the voxel size of each x, y and z axis is not the same, then apply interpolation
  * to the spatial image so that the voxel size of each axis will be the same.
+ * The interpolation mode is the nearest neighbor (default) or the shape-based interpolation
+ * of the signed distance fields of the domains, which makes smooth boundaries along z axis.
+ * If a voxel budget or a target voxel size is given, the image is resampled to isotropic voxels
+ * which are coarse enough to fit in the budget, and the domains are downsampled by majority vote.
  * Date Created: Feb 21, 2017
  *
  * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
@@ -44,18 +49,42 @@ public class Interpolator {
 	/** The interpolated stack size. */
 	private int altz;
 	
+	/** The interpolated image width. */
+	private int altx;
+	
+	/** The interpolated image height. */
+	private int alty;
+	
+	/** The voxel size of the interpolated image. */
+	private double altvox;
+	
+	/** The maximum number of voxels of the interpolated image. 0 means no limit. */
+	private long voxelBudget = 0;
+	
+	/** The voxel size of the interpolated image given by user. 0 means the voxel size of x axis. */
+	private double targetVoxelSize = 0;
+	
 	/** The ImageJ image object. */
 	private ImagePlus image;		//input image
 	
 	/** The interpolated image object. */
 	private ImageStack altimage;	//output pixel image
 	
-	/** The raw data of spatial image in 1D array. */
-	private byte[] pixels;
-	
 	/** The file information of the spatial image. */
 	private FileInfo info;
 	
+	/** The maximum number of threads which generate the interpolated slices. */
+	private int parallelism = ParallelUtil.getParallelism();
+	
+	/** The interpolation mode which applies the nearest neighbor algorithm. */
+	public static final int NEAREST_NEIGHBOR = 0;
+	
+	/** The interpolation mode which interpolates the signed distance fields of the domains (shape-based interpolation). */
+	public static final int SHAPE_BASED = 1;
+	
+	/** The interpolation mode. */
+	private int mode = NEAREST_NEIGHBOR;
+	
 	/**
 	 * Instantiates a new interpolator.
 	 */
@@ -71,15 +100,14 @@ public class Interpolator {
 	public Interpolator(SpatialImage spImg){
 			this.image = spImg.getImage();
 			getInfo(image);
-			this.pixels = spImg.getRaw();
 			
 			if (needInterpolate()) {
-				nearestNeighbor();
+				interpolateStack();
 				image.setStack(altimage);
-				info.pixelDepth =  zaxis / altz;
+				setInterpolatedVoxelSize(info);
 				image.setFileInfo(info);
 				image.updateImage();
-				System.out.println("interpolated voxel size " + voxx + " " + voxy + " " + info.pixelDepth);
+				System.out.println("interpolated voxel size " + info.pixelWidth + " " + info.pixelHeight + " " + info.pixelDepth);
 			}
 	}
 	
@@ -104,6 +132,43 @@ public class Interpolator {
 		voxz = info.pixelDepth;
 		zaxis = voxz * image.getImageStackSize();
 		System.out.println("voxel size " + voxx + " " + voxy + " " + voxz);
+		computeInterpolatedSize();
+	}
+	
+	/**
+	 * Computes the voxel size and the size of the interpolated image. By default, the voxel size
+	 * of z axis is interpolated to the voxel size of x axis, and x and y axis are not changed.
+	 * If a target voxel size is given, the image is resampled to the voxels of that size. If a voxel
+	 * budget is given and the interpolated image has more voxels than the budget, the voxel size is
+	 * enlarged so that the number of voxels fits in the budget.
+	 */
+	private void computeInterpolatedSize(){
+		altvox = targetVoxelSize > 0 ? targetVoxelSize : voxx;
+		if (voxelBudget > 0) {
+			double min = depth > 1 ? Math.cbrt(width * voxx * height * voxy * zaxis / voxelBudget)
+					: Math.sqrt(width * voxx * height * voxy / voxelBudget);
+			altvox = Math.max(altvox, min);
+		}
+		if (altvox == voxx) {
+			altx = width;
+			alty = height;
+			altz = depth > 1 && (voxz > voxx || voxz > voxy) ? (int) (zaxis / voxx) : depth;
+			return;
+		}
+		altx = Math.max(1, (int) (width * voxx / altvox));
+		alty = Math.max(1, (int) (height * voxy / altvox));
+		altz = depth > 1 ? Math.max(1, (int) (zaxis / altvox)) : 1;
+	}
+	
+	/**
+	 * Sets the voxel size of the interpolated image to given file information.
+	 *
+	 * @param fileInfo the file information of the interpolated image
+	 */
+	private void setInterpolatedVoxelSize(FileInfo fileInfo){
+		fileInfo.pixelWidth = getPixelWidth();
+		fileInfo.pixelHeight = getPixelHeight();
+		fileInfo.pixelDepth = zaxis / altz;
 	}
 	
 	/**
@@ -116,15 +181,14 @@ public class Interpolator {
 		this.image = imagePlus;
 		getInfo(image);
 		ImagePlus nImg = new ImagePlus();
-		pixels = ImgProcessUtil.copyMat(imagePlus);
 		
 		if (needInterpolate()) {
-			nearestNeighbor();
+			interpolateStack();
 			nImg.setStack(altimage);
 			nImg.setFileInfo(info);
-			nImg.getFileInfo().pixelDepth =  zaxis / altz;
+			setInterpolatedVoxelSize(nImg.getFileInfo());
 			nImg.updateImage();
-			System.out.println("interpolated voxel size " + voxx + " " + voxy + " " + info.pixelDepth);
+			System.out.println("interpolated voxel size " + info.pixelWidth + " " + info.pixelHeight + " " + info.pixelDepth);
 		}else{
 			nImg = (ImagePlus) imagePlus.clone();
 		}
@@ -141,16 +205,15 @@ public class Interpolator {
 	public SpatialImage interpolate(SpatialImage spImg){
 		this.image = spImg.getImage();
 		getInfo(image);
-		this.pixels = spImg.getRaw();
 		System.out.println("voxel size " + voxx + " " + voxy + " " + voxz);
 		
 		if (needInterpolate()) {
-			nearestNeighbor();
+			interpolateStack();
 			image.resetStack();
 			image.setStack(altimage);
-			info.pixelDepth =  zaxis / altz;
+			setInterpolatedVoxelSize(info);
 			image.setFileInfo(info);
-			System.out.println("interpolated voxel size " + voxx + " " + voxy + " " + info.pixelDepth);
+			System.out.println("interpolated voxel size " + info.pixelWidth + " " + info.pixelHeight + " " + info.pixelDepth);
 		}
 		image.updateImage();
 		spImg.setImage(image);
@@ -170,20 +233,338 @@ public class Interpolator {
 		}
 	}
 	
+	/**
+	 * Gets the depth (stack size) of given image after interpolation.
+	 * If the image does not need interpolation, the depth of the image is returned.
+	 *
+	 * @param imagePlus the ImageJ image object
+	 * @return the depth of the interpolated image
+	 */
+	public int getInterpolatedDepth(ImagePlus imagePlus){
+		this.image = imagePlus;
+		getInfo(image);
+		return altz;
+	}
+	
+	/**
+	 * Gets the width of given image after interpolation.
+	 * If the image is not resampled, the width of the image is returned.
+	 *
+	 * @param imagePlus the ImageJ image object
+	 * @return the width of the interpolated image
+	 */
+	public int getInterpolatedWidth(ImagePlus imagePlus){
+		this.image = imagePlus;
+		getInfo(image);
+		return altx;
+	}
+	
+	/**
+	 * Gets the height of given image after interpolation.
+	 * If the image is not resampled, the height of the image is returned.
+	 *
+	 * @param imagePlus the ImageJ image object
+	 * @return the height of the interpolated image
+	 */
+	public int getInterpolatedHeight(ImagePlus imagePlus){
+		this.image = imagePlus;
+		getInfo(image);
+		return alty;
+	}
+	
+	/**
+	 * Gets the voxel size of x axis of the last interpolated image.
+	 *
+	 * @return the voxel size of x axis of the interpolated image
+	 */
+	public double getPixelWidth(){
+		return width * voxx / altx;
+	}
+	
+	/**
+	 * Gets the voxel size of y axis of the last interpolated image.
+	 *
+	 * @return the voxel size of y axis of the interpolated image
+	 */
+	public double getPixelHeight(){
+		return height * voxy / alty;
+	}
+	
+	/**
+	 * Interpolate given image object and store the interpolated pixels to given raw data (1D array),
+	 * which has the size of {@link #getInterpolatedWidth(ImagePlus)} * {@link #getInterpolatedHeight(ImagePlus)}
+	 * * {@link #getInterpolatedDepth(ImagePlus)}.
+	 * Each slice is copied directly from the stack of given image, so that no intermediate
+	 * stack or raw data is created. If the voxel size of x and y axis is not changed by
+	 * the interpolation, the nearest neighbor of each interpolated slice is an original slice.
+	 * In the shape-based mode, each slice is interpolated from the signed distance fields
+	 * of the original slices. If the image is resampled, each voxel is downsampled by majority vote.
+	 *
+	 * @param imagePlus the ImageJ image object
+	 * @param out the raw data (1D array) to store the interpolated image
+	 * @return the voxel size of z axis of the interpolated image
+	 */
+	public double interpolate(ImagePlus imagePlus, byte[] out){
+		this.image = imagePlus;
+		getInfo(image);
+		ImageStack stack = imagePlus.getStack();
+		int slice = width * height;
+		if (!needInterpolate()) {
+			for (int d = 0; d < depth; d++)
+				System.arraycopy((byte[]) stack.getPixels(d + 1), 0, out, d * slice, slice);
+			return voxz;
+		}
+		if (isResampled()) {
+			majorityVote(stack, out);
+		} else if (mode == SHAPE_BASED) {
+			shapeBased(stack, out);
+		} else {
+			int[] zIndex = createIndexTable(altz, altvox, voxz, depth);
+			for (int d = 0; d < altz; d++)
+				System.arraycopy((byte[]) stack.getPixels(zIndex[d] + 1), 0, out, d * slice, slice);
+		}
+		return zaxis / altz;
+	}
+	
 	/**
 	 * Check if the spatial image needs interpolation.
-	 * If the voxel size of each x, y and z axis is the same, then we can skip the interpolation.
+	 * If the voxel size of each x, y and z axis is the same and the image fits in the voxel budget,
+	 * then we can skip the interpolation.
 	 *
 	 * @return true, if spatial image needs interpolation
 	 */
 	private boolean needInterpolate(){
-		if(depth == 1) return false;
-		if(voxz > voxx || voxz > voxy)
-			return true;
-		
-		return false;
+		return altx != width || alty != height || altz != depth;
+	}
+	
+	/**
+	 * Check if x or y axis of the spatial image is resampled. If so, the image is downsampled
+	 * by majority vote instead of the interpolation mode.
+	 *
+	 * @return true, if x or y axis of the spatial image is resampled
+	 */
+	private boolean isResampled(){
+		return altx != width || alty != height;
 	}
 
+	/**
+	 * Interpolate the stack of the image object by the interpolation mode,
+	 * and store the interpolated stack to altimage.
+	 */
+	private void interpolateStack(){
+		if (!isResampled() && mode != SHAPE_BASED) {
+			nearestNeighbor();
+			return;
+		}
+		int slice = altx * alty;
+		byte[] out = new byte[slice * altz];
+		if (isResampled())
+			majorityVote(image.getStack(), out);
+		else
+			shapeBased(image.getStack(), out);
+		altimage = new ImageStack(altx, alty);
+		for (int d = 0; d < altz; d++) {
+			byte[] matrix = new byte[slice];
+			System.arraycopy(out, d * slice, matrix, 0, slice);
+			altimage.addSlice(new ByteProcessor(altx, alty, matrix, null));
+		}
+	}
+	
+	/**
+	 * The majority vote downsampling, which resamples the image to the voxels of the interpolated
+	 * voxel size. Each interpolated voxel covers a box of original voxels along each axis which is
+	 * coarsened, or the nearest original voxel along each axis which is refined, and the voxel
+	 * gets the pixel value (domain) which appears most in the box. If several pixel values appear
+	 * equally, the first one in raster order is taken. Thus thin domains are kept as long as they
+	 * are the majority of a box, and no new pixel value is introduced.
+	 * The interpolated slices are generated in parallel.
+	 *
+	 * @param stack the stack of the original image
+	 * @param out the raw data (1D array) to store the interpolated image, which has altx * alty * altz voxels
+	 */
+	private void majorityVote(final ImageStack stack, final byte[] out){
+		final int[][] xRange = createRangeTable(altx, altvox, voxx, width);
+		final int[][] yRange = createRangeTable(alty, altvox, voxy, height);
+		final int[][] zRange = depth > 1 ? createRangeTable(altz, altvox, voxz, depth) : new int[][] { { 0 }, { 1 } };
+		ParallelUtil.forEach(0, altz, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				int[] counts = new int[256];
+				int[] found = new int[256];
+				for (int d = from; d < to; d++) {
+					int offset = d * altx * alty;
+					for (int h = 0; h < alty; h++) {
+						for (int w = 0; w < altx; w++) {
+							int num = 0, max = 0, value = 0;
+							for (int z = zRange[0][d]; z < zRange[1][d]; z++) {
+								byte[] matrix = (byte[]) stack.getPixels(z + 1);
+								for (int y = yRange[0][h]; y < yRange[1][h]; y++) {
+									for (int x = xRange[0][w]; x < xRange[1][w]; x++) {
+										int v = matrix[y * width + x] & 0xFF;
+										if (counts[v] == 0)
+											found[num++] = v;
+										if (++counts[v] > max) {
+											max = counts[v];
+											value = v;
+										}
+									}
+								}
+							}
+							for (int i = 0; i < num; i++)
+								counts[found[i]] = 0;
+							out[offset + h * altx + w] = (byte) value;
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Creates the lookup table of the range [start, end) of original pixels covered by each interpolated
+	 * pixel along an axis. If the interpolated pixel is larger than the original pixel, the range is the
+	 * original pixels whose centers are inside of the interpolated pixel, and the last range is extended
+	 * to the end of the axis. Otherwise the range is the nearest original pixel.
+	 *
+	 * @param length the number of interpolated pixels
+	 * @param step the voxel size of the interpolated image
+	 * @param size the voxel size of the original image
+	 * @param max the number of original pixels
+	 * @return the lookup table of start (index 0) and end (index 1) of the ranges
+	 */
+	private static int[][] createRangeTable(int length, double step, double size, int max){
+		int[][] range = new int[2][length];
+		if (step <= size) {
+			range[0] = createIndexTable(length, step, size, max);
+			for (int i = 0; i < length; i++)
+				range[1][i] = range[0][i] + 1;
+			return range;
+		}
+		for (int i = 0; i < length; i++) {
+			range[0][i] = Math.min((int) Math.round(i * step / size), max - 1);
+			range[1][i] = i == length - 1 ? max : Math.max(range[0][i] + 1, Math.min((int) Math.round((i + 1) * step / size), max));
+		}
+		return range;
+	}
+	
+	/**
+	 * The shape-based interpolation, which interpolates the signed distance field of each domain
+	 * (each pixel value) between two original slices instead of copying the nearest original slice.
+	 * The signed distance field of each domain in each original slice is computed by
+	 * {@link DistanceTransform#signedDistance(byte[], int, byte, float[])}, and each interpolated
+	 * pixel belongs to the domain which has the largest interpolated signed distance, that is,
+	 * the domain which the pixel is most deeply inside of. Thus the boundary of a domain moves
+	 * smoothly between original slices, and no staircase is made along z axis.
+	 * The interpolated slices are generated in parallel. Each thread keeps only the signed distance
+	 * fields of the two original slices which bracket its current interpolated slice, for each domain,
+	 * and moves them forward along z axis, so that no signed distance field of the whole stack is kept.
+	 * The fields of an original slice are computed only when an interpolated pixel between two
+	 * different domains needs them.
+	 *
+	 * @param stack the stack of the original image
+	 * @param out the raw data (1D array) to store the interpolated image, which has altz slices
+	 */
+	private void shapeBased(final ImageStack stack, final byte[] out){
+		final int slice = width * height;
+		boolean[] exists = new boolean[256];
+		for (int d = 0; d < depth; d++) {
+			byte[] matrix = (byte[]) stack.getPixels(d + 1);
+			for (int i = 0; i < slice; i++)
+				exists[matrix[i] & 0xFF] = true;
+		}
+		int num = 0;
+		final byte[] values = new byte[256];
+		for (int v = 0; v < 256; v++) {
+			if (exists[v])
+				values[num++] = (byte) v;
+		}
+		final int domains = num;
+		// the signed distance field of the background of a binary image is the negation of the foreground
+		final int first = domains == 2 ? 1 : 0;
+		ParallelUtil.forEach(0, altz, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				DistanceTransform transform = new DistanceTransform(width, height, 1);
+				// the signed distance fields of the lower (0) and the upper (1) bracketing slice
+				float[][] sdf0 = new float[domains][];
+				float[][] sdf1 = new float[domains][];
+				int zsdf0 = -1, zsdf1 = -1;
+				for (int d = from; d < to; d++) {
+					// the position of the center of the slice between the centers of original slices
+					double pos = (d * altvox + altvox / 2) / voxz - 0.5;
+					int z0 = Math.max(0, Math.min((int) Math.floor(pos), depth - 1));
+					int z1 = Math.min(z0 + 1, depth - 1);
+					float t = (float) Math.max(0, Math.min(pos - z0, 1));
+					int offset = d * slice;
+					byte[] matrix0 = (byte[]) stack.getPixels(z0 + 1);
+					byte[] matrix1 = (byte[]) stack.getPixels(z1 + 1);
+					boolean computed = false;
+					for (int i = 0; i < slice; i++) {
+						// a pixel inside of the same domain in both slices stays in the domain
+						if (matrix0[i] == matrix1[i]) {
+							out[offset + i] = matrix0[i];
+							continue;
+						}
+						if (!computed) {
+							if (zsdf1 == z0 && zsdf0 != z0) {
+								// the upper slice of the previous pair becomes the lower slice
+								float[][] swap = sdf0;
+								sdf0 = sdf1;
+								sdf1 = swap;
+								zsdf0 = z0;
+								zsdf1 = -1;
+							}
+							if (zsdf0 != z0) {
+								signedDistance(transform, matrix0, values, first, domains, sdf0);
+								zsdf0 = z0;
+							}
+							if (zsdf1 != z1) {
+								signedDistance(transform, matrix1, values, first, domains, sdf1);
+								zsdf1 = z1;
+							}
+							computed = true;
+						}
+						if (first == 1) {
+							float dist = sdf0[1][i] + t * (sdf1[1][i] - sdf0[1][i]);
+							out[offset + i] = dist > 0 ? values[1] : values[0];
+							continue;
+						}
+						float max = Float.NEGATIVE_INFINITY;
+						byte value = 0;
+						for (int l = 0; l < domains; l++) {
+							float dist = sdf0[l][i] + t * (sdf1[l][i] - sdf0[l][i]);
+							if (dist > max) {
+								max = dist;
+								value = values[l];
+							}
+						}
+						out[offset + i] = value;
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Computes the signed distance field of each domain in given original slice. The fields
+	 * are allocated when they are used at first.
+	 *
+	 * @param transform the distance transform of a slice
+	 * @param matrix the raw data (1D array) of the original slice
+	 * @param values the pixel value of each domain
+	 * @param first the first domain which needs its signed distance field
+	 * @param domains the number of domains
+	 * @param sdf the signed distance field of each domain
+	 */
+	private void signedDistance(DistanceTransform transform, byte[] matrix, byte[] values, int first, int domains,
+			float[][] sdf){
+		for (int l = first; l < domains; l++) {
+			if (sdf[l] == null)
+				sdf[l] = new float[width * height];
+			transform.signedDistance(matrix, 0, values[l], sdf[l]);
+		}
+	}
+	
 	/**
 	 * The Nearest Neighbor algorithm, which is the core implementation of interpolation.
 	 * There are several algorithms proposed for interpolation. For example there exist following
@@ -196,33 +577,102 @@ public class Interpolator {
 	 * </ol>
 	 * XitoSBML adopt "Nearest Neighbor Interpolation" for interpolation.
 	 * Other algorithms will be implemented in the future.
+	 * Only the z axis is interpolated here, so the nearest original slice of each interpolated
+	 * slice is precomputed as a lookup table and the slice is copied at once. The interpolated
+	 * slices are generated in parallel.
 	 */
 	private void nearestNeighbor(){
-		altz = (int) (zaxis / voxx);
-		System.out.println("interpolated stack size " + altz);
-		altimage = new ImageStack(width, height);
-		byte matrix[];
-		double xdis, ydis, zdis;
-		double halfx = voxx /2, halfy = voxy /2,halfz = voxx /2;
+		// the nearest original slice only depends on the z offset
+		final int[] zIndex = createIndexTable(altz, altvox, voxz, depth);
+		final int slice = width * height;
+		final byte[][] matrices = new byte[altz][];
+		final byte[][] slices = new byte[depth][];
+		for (int z = 0; z < depth; z++)
+			slices[z] = (byte[]) image.getStack().getPixels(z + 1);
 		
-		for(int d = 0 ; d < altz ; d++){
-			matrix = new byte[width * height];
-			for(int h = 0 ; h < height ; h++){
-				for(int w = 0 ; w < width ; w++){
-					// get center
-					xdis = w * voxx + halfx;	 
-					ydis = h * voxy + halfy;
-					zdis = d * voxx + halfz;
-					
-					//apply to nearest original pixel
-					xdis = Math.floor(xdis / voxx);
-					ydis = Math.floor(ydis / voxy);
-					zdis = Math.floor(zdis / voxz);
-					matrix[h * width + w] = pixels[(int) (zdis * width * height + ydis * width + xdis)];	
+		ParallelUtil.forEach(0, altz, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				for (int d = from; d < to; d++) {
+					byte[] matrix = new byte[slice];
+					System.arraycopy(slices[zIndex[d]], 0, matrix, 0, slice);
+					matrices[d] = matrix;
 				}
 			}
-			altimage.addSlice(new ByteProcessor(width,height,matrix,null));
-		}
+		});
+		altimage = new ImageStack(width, height);
+		for (int d = 0; d < altz; d++)
+			altimage.addSlice(new ByteProcessor(width, height, matrices[d], null));
+	}
+	
+	/**
+	 * Creates the lookup table of the nearest original pixel of each interpolated pixel along an axis.
+	 * The center of the interpolated pixel i is (i + 0.5) * step, and its nearest original pixel is
+	 * floor((i + 0.5) * step / size), which is clamped to the number of original pixels.
+	 *
+	 * @param length the number of interpolated pixels
+	 * @param step the voxel size of the interpolated image
+	 * @param size the voxel size of the original image
+	 * @param max the number of original pixels
+	 * @return the lookup table of the nearest original pixels
+	 */
+	private static int[] createIndexTable(int length, double step, double size, int max){
+		int[] table = new int[length];
+		double half = step / 2;
+		for (int i = 0; i < length; i++)
+			table[i] = Math.min((int) Math.floor((i * step + half) / size), max - 1);
+		return table;
+	}
+	
+	/**
+	 * Sets the maximum number of voxels of the interpolated image. If the interpolated image has
+	 * more voxels, it is resampled to larger isotropic voxels by majority vote. If 0, there is no limit.
+	 *
+	 * @param voxelBudget the maximum number of voxels
+	 */
+	public void setVoxelBudget(long voxelBudget) {
+		this.voxelBudget = Math.max(0, voxelBudget);
+	}
+	
+	/**
+	 * Sets the voxel size of the interpolated image. The image is resampled to isotropic voxels of
+	 * given size by majority vote. If 0, the voxel size of x axis is used.
+	 *
+	 * @param targetVoxelSize the voxel size of the interpolated image
+	 */
+	public void setTargetVoxelSize(double targetVoxelSize) {
+		this.targetVoxelSize = Math.max(0, targetVoxelSize);
+	}
+	
+	/**
+	 * Sets the interpolation mode ({@link #NEAREST_NEIGHBOR} or {@link #SHAPE_BASED}).
+	 *
+	 * @param mode the interpolation mode
+	 * @throws IllegalArgumentException if the mode is not supported
+	 */
+	public void setMode(int mode) {
+		if (mode != NEAREST_NEIGHBOR && mode != SHAPE_BASED)
+			throw new IllegalArgumentException("Unsupported interpolation mode: " + mode);
+		this.mode = mode;
+	}
+	
+	/**
+	 * Gets the interpolation mode.
+	 *
+	 * @return the interpolation mode
+	 */
+	public int getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Sets the maximum number of threads which generate the interpolated slices.
+	 * If 1, the slices are generated on the calling thread.
+	 *
+	 * @param parallelism the maximum number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
 	}
 	
 	/**
@@ -0,0 +1,160 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
+
+/**
+ * The class LabelPyramid, which is a multi-resolution pyramid of the volume of a spatial image.
+ * The level 0 is the volume of the spatial image itself, and each following level is downsampled
+ * by 2 along each axis (2x, 4x, 8x, ...) from the previous level. Each voxel of a coarse level gets
+ * the pixel value (domain) which appears most in the 2 x 2 x 2 voxels (2 x 2 pixels for a 2D image)
+ * of the previous level (majority vote), so that no new pixel value is introduced.
+ * A coarse level has 1/8 voxels of the previous level, so that the interactive preview of a spatial
+ * image ({@link jp.ac.keio.bio.fun.xitosbml.visual.Viewer}) runs on a small volume, while the
+ * export of the model uses the full resolution.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class LabelPyramid {
+
+	/** The default number of coarse levels (2x, 4x and 8x). */
+	public static final int DEFAULT_LEVELS = 3;
+
+	/** The maximum number of voxels of the level used for the preview. */
+	public static final long PREVIEW_VOXELS = 1L << 21;
+
+	/** The volumes of each level. The level 0 is the full resolution. */
+	private VoxelVolume[] levels;
+
+	/**
+	 * Instantiates a new label pyramid of given volume with given number of coarse levels.
+	 * The coarse levels are created on the Java heap, and the slices of each level are
+	 * downsampled in parallel. No more level is created once a level has only one voxel.
+	 *
+	 * @param volume the volume of the full resolution
+	 * @param count the number of coarse levels
+	 */
+	public LabelPyramid(VoxelVolume volume, int count) {
+		int num = 1;
+		VoxelVolume[] buf = new VoxelVolume[count + 1];
+		buf[0] = volume;
+		while (num <= count && buf[num - 1].size() > 1) {
+			buf[num] = downsample(buf[num - 1]);
+			num++;
+		}
+		levels = new VoxelVolume[num];
+		System.arraycopy(buf, 0, levels, 0, num);
+	}
+
+	/**
+	 * Downsample given volume by 2 along each axis by majority vote. The size of the downsampled
+	 * volume is rounded up, so that the last voxel of an odd size covers only one voxel along the axis.
+	 *
+	 * @param src the volume to be downsampled
+	 * @return the downsampled volume
+	 */
+	private static VoxelVolume downsample(final VoxelVolume src) {
+		final int width = src.getWidth(), height = src.getHeight(), depth = src.getDepth();
+		final int altw = (width + 1) / 2, alth = (height + 1) / 2, altd = (depth + 1) / 2;
+		final VoxelVolume dst = new ChunkedVoxelVolume(altw, alth, altd);
+		ParallelUtil.forEach(0, altd, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				byte[][] slices = { new byte[width * height], new byte[width * height] };
+				byte[] out = new byte[altw * alth];
+				byte[] values = new byte[8];
+				for (int d = from; d < to; d++) {
+					int zNum = Math.min(2, depth - 2 * d);
+					for (int z = 0; z < zNum; z++)
+						src.getSlice(2 * d + z, slices[z]);
+					for (int h = 0; h < alth; h++) {
+						int yNum = Math.min(2, height - 2 * h);
+						for (int w = 0; w < altw; w++) {
+							int xNum = Math.min(2, width - 2 * w);
+							int num = 0;
+							for (int z = 0; z < zNum; z++) {
+								for (int y = 0; y < yNum; y++) {
+									for (int x = 0; x < xNum; x++)
+										values[num++] = slices[z][(2 * h + y) * width + 2 * w + x];
+								}
+							}
+							out[h * altw + w] = majority(values, num);
+						}
+					}
+					dst.setSlice(d, out);
+				}
+			}
+		});
+		return dst;
+	}
+
+	/**
+	 * Gets the value which appears most in given values. If several values appear equally,
+	 * the first one is returned.
+	 *
+	 * @param values the values
+	 * @param num the number of values
+	 * @return the value which appears most
+	 */
+	private static byte majority(byte[] values, int num) {
+		byte value = values[0];
+		int max = 0;
+		for (int i = 0; i < num && max * 2 <= num; i++) {
+			int count = 0;
+			for (int j = i; j < num; j++) {
+				if (values[j] == values[i])
+					count++;
+			}
+			if (count > max) {
+				max = count;
+				value = values[i];
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the volume of given level.
+	 *
+	 * @param level the level (0 is the full resolution)
+	 * @return the volume of the level
+	 */
+	public VoxelVolume getLevel(int level) {
+		return levels[level];
+	}
+
+	/**
+	 * Gets the number of levels, including the level of the full resolution.
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * Gets the scale of given level, that is, the size of a voxel of the level in voxels of
+	 * the full resolution.
+	 *
+	 * @param level the level (0 is the full resolution)
+	 * @return the scale of the level
+	 */
+	public static int getScale(int level) {
+		return 1 << level;
+	}
+
+	/**
+	 * Gets the level used for the preview, which is the finest level which has at most
+	 * {@link #PREVIEW_VOXELS} voxels. If all levels are larger, the coarsest level is returned.
+	 *
+	 * @return the level used for the preview
+	 */
+	public int getPreviewLevel() {
+		for (int level = 0; level < levels.length; level++) {
+			if (levels[level].size() <= PREVIEW_VOXELS)
+				return level;
+		}
+		return levels.length - 1;
+	}
+}
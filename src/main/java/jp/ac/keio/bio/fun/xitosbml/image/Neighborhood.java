@@ -0,0 +1,318 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+/**
+ * The class Neighborhood, which provides the adjacent pixels (neighbors) of a pixel
+ * in the raw data (1D array) of an image with given connectivity.
+ * The connectivity is 4 or 8 for a 2D image, and 6, 18 or 26 for a Z-stack image (3D image).
+ * The offsets (x, y, z and the index in 1D array) of neighbors are precomputed when
+ * the neighborhood is created, so the connectivity does not affect the cost of iterating
+ * the neighbors of each pixel. For the pixels which are not on the border of an image,
+ * all neighbors are returned without any bounds check.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class Neighborhood {
+
+	/** The connectivity which only checks the faces of a pixel in a 2D image. */
+	public static final int CONNECTIVITY_4 = 4;
+
+	/** The connectivity which checks the faces and the corners of a pixel in a 2D image. */
+	public static final int CONNECTIVITY_8 = 8;
+
+	/** The connectivity which only checks the faces of a voxel in a 3D image. */
+	public static final int CONNECTIVITY_6 = 6;
+
+	/** The connectivity which checks the faces and the edges of a voxel in a 3D image. */
+	public static final int CONNECTIVITY_18 = 18;
+
+	/** The connectivity which checks the faces, the edges and the corners of a voxel in a 3D image. */
+	public static final int CONNECTIVITY_26 = 26;
+
+	/** The width of an image. */
+	private int width;
+
+	/** The height of an image. */
+	private int height;
+
+	/** The depth of an image. */
+	private int depth;
+
+	/** The connectivity of this neighborhood. */
+	private int connectivity;
+
+	/** The x offset of each neighbor. */
+	private int[] dx;
+
+	/** The y offset of each neighbor. */
+	private int[] dy;
+
+	/** The z offset of each neighbor. */
+	private int[] dz;
+
+	/** The offset of each neighbor in 1D array. */
+	private int[] offset;
+
+	/** The minimum and maximum x offsets of neighbors. */
+	private int minDx, maxDx;
+
+	/** The minimum and maximum y offsets of neighbors. */
+	private int minDy, maxDy;
+
+	/** The minimum and maximum z offsets of neighbors. */
+	private int minDz, maxDz;
+
+	/**
+	 * Instantiates a new neighborhood with given connectivity for an image of given size.
+	 * For a 2D image (depth = 1), the connectivity 6 is treated as 4, and the connectivity
+	 * 18 and 26 are treated as 8.
+	 *
+	 * @param connectivity the connectivity (4, 8, 6, 18 or 26)
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @throws IllegalArgumentException if the connectivity is not supported
+	 */
+	public Neighborhood(int connectivity, int width, int height, int depth) {
+		this(connectivity, width, height, depth, 0);
+	}
+
+	/**
+	 * Instantiates a new neighborhood which only contains the neighbors preceding
+	 * (sign &lt; 0) or following (sign &gt; 0) the pixel in raster order. If sign is 0,
+	 * all neighbors are contained.
+	 *
+	 * @param connectivity the connectivity (4, 8, 6, 18 or 26)
+	 * @param width the width of an image
+	 * @param height the height of an image
+	 * @param depth the depth of an image
+	 * @param sign the sign of the offsets of neighbors
+	 */
+	private Neighborhood(int connectivity, int width, int height, int depth, int sign) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.connectivity = normalize(connectivity, depth);
+		createOffsets(sign);
+	}
+
+	/**
+	 * Gets the default connectivity for an image of given depth, which only checks the
+	 * faces of a pixel (4 for a 2D image and 6 for a 3D image).
+	 *
+	 * @param depth the depth of an image
+	 * @return the default connectivity
+	 */
+	public static int getDefaultConnectivity(int depth) {
+		return depth > 1 ? CONNECTIVITY_6 : CONNECTIVITY_4;
+	}
+
+	/**
+	 * Convert the connectivity to the one which is available for an image of given depth.
+	 * If the connectivity is 0, the default connectivity is returned.
+	 *
+	 * @param connectivity the connectivity
+	 * @param depth the depth of an image
+	 * @return the connectivity for an image of given depth
+	 * @throws IllegalArgumentException if the connectivity is not supported
+	 */
+	public static int normalize(int connectivity, int depth) {
+		switch (connectivity) {
+		case 0:
+			return getDefaultConnectivity(depth);
+		case CONNECTIVITY_4:
+		case CONNECTIVITY_6:
+			return depth > 1 ? CONNECTIVITY_6 : CONNECTIVITY_4;
+		case CONNECTIVITY_8:
+			return depth > 1 ? CONNECTIVITY_26 : CONNECTIVITY_8;
+		case CONNECTIVITY_18:
+		case CONNECTIVITY_26:
+			return depth > 1 ? connectivity : CONNECTIVITY_8;
+		default:
+			throw new IllegalArgumentException("Unsupported connectivity: " + connectivity);
+		}
+	}
+
+	/**
+	 * Creates the offsets of neighbors. A neighbor is contained if the number of non-zero
+	 * offsets (x, y and z) fits the connectivity, that is, 1 for faces, 2 for edges and 3
+	 * for corners.
+	 *
+	 * @param sign the sign of the offsets of neighbors to be contained, or 0 for all
+	 */
+	private void createOffsets(int sign) {
+		int maxNonZero;
+		switch (connectivity) {
+		case CONNECTIVITY_4:
+		case CONNECTIVITY_6:
+			maxNonZero = 1;
+			break;
+		case CONNECTIVITY_18:
+			maxNonZero = 2;
+			break;
+		default:
+			maxNonZero = 3;
+		}
+		int zRange = depth > 1 ? 1 : 0;
+		int slice = width * height;
+		int[] bufX = new int[26], bufY = new int[26], bufZ = new int[26], bufOffset = new int[26];
+		int num = 0;
+		for (int z = -zRange; z <= zRange; z++) {
+			for (int y = -1; y <= 1; y++) {
+				for (int x = -1; x <= 1; x++) {
+					int nonZero = Math.abs(x) + Math.abs(y) + Math.abs(z);
+					int off = z * slice + y * width + x;
+					if (nonZero == 0 || nonZero > maxNonZero || off * sign < 0)
+						continue;
+					bufX[num] = x;
+					bufY[num] = y;
+					bufZ[num] = z;
+					bufOffset[num] = off;
+					num++;
+				}
+			}
+		}
+		dx = new int[num];
+		dy = new int[num];
+		dz = new int[num];
+		offset = new int[num];
+		System.arraycopy(bufX, 0, dx, 0, num);
+		System.arraycopy(bufY, 0, dy, 0, num);
+		System.arraycopy(bufZ, 0, dz, 0, num);
+		System.arraycopy(bufOffset, 0, offset, 0, num);
+		for (int n = 0; n < num; n++) {
+			minDx = Math.min(minDx, dx[n]);
+			maxDx = Math.max(maxDx, dx[n]);
+			minDy = Math.min(minDy, dy[n]);
+			maxDy = Math.max(maxDy, dy[n]);
+			minDz = Math.min(minDz, dz[n]);
+			maxDz = Math.max(maxDz, dz[n]);
+		}
+	}
+
+	/**
+	 * Gets the neighborhood which only contains the neighbors preceding the pixel in raster
+	 * order (already visited by a raster scan). It is used for labeling in a raster scan.
+	 *
+	 * @return the neighborhood of preceding neighbors
+	 */
+	public Neighborhood backward() {
+		return new Neighborhood(connectivity, width, height, depth, -1);
+	}
+
+	/**
+	 * Gets the neighborhood which only contains the neighbors following the pixel in raster
+	 * order. It is used to visit each pair of adjacent pixels only once in a raster scan.
+	 *
+	 * @return the neighborhood of following neighbors
+	 */
+	public Neighborhood forward() {
+		return new Neighborhood(connectivity, width, height, depth, 1);
+	}
+
+	/**
+	 * Gets the indices (in 1D array) of the neighbors of given pixel which are inside
+	 * of an image, and stores them to given array.
+	 *
+	 * @param index the index of the pixel in 1D array
+	 * @param w the x offset of the pixel
+	 * @param h the y offset of the pixel
+	 * @param d the z offset of the pixel
+	 * @param neighbors the array to store the indices of neighbors, which has at least {@link #size()} elements
+	 * @return the number of neighbors
+	 */
+	public int getNeighbors(int index, int w, int h, int d, int[] neighbors) {
+		return getNeighbors(index, w, h, d, 0, depth, neighbors);
+	}
+
+	/**
+	 * Gets the indices (in 1D array) of the neighbors of given pixel which are inside
+	 * of an image and in the range of slices [dStart, dEnd), and stores them to given array.
+	 *
+	 * @param index the index of the pixel in 1D array
+	 * @param w the x offset of the pixel
+	 * @param h the y offset of the pixel
+	 * @param d the z offset of the pixel
+	 * @param dStart the first slice (inclusive)
+	 * @param dEnd the last slice (exclusive)
+	 * @param neighbors the array to store the indices of neighbors, which has at least {@link #size()} elements
+	 * @return the number of neighbors
+	 */
+	public int getNeighbors(int index, int w, int h, int d, int dStart, int dEnd, int[] neighbors) {
+		int num = offset.length;
+		if (w + minDx >= 0 && w + maxDx < width && h + minDy >= 0 && h + maxDy < height
+				&& d + minDz >= dStart && d + maxDz < dEnd) {
+			for (int n = 0; n < num; n++)
+				neighbors[n] = index + offset[n];
+			return num;
+		}
+		int count = 0;
+		for (int n = 0; n < num; n++) {
+			int x = w + dx[n], y = h + dy[n], z = d + dz[n];
+			if (x >= 0 && x < width && y >= 0 && y < height && z >= dStart && z < dEnd)
+				neighbors[count++] = index + offset[n];
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the offset (in 1D array) of the n-th neighbor. It is used to read the neighbors
+	 * without any bounds check, when the pixel is known to be inside of the image with its
+	 * neighbors ({@link BrickedVolume}).
+	 *
+	 * @param n the index of the neighbor, which is less than {@link #size()}
+	 * @return the offset of the neighbor
+	 */
+	public int getOffset(int n) {
+		return offset[n];
+	}
+
+	/**
+	 * Gets the x offset of the n-th neighbor.
+	 *
+	 * @param n the index of the neighbor, which is less than {@link #size()}
+	 * @return the x offset of the neighbor (-1, 0 or 1)
+	 */
+	public int getOffsetX(int n) {
+		return dx[n];
+	}
+
+	/**
+	 * Gets the y offset of the n-th neighbor.
+	 *
+	 * @param n the index of the neighbor, which is less than {@link #size()}
+	 * @return the y offset of the neighbor (-1, 0 or 1)
+	 */
+	public int getOffsetY(int n) {
+		return dy[n];
+	}
+
+	/**
+	 * Gets the z offset of the n-th neighbor.
+	 *
+	 * @param n the index of the neighbor, which is less than {@link #size()}
+	 * @return the z offset of the neighbor (-1, 0 or 1)
+	 */
+	public int getOffsetZ(int n) {
+		return dz[n];
+	}
+
+	/**
+	 * Gets the maximum number of neighbors.
+	 *
+	 * @return the maximum number of neighbors
+	 */
+	public int size() {
+		return offset.length;
+	}
+
+	/**
+	 * Gets the connectivity of this neighborhood.
+	 *
+	 * @return the connectivity
+	 */
+	public int getConnectivity() {
+		return connectivity;
+	}
+}
@@ -0,0 +1,180 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The class OffHeapVoxelVolume, which is a {@link VoxelVolume} stored outside of the Java heap.
+ * The voxels are stored in a memory-mapped temporary file, or in direct ByteBuffers. A mapped
+ * volume is paged in and out by the OS as needed, so that a large image which is kept after
+ * it is built does not have to stay in the Java heap. As a ByteBuffer is indexed with int values, the volume is split into
+ * several buffers (chunks) of whole slices. The memory of the chunks (and the mapping of the
+ * temporary file) is freed only when the chunks are collected by the garbage collector, as Java
+ * has no API to unmap a buffer.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class OffHeapVoxelVolume extends VoxelVolume {
+
+	/** The maximum size of a chunk. */
+	private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	/** The chunks of voxels. */
+	private ByteBuffer[] chunks;
+
+	/** The number of slices in a chunk. */
+	private int slicesPerChunk;
+
+	/** The number of voxels in a chunk. */
+	private int chunkSize;
+
+	/** The temporary file which is mapped to the chunks, or null for direct buffers. */
+	private File file;
+
+	/** The flag whether the voxels are stored in a memory-mapped temporary file. */
+	private boolean mapped;
+
+	/**
+	 * Instantiates a new volume of given size filled with 0. If mapped is true, the voxels
+	 * are stored in a memory-mapped temporary file, otherwise in direct ByteBuffers.
+	 *
+	 * @param width the width of a volume
+	 * @param height the height of a volume
+	 * @param depth the depth of a volume
+	 * @param mapped the flag whether the voxels are stored in a memory-mapped temporary file
+	 * @throws IOException if the temporary file can not be created or mapped
+	 */
+	public OffHeapVoxelVolume(int width, int height, int depth, boolean mapped) throws IOException {
+		super(width, height, depth);
+		this.mapped = mapped;
+		int slice = width * height;
+		slicesPerChunk = Math.max(1, Math.min(depth, MAX_CHUNK_SIZE / Math.max(slice, 1)));
+		chunkSize = slicesPerChunk * slice;
+		int num = (depth + slicesPerChunk - 1) / slicesPerChunk;
+		chunks = new ByteBuffer[num];
+		if (!mapped) {
+			for (int i = 0; i < num; i++)
+				chunks[i] = ByteBuffer.allocateDirect(getChunkLength(i));
+			return;
+		}
+		file = File.createTempFile("xitosbml", ".raw");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size());
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < num; i++)
+				chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, getChunkLength(i));
+		} finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the number of voxels of given chunk.
+	 *
+	 * @param chunk the index of the chunk
+	 * @return the number of voxels of the chunk
+	 */
+	private int getChunkLength(int chunk) {
+		return Math.min(slicesPerChunk, depth - chunk * slicesPerChunk) * width * height;
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#get(long)
+	 */
+	@Override
+	public byte get(long index) {
+		return chunks[(int) (index / chunkSize)].get((int) (index % chunkSize));
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#set(long, byte)
+	 */
+	@Override
+	public void set(long index, byte value) {
+		chunks[(int) (index / chunkSize)].put((int) (index % chunkSize), value);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#get(int, int, int)
+	 */
+	@Override
+	public byte get(int w, int h, int d) {
+		return chunks[d / slicesPerChunk].get(((d % slicesPerChunk) * height + h) * width + w);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#set(int, int, int, byte)
+	 */
+	@Override
+	public void set(int w, int h, int d, byte value) {
+		chunks[d / slicesPerChunk].put(((d % slicesPerChunk) * height + h) * width + w, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#getSlice(int, byte[])
+	 */
+	@Override
+	public void getSlice(int d, byte[] slice) {
+		int num = width * height;
+		ByteBuffer buffer = chunks[d / slicesPerChunk].duplicate();
+		buffer.position((d % slicesPerChunk) * num);
+		buffer.get(slice, 0, num);
+	}
+
+	/* (non-Javadoc)
+	 * @see jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume#setSlice(int, byte[])
+	 */
+	@Override
+	public void setSlice(int d, byte[] slice) {
+		int num = width * height;
+		ByteBuffer buffer = chunks[d / slicesPerChunk].duplicate();
+		buffer.position((d % slicesPerChunk) * num);
+		buffer.put(slice, 0, num);
+	}
+
+	/**
+	 * Creates a new volume of the same size with the same storage as this volume, which is
+	 * filled with 0.
+	 *
+	 * @return the new volume
+	 * @throws IllegalStateException if the temporary file can not be created or mapped
+	 */
+	@Override
+	public VoxelVolume createVolume() {
+		try {
+			return new OffHeapVoxelVolume(width, height, depth, mapped);
+		} catch (IOException e) {
+			throw new IllegalStateException("The " + (mapped ? "memory-mapped" : "direct") + " volume of "
+					+ width + " x " + height + " x " + depth + " voxels can not be created", e);
+		}
+	}
+
+	/**
+	 * Drops the references to the chunks, so that the garbage collector can collect them.
+	 * The volume must not be used after it is closed. The memory of the chunks and the mapping
+	 * of the temporary file live until the chunks are collected, and the temporary file is
+	 * left to be deleted when the JVM exits, as a file which is still mapped can not be
+	 * deleted on every platform.
+	 */
+	@Override
+	public void close() {
+		chunks = new ByteBuffer[0];
+	}
+
+	/**
+	 * Checks if the voxels are stored in a memory-mapped temporary file.
+	 *
+	 * @return true, if the voxels are stored in a memory-mapped temporary file
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+}
@@ -1,6 +1,7 @@
 package jp.ac.keio.bio.fun.xitosbml.image;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -8,7 +9,10 @@ import org.scijava.vecmath.Point3d;
 
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.io.FileInfo;
 import ij.io.FileSaver;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
 
 /**
  * The class SpatialImage, which is a class for handling spatial image in
@@ -19,8 +23,26 @@ import ij.io.FileSaver;
  */
 public class SpatialImage {
 
-	/** The raw data of spatial image in 1D array. */
-	private byte[] raw;
+	/** The storage which keeps the voxels in byte arrays on the Java heap. */
+	public static final int STORAGE_HEAP = 0;
+
+	/** The storage which keeps the voxels in a memory-mapped temporary file. */
+	public static final int STORAGE_MAPPED = 1;
+
+	/** The storage which keeps the voxels in direct ByteBuffers outside of the Java heap. */
+	public static final int STORAGE_DIRECT = 2;
+
+	/** The storage of the voxels of spatial image. */
+	private int storage = STORAGE_HEAP;
+
+	/**
+	 * The voxels of spatial image, indexed with long values. If the image fits in one
+	 * Java array, the volume is stored in the raw data (1D array) of spatial image.
+	 */
+	private VoxelVolume volume;
+
+	/** The label pyramid of the volume for the preview. It is created on demand if null. */
+	private LabelPyramid pyramid;
 
 	/** The width of an image. */
 	private int width;
@@ -31,9 +53,15 @@ public class SpatialImage {
 	/** The depth of an image. */
 	private int depth;
 
-	/** The img as an ImageJ object. */
+	/** The img as an ImageJ object. It is created from the raw data on demand if null. */
 	private ImagePlus img;
 
+	/** The file information of the image, which is used to create the ImageJ object on demand. */
+	private FileInfo fileInfo;
+
+	/** The calibration of the image, which is used to create the ImageJ object on demand. */
+	private Calibration calibration;
+
 	/** The hashmap of domain types. HashMap&lt;String, Integer&gt; */
 	private HashMap<String, Integer> hashDomainTypes;
 
@@ -49,6 +77,12 @@ public class SpatialImage {
 	/** The adjacents list of spatial image. */
 	private ArrayList<ArrayList<String>> adjacentsList;
 
+	/**
+	 * The hashmap of the size of each domain type. The size is the number of pixels
+	 * of a domain type, or the number of faces of a membrane. HashMap&lt;String, Long&gt;
+	 */
+	private HashMap<String, Long> hashDomainTypeSize;
+
 	/** The title of the image. */
 	public String title;
 
@@ -64,6 +98,30 @@ public class SpatialImage {
 	/** The delta. */
 	private Point3d delta = new Point3d();
 
+	/**
+	 * The connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26 for
+	 * a 3D image). 0 means the default connectivity.
+	 */
+	private int connectivity = 0;
+
+	/**
+	 * The minimum number of pixels of a domain. Smaller domains are merged into
+	 * their dominant neighbors. 0 means no limit.
+	 */
+	private long minDomainSize = 0;
+
+	/**
+	 * The flag whether the image is labeled and its membranes are added in bricks
+	 * of 32 x 32 x 32 voxels ({@link BrickedVolume}).
+	 */
+	private boolean bricked = false;
+
+	/**
+	 * The origin of spatial image, which is the offset (in voxels) of the first voxel
+	 * in the original image, if spatial image is cropped ({@link ImageCropper}).
+	 */
+	private Point3d origin = new Point3d();
+
 	/**
 	 * Instantiates a new spatial image with given image object. SpatialImage object
 	 * is generated with given image, sampled value (pixel value of a SampledVolume)
@@ -118,36 +176,129 @@ public class SpatialImage {
 	}
 
 	/**
-	 * Converts image object to an 1D array (raw data). Z-stack images (3D image)
-	 * will also be converted to an 1D array.
+	 * Instantiates a new spatial image with given raw data (1D array). SpatialImage object
+	 * is generated with given raw data, sampled value (pixel value of a SampledVolume) and
+	 * domain types, without copying the raw data. The raw data stays on the Java heap
+	 * ({@link #STORAGE_HEAP}), and it can be moved to another
+	 * storage by {@link #setStorage(int)} once it is not edited any more. The ImageJ image
+	 * object is not created until {@link #getImage()} is called. Unit of spatial image will
+	 * be adjusted by reading given file information.
+	 *
+	 * @param hashSampledValue the hashmap of sampled value, that is a pixel value
+	 *                         of a SampledVolume
+	 * @param hashDomainTypes  the hashmap of domain types
+	 * @param raw              the raw data (1D array) of the image
+	 * @param width            the width of the image
+	 * @param height           the height of the image
+	 * @param depth            the depth of the image
+	 * @param fileInfo         the file information of the image
+	 * @param calibration      the calibration of the image
+	 */
+	public SpatialImage(HashMap<String, Integer> hashSampledValue, HashMap<String, Integer> hashDomainTypes,
+			byte[] raw, int width, int height, int depth, FileInfo fileInfo, Calibration calibration) {
+		this.setWidth(width);
+		this.setHeight(height);
+		this.setDepth(depth);
+		this.storage = STORAGE_HEAP;
+		this.volume = new ChunkedVoxelVolume(raw, width, height, depth);
+		this.fileInfo = fileInfo;
+		this.calibration = calibration;
+		this.setHashSampledValue(hashSampledValue);
+		this.setHashDomainTypes(hashDomainTypes);
+		delta.x = fileInfo.pixelWidth;
+		delta.y = fileInfo.pixelHeight;
+		delta.z = fileInfo.pixelDepth;
+		setUnit();
+		if (fileInfo.unit != null)
+			adjustUnit(fileInfo.unit);
+	}
+
+	/**
+	 * Creates the ImageJ image object from the raw data (1D array).
+	 */
+	private void createImage() {
+		ImageStack stack = new ImageStack(width, height);
+		for (int i = 0; i < depth; i++) {
+			byte[] slice = new byte[width * height];
+			volume.getSlice(i, slice);
+			stack.addSlice(new ByteProcessor(width, height, slice, null));
+		}
+		img = new ImagePlus("Combined_Image", stack);
+		if (fileInfo != null)
+			img.setFileInfo(fileInfo);
+		if (calibration != null)
+			img.setCalibration(calibration);
+	}
+
+	/**
+	 * Converts image object to a volume (raw data). Z-stack images (3D image)
+	 * will also be converted to a volume. If the image has more than
+	 * Integer.MAX_VALUE voxels, the volume is stored in several arrays.
+	 * The volume is stored in the storage of spatial image.
 	 */
 	private void setRawImage() {
-		byte[] slice = null;
-		raw = new byte[width * height * depth];
+		VoxelVolume old = volume;
+		pyramid = null;
+		volume = createVolume();
+		if (old != null)
+			old.close();
 		ImageStack stack = img.getStack();
-		for (int i = 1; i <= depth; i++) {
-			slice = (byte[]) stack.getPixels(i);
-			System.arraycopy(slice, 0, getRaw(), (i - 1) * getHeight() * getWidth(), getHeight() * getWidth());
+		for (int i = 1; i <= depth; i++)
+			volume.setSlice(i - 1, (byte[]) stack.getPixels(i));
+	}
+
+	/**
+	 * Creates an empty volume of the size of spatial image in given storage.
+	 *
+	 * @param storage the storage of the volume
+	 * @return the empty volume
+	 * @throws IllegalStateException if an off-heap volume can not be created
+	 */
+	private VoxelVolume createVolume(int storage) {
+		if (storage == STORAGE_HEAP)
+			return new ChunkedVoxelVolume(width, height, depth);
+		try {
+			return new OffHeapVoxelVolume(width, height, depth, storage == STORAGE_MAPPED);
+		} catch (IOException e) {
+			throw new IllegalStateException("The " + (storage == STORAGE_MAPPED ? "memory-mapped" : "direct")
+					+ " storage of " + width + " x " + height + " x " + depth + " voxels can not be created", e);
 		}
 	}
 
+	/**
+	 * Creates an empty volume of the size of spatial image in the storage of spatial image.
+	 *
+	 * @return the empty volume
+	 * @throws IllegalStateException if an off-heap volume can not be created
+	 */
+	private VoxelVolume createVolume() {
+		return createVolume(storage);
+	}
+
 	/**
 	 * Sets the image object and create 1D array of the image and sets to raw
-	 * object.
+	 * object. The size of spatial image is taken from the image, as the image
+	 * may be resampled (see {@link Interpolator}).
 	 *
 	 * @param image the new image as an ImageJ object
 	 */
 	public void setImage(ImagePlus image) {
 		this.img = image;
+		this.setWidth(image.getWidth());
+		this.setHeight(image.getHeight());
+		this.setDepth(image.getImageStackSize());
 		setRawImage();
 	}
 
 	/**
-	 * Gets the ImageJ image object.
+	 * Gets the ImageJ image object. If the spatial image is created from raw data,
+	 * the ImageJ image object is created from the raw data at the first call.
 	 *
 	 * @return the image as an ImageJ object
 	 */
 	public ImagePlus getImage() {
+		if (img == null)
+			createImage();
 		return img;
 	}
 
@@ -159,7 +310,7 @@ public class SpatialImage {
 	 */
 	public void updateImage(ImageStack imStack) {
 		depth = imStack.getSize();
-		img.setStack(imStack);
+		getImage().setStack(imStack);
 		setRawImage();
 	}
 
@@ -237,12 +388,15 @@ public class SpatialImage {
 	}
 
 	/**
-	 * Gets the raw data of spatial image in 1D array.
+	 * Gets the raw data of spatial image in 1D array. If the volume of spatial image is
+	 * stored in one Java array, the raw data shares the voxels with the volume
+	 * ({@link #getVolume()}). Otherwise, the raw data is a copy of the volume.
 	 *
 	 * @return the raw data (1D array) of spatial image
+	 * @throws IllegalStateException if spatial image has more than Integer.MAX_VALUE voxels
 	 */
 	public byte[] getRaw() {
-		return raw;
+		return volume.toArray();
 	}
 
 	/**
@@ -251,7 +405,122 @@ public class SpatialImage {
 	 * @param raw the new raw data of spatial image in 1D array
 	 */
 	public void setRaw(byte[] raw) {
-		this.raw = raw;
+		pyramid = null;
+		if (storage == STORAGE_HEAP) {
+			this.volume = new ChunkedVoxelVolume(raw, width, height, depth);
+		} else {
+			VoxelVolume old = volume;
+			volume = createVolume();
+			volume.setArray(raw);
+			old.close();
+		}
+	}
+
+	/**
+	 * Gets the volume of spatial image, which can be read and written slice by slice
+	 * without copying it to one array.
+	 *
+	 * @return the volume of spatial image
+	 */
+	public VoxelVolume getVolume() {
+		return volume;
+	}
+
+	/**
+	 * Creates the label pyramid of the volume of spatial image with given number of coarse
+	 * levels, which are downsampled by 2, 4, 8, ... by majority vote.
+	 *
+	 * @param levels the number of coarse levels
+	 * @return the label pyramid
+	 */
+	public LabelPyramid createPyramid(int levels) {
+		pyramid = new LabelPyramid(volume, levels);
+		return pyramid;
+	}
+
+	/**
+	 * Gets the label pyramid of the volume of spatial image. If the label pyramid is not
+	 * created yet, it is created with {@link LabelPyramid#DEFAULT_LEVELS} coarse levels.
+	 *
+	 * @return the label pyramid
+	 */
+	public LabelPyramid getPyramid() {
+		if (pyramid == null)
+			createPyramid(LabelPyramid.DEFAULT_LEVELS);
+		return pyramid;
+	}
+
+	/**
+	 * Gets the spatial image of given level of the label pyramid, which shares the sampled values
+	 * and domain types with this spatial image. The voxel size of the level is multiplied by the
+	 * scale of the level. The level 0 is this spatial image itself.
+	 *
+	 * @param level the level of the label pyramid
+	 * @return the spatial image of the level
+	 */
+	public SpatialImage getLevel(int level) {
+		if (level == 0)
+			return this;
+		VoxelVolume coarse = getPyramid().getLevel(level);
+		int scale = LabelPyramid.getScale(level);
+		FileInfo info = fileInfo != null ? fileInfo : getImage().getFileInfo();
+		info = info != null ? (FileInfo) info.clone() : new FileInfo();
+		info.pixelWidth *= scale;
+		info.pixelHeight *= scale;
+		info.pixelDepth *= scale;
+		SpatialImage spImg = new SpatialImage(hashSampledValue, hashDomainTypes, coarse.toArray(), coarse.getWidth(),
+				coarse.getHeight(), coarse.getDepth(), info, null);
+		spImg.setConnectivity(connectivity);
+		spImg.setOrigin(new Point3d(origin.x / scale, origin.y / scale, origin.z / scale));
+		return spImg;
+	}
+
+	/**
+	 * Gets the storage of the voxels of spatial image.
+	 *
+	 * @return the storage ({@link #STORAGE_HEAP}, {@link #STORAGE_MAPPED} or {@link #STORAGE_DIRECT})
+	 */
+	public int getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Sets the storage of the voxels of spatial image. The voxels are moved to the new storage
+	 * slice by slice, and the old volume is closed. An off-heap storage keeps the voxels of
+	 * a finished spatial image out of the Java heap, and the OS pages the voxels of a memory-mapped
+	 * storage in and out as needed. The image processing filters (e.g. {@link ImageEdit}) work on
+	 * the raw data (1D array) on the heap, so that they copy an off-heap volume to the heap.
+	 *
+	 * @param storage the storage ({@link #STORAGE_HEAP}, {@link #STORAGE_MAPPED} or {@link #STORAGE_DIRECT})
+	 * @throws IllegalArgumentException if the storage is not supported
+	 * @throws IllegalStateException if the off-heap storage can not be created, in which case
+	 * the voxels stay in the current storage
+	 */
+	public void setStorage(int storage) {
+		checkStorage(storage);
+		if (storage == this.storage)
+			return;
+		VoxelVolume old = volume;
+		volume = createVolume(storage);
+		this.storage = storage;
+		byte[] slice = new byte[width * height];
+		for (int d = 0; d < depth; d++) {
+			old.getSlice(d, slice);
+			volume.setSlice(d, slice);
+		}
+		old.close();
+		pyramid = null;
+	}
+
+	/**
+	 * Checks if given storage is supported.
+	 *
+	 * @param storage the storage
+	 * @throws IllegalArgumentException if the storage is not supported
+	 */
+	static void checkStorage(int storage) {
+		if (storage != STORAGE_HEAP && storage != STORAGE_MAPPED && storage != STORAGE_DIRECT)
+			throw new IllegalArgumentException("Unsupported storage: " + storage);
 	}
 
 	/**
@@ -313,6 +582,26 @@ public class SpatialImage {
 		this.hashDomainNum = hashDomainNum;
 	}
 
+	/**
+	 * Gets the hashmap of the size of each domain type. The size is the number of
+	 * pixels of a domain type, or the number of faces of a membrane.
+	 * HashMap&lt;String, Long&gt;
+	 *
+	 * @return the hashmap of the size of each domain type, or null if not computed
+	 */
+	public HashMap<String, Long> getHashDomainTypeSize() {
+		return hashDomainTypeSize;
+	}
+
+	/**
+	 * Sets the hashmap of the size of each domain type with given HashMap&lt;String, Long&gt;
+	 *
+	 * @param hashDomainTypeSize the hashmap of the size of each domain type
+	 */
+	public void setHashDomainTypeSize(HashMap<String, Long> hashDomainTypeSize) {
+		this.hashDomainTypeSize = hashDomainTypeSize;
+	}
+
 	/**
 	 * Gets the list of adjacent of spatial image.
 	 *
@@ -338,7 +627,7 @@ public class SpatialImage {
 	 * @param name the name of TIFF file
 	 */
 	public void saveAsImage(String path, String name) {
-		FileSaver fs = new FileSaver(img);
+		FileSaver fs = new FileSaver(getImage());
 		if (name == null)
 			return;
 		if (depth > 1)
@@ -349,7 +638,7 @@ public class SpatialImage {
 
 	// Overloading for XitoSBML-CUI
 	public void saveAsImage(String path) {
-		FileSaver fs = new FileSaver(img);
+		FileSaver fs = new FileSaver(getImage());
 		if (path == null)
 			return;
 		File f = new File(path + ".tiff");
@@ -407,6 +696,92 @@ public class SpatialImage {
 		this.delta = delta;
 	}
 
+	/**
+	 * Gets the origin of spatial image, which is the offset (in voxels) of the first voxel
+	 * in the original image. The origin is (0, 0, 0) unless spatial image is cropped.
+	 *
+	 * @return the origin of spatial image
+	 */
+	public Point3d getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Sets the origin of spatial image, which is the offset (in voxels) of the first voxel
+	 * in the original image.
+	 *
+	 * @param origin the new origin of spatial image
+	 */
+	public void setOrigin(Point3d origin) {
+		this.origin = origin;
+	}
+
+	/**
+	 * Gets the connectivity of adjacent pixels, which is used to decide whether two
+	 * pixels belong to the same domain and whether two domains are adjacent. If the
+	 * connectivity is not set, the default connectivity (4 for a 2D image and 6 for
+	 * a 3D image) is returned.
+	 *
+	 * @return the connectivity of adjacent pixels
+	 */
+	public int getConnectivity() {
+		return Neighborhood.normalize(connectivity, depth);
+	}
+
+	/**
+	 * Sets the connectivity of adjacent pixels (4 or 8 for a 2D image, 6, 18 or 26
+	 * for a 3D image). If 0, the default connectivity is used.
+	 *
+	 * @param connectivity the connectivity of adjacent pixels
+	 * @throws IllegalArgumentException if the connectivity is not supported
+	 */
+	public void setConnectivity(int connectivity) {
+		Neighborhood.normalize(connectivity, depth);
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * Gets the minimum number of pixels of a domain. Smaller domains are merged into
+	 * their dominant neighbors when membranes are added ({@link ImageEdit}).
+	 *
+	 * @return the minimum number of pixels of a domain, or 0 if there is no limit
+	 */
+	public long getMinDomainSize() {
+		return minDomainSize;
+	}
+
+	/**
+	 * Sets the minimum number of pixels of a domain. Smaller domains are merged into
+	 * their dominant neighbors when membranes are added ({@link ImageEdit}). If 0,
+	 * no domain is merged.
+	 *
+	 * @param minDomainSize the minimum number of pixels of a domain
+	 */
+	public void setMinDomainSize(long minDomainSize) {
+		this.minDomainSize = Math.max(0, minDomainSize);
+	}
+
+	/**
+	 * Checks whether the image is labeled and its membranes are added in bricks
+	 * ({@link BrickedVolume}) when membranes are added ({@link ImageEdit}).
+	 *
+	 * @return true, if the image is processed in bricks
+	 */
+	public boolean isBricked() {
+		return bricked;
+	}
+
+	/**
+	 * Sets whether the image is labeled and its membranes are added in bricks
+	 * ({@link BrickedVolume}) when membranes are added ({@link ImageEdit}). The domains
+	 * and the membranes are identical to the ones in raster order.
+	 *
+	 * @param bricked the flag whether the image is processed in bricks
+	 */
+	public void setBricked(boolean bricked) {
+		this.bricked = bricked;
+	}
+
 	/**
 	 * Gets the hashmap of domain InteriorPoint of spatial image.
 	 *
@@ -28,8 +28,17 @@ public class SplitDomains {
 	/** The depth of an image. */
 	private int depth;
 	
-	/** The raw data of spatial image in 1D array. */
-	private byte[] raw;
+	/** The volume of spatial image, which is read and written slice by slice. */
+	private VoxelVolume volume;
+	
+	/** The previous slice of the current slice, which is already checked. */
+	private byte[] prev;
+	
+	/** The current slice, which is checked in place. */
+	private byte[] cur;
+	
+	/** The next slice of the current slice, which is not checked yet. */
+	private byte[] next;
 	
 	/** The stack of images which has safe border. */
 	private ImageStack altStack;
@@ -46,6 +55,12 @@ public class SplitDomains {
 	/** The target of adjacent pixel. */
 	private byte adjacentToTarget;
 	
+	/** The neighborhood of a pixel with the connectivity of the spatial image. */
+	private Neighborhood neighborhood;
+	
+	/** The buffer of the indices of neighbors. */
+	private int[] neighbors;
+	
 	/**
 	 * Instantiates a new split domains with given SpatialImage.
 	 *
@@ -56,7 +71,9 @@ public class SplitDomains {
 		this.width = spImg.getWidth();
 		this.height = spImg.getHeight();
 		this.depth = spImg.getDepth();
-		this.raw = spImg.getRaw();
+		this.volume = spImg.getVolume();
+		this.neighborhood = new Neighborhood(spImg.getConnectivity(), width, height, depth);
+		this.neighbors = new int[neighborhood.size()];
 		
 		createDomainToCheck(spImg.getHashSampledValue(), targetDomain);
 		checkDomain();
@@ -115,20 +132,48 @@ public class SplitDomains {
 	
 	/**
 	 * Check domain. If a pixel contain a value of deletion target, then delete the pixel (set to the value of
-	 * cytosol) and add adjacent pixels to the list of target.
+	 * cytosol) and add adjacent pixels to the list of target. The volume is checked slice by slice
+	 * with the previous and the next slice, and each checked slice is written back to the volume,
+	 * so that the volume is not copied to one array of the whole image.
 	 */
 	private void checkDomain(){
+		int slice = width * height;
+		prev = new byte[slice];
+		cur = new byte[slice];
+		next = new byte[slice];
+		volume.getSlice(0, cur);
 		for (int d = 0; d < depth; d++) {
+			if (d + 1 < depth)
+				volume.getSlice(d + 1, next);
 			for (int h = 0; h < height; h++) {
 				for (int w = 0; w < width; w++) {
-					if(	delTarget == (raw[d * height * width + h * width + w])){
+					if(	delTarget == (cur[h * width + w])){
 						checkAdjacents(w,h,d, delTarget);
 					}
 				}
 			}
+			volume.setSlice(d, cur);
+			byte[] temp = prev;
+			prev = cur;
+			cur = next;
+			next = temp;
 		}
 	}
 	
+	/**
+	 * Gets the pixel value of given index from the previous, the current or the next slice.
+	 *
+	 * @param index the index of the pixel
+	 * @param d the z offset of the current slice
+	 * @return the pixel value
+	 */
+	private byte getPixel(int index, int d){
+		int slice = width * height;
+		int z = index / slice;
+		byte[] matrix = z < d ? prev : (z > d ? next : cur);
+		return matrix[index - z * slice];
+	}
+	
 	/**
 	 * Check adjacent pixel is not a cytosol and has different pixel value with the given pixel value (deletion target).
 	 * If the adjacent pixel has different value, then add the adjacent pixel value to the list of
@@ -142,38 +187,20 @@ public class SplitDomains {
 	 */
 	private void checkAdjacents(int w, int h, int d, byte pixVal) {
 		List<Byte> adjVal = new ArrayList<Byte>();
+		int index = d * height * width + h * width + w;
+		int num = neighborhood.getNeighbors(index, w, h, d, neighbors);
+		for (int n = 0; n < num; n++) {
+			byte adj = getPixel(neighbors[n], d);
+			if (adj != cytVal && adj != pixVal)
+				adjVal.add(adj);
+		}
 
-		// check left
-		if (w != 0 && raw[d * height * width + h * width + w - 1] != cytVal && raw[d * height * width + h * width + w - 1] != pixVal)
-			adjVal.add(raw[d * height * width + h * width + w - 1]);
-
-		// check right
-		if (w != width - 1 && raw[d * height * width + h * width + w + 1] != cytVal && raw[d * height * width + h * width + w + 1] != pixVal)
-			adjVal.add(raw[d * height * width + h * width + w + 1]);
-
-		// check up
-		if (h != 0 && raw[d * height * width + (h - 1) * width + w] != cytVal && raw[d * height * width + (h - 1) * width + w] != pixVal)
-			adjVal.add(raw[d * height * width + (h - 1) * width + w]);
-
-		// check down
-		if (h != height - 1 && raw[d * height * width + (h + 1) * width + w] != cytVal && raw[d * height * width + (h + 1) * width + w] != pixVal)
-			adjVal.add(raw[d * height * width + (h + 1) * width + w]);
-
-		// check below
-		if (d != 0 && raw[(d - 1) * height * width + h * width + w] != cytVal && raw[(d - 1) * height * width + h * width + w] != pixVal)
-			adjVal.add(raw[(d - 1) * height * width + h * width + w]);
-
-		// check above
-		if (d < depth - 1 && raw[(d + 1) * height * width + h * width + w] != cytVal && raw[(d + 1) * height * width + h * width + w] != pixVal)
-			adjVal.add(raw[(d + 1) * height * width + h * width + w]);
-
-		
 		if (adjVal.isEmpty())
 			return;
 		
 		else{
 			listToSet(adjVal);
-			raw[d * height * width + h * width + w] = cytVal;
+			cur[h * width + w] = cytVal;
 		}
 	}
 	
@@ -195,7 +222,7 @@ public class SplitDomains {
 		
 		for(int i = 1 ; i <= depth ; i++){
 			byte[] slice = new byte[height * width];
-			System.arraycopy(raw, (i-1) * height * width, slice, 0, height * width);
+			volume.getSlice(i - 1, slice);
 			altStack.addSlice(new ByteProcessor(width,height,slice,null));
     	} 
 	}
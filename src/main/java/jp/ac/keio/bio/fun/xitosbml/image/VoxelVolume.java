@@ -0,0 +1,223 @@
+package jp.ac.keio.bio.fun.xitosbml.image;
+
+/**
+ * The class VoxelVolume, which is a volume of 8bit voxels of a spatial image indexed with long
+ * values. The index of a voxel is ((d * height + h) * width + w), which is the same as
+ * the index in the raw data (1D array) of an image, but it does not overflow for volumes
+ * which have more than Integer.MAX_VALUE voxels.
+ * The implementation decides how the voxels are stored (for example, in several arrays or
+ * outside of the Java heap), and the voxels can be read and written slice by slice.
+ * Note that the image processing filters ({@link ImagePipeline}, {@link Filler} and
+ * {@link ImageEdit}) still work on the raw data (1D array), so that a spatial image can have
+ * at most {@link #MAX_ARRAY_SIZE} voxels.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public abstract class VoxelVolume {
+
+	/** The maximum number of elements of a Java array. */
+	public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/** The width of a volume. */
+	protected int width;
+
+	/** The height of a volume. */
+	protected int height;
+
+	/** The depth of a volume. */
+	protected int depth;
+
+	/**
+	 * Instantiates a new voxel volume of given size.
+	 *
+	 * @param width the width of a volume
+	 * @param height the height of a volume
+	 * @param depth the depth of a volume
+	 */
+	protected VoxelVolume(int width, int height, int depth) {
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+	}
+
+	/**
+	 * Gets the value of the voxel at given index.
+	 *
+	 * @param index the index of the voxel
+	 * @return the value of the voxel
+	 */
+	public abstract byte get(long index);
+
+	/**
+	 * Sets the value of the voxel at given index.
+	 *
+	 * @param index the index of the voxel
+	 * @param value the new value of the voxel
+	 */
+	public abstract void set(long index, byte value);
+
+	/**
+	 * Gets the value of the voxel at given offsets.
+	 *
+	 * @param w the x offset
+	 * @param h the y offset
+	 * @param d the z offset
+	 * @return the value of the voxel
+	 */
+	public byte get(int w, int h, int d) {
+		return get(index(w, h, d));
+	}
+
+	/**
+	 * Sets the value of the voxel at given offsets.
+	 *
+	 * @param w the x offset
+	 * @param h the y offset
+	 * @param d the z offset
+	 * @param value the new value of the voxel
+	 */
+	public void set(int w, int h, int d, byte value) {
+		set(index(w, h, d), value);
+	}
+
+	/**
+	 * Copies the voxels of given slice to given array, which has at least width * height elements.
+	 *
+	 * @param d the z offset of the slice
+	 * @param slice the array to store the voxels of the slice
+	 */
+	public void getSlice(int d, byte[] slice) {
+		long start = index(0, 0, d);
+		for (int i = 0, num = width * height; i < num; i++)
+			slice[i] = get(start + i);
+	}
+
+	/**
+	 * Copies the voxels of given array to given slice.
+	 *
+	 * @param d the z offset of the slice
+	 * @param slice the array which contains the voxels of the slice
+	 */
+	public void setSlice(int d, byte[] slice) {
+		long start = index(0, 0, d);
+		for (int i = 0, num = width * height; i < num; i++)
+			set(start + i, slice[i]);
+	}
+
+	/**
+	 * Gets the raw data (1D array) of this volume. The implementation may return its
+	 * internal array without copying, so that modifying the array modifies this volume.
+	 *
+	 * @return the raw data (1D array) of this volume
+	 * @throws IllegalStateException if this volume does not fit in one Java array
+	 */
+	public byte[] toArray() {
+		if (!fitsInArray())
+			throw new IllegalStateException("The volume of " + size() + " voxels does not fit in one array");
+		byte[] raw = new byte[(int) size()];
+		byte[] slice = new byte[width * height];
+		for (int d = 0; d < depth; d++) {
+			getSlice(d, slice);
+			System.arraycopy(slice, 0, raw, d * slice.length, slice.length);
+		}
+		return raw;
+	}
+
+	/**
+	 * Copies given raw data (1D array) to this volume. It is the counterpart of
+	 * {@link #toArray()}, and writes back the raw data modified in place.
+	 *
+	 * @param raw the raw data (1D array) which has the size of this volume
+	 */
+	public void setArray(byte[] raw) {
+		byte[] slice = new byte[width * height];
+		for (int d = 0; d < depth; d++) {
+			System.arraycopy(raw, d * slice.length, slice, 0, slice.length);
+			setSlice(d, slice);
+		}
+	}
+
+	/**
+	 * Checks if this volume is stored in one Java array, which is returned by
+	 * {@link #toArray()} without copying.
+	 *
+	 * @return true, if this volume is stored in one Java array
+	 */
+	public boolean hasArray() {
+		return false;
+	}
+
+	/**
+	 * Creates a new volume of the same size with the same storage as this volume,
+	 * which is filled with 0.
+	 *
+	 * @return the new volume
+	 */
+	public abstract VoxelVolume createVolume();
+
+	/**
+	 * Releases the resources (for example, a temporary file) of this volume.
+	 * The volume must not be used after it is closed.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Checks if this volume fits in one Java array (raw data).
+	 *
+	 * @return true, if this volume fits in one Java array
+	 */
+	public boolean fitsInArray() {
+		return size() <= MAX_ARRAY_SIZE;
+	}
+
+	/**
+	 * Gets the index of the voxel at given offsets.
+	 *
+	 * @param w the x offset
+	 * @param h the y offset
+	 * @param d the z offset
+	 * @return the index of the voxel
+	 */
+	public long index(int w, int h, int d) {
+		return ((long) d * height + h) * width + w;
+	}
+
+	/**
+	 * Gets the number of voxels of this volume.
+	 *
+	 * @return the number of voxels
+	 */
+	public long size() {
+		return (long) width * height * depth;
+	}
+
+	/**
+	 * Gets the width of this volume.
+	 *
+	 * @return the width of this volume
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the height of this volume.
+	 *
+	 * @return the height of this volume
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the depth of this volume.
+	 *
+	 * @return the depth of this volume
+	 */
+	public int getDepth() {
+		return depth;
+	}
+}
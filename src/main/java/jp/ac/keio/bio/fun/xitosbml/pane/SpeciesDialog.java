@@ -45,6 +45,7 @@ import ij.process.ImageProcessor;
 import ij.WindowManager;
 
 //import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
+import jp.ac.keio.bio.fun.xitosbml.geometry.SampledFieldReader;
 import java.awt.*;
 import java.awt.event.*;
 
@@ -605,32 +606,21 @@ public class SpeciesDialog implements ItemListener {
          */
          private int[] checkImageBoundary( Geometry geo, int[] brightness, int width, int height, int depth ) throws IllegalArgumentException, IdentifierException {//added by Morita
                  // get compartment geometry 
+                 // the samples are parsed (and inflated if deflated) by SampledFieldReader
                  SampledField sf = geo.getListOfSampledFields().get(0);
-                 String uncompr = sf.getSamples();
-                 int digit = 0;
-                 int num = 0;
-                 int[] sudoCompartment = sudoCompartment = new int[ width * height * depth ];                   
+                 SampledFieldReader reader = new SampledFieldReader( sf );
+                 reader.read();
                  int[] sCompartment = new int[ width * height * depth ];
+                 // the first and the last slices of 3D image are not compared
+                 int from = 0;
+                 int to = width * height * depth;
                  if( depth > 1 ){
-                         uncompr = uncompr.substring( 2 * width * height );
-                 }
-                 for( int i = 1; i < uncompr.length(); i++ ){
-                         if( uncompr.substring(i-1,i).equals(" ") ){
-                                 if( depth > 1 )
-                                         if( num == width * height * (depth - 2) )
-                                                 break;
-                                 sudoCompartment[num] = Integer.parseInt(uncompr.substring(digit,i-1));
-                                 num++;
-                                 digit = i;
-                         }
-                 } if( depth > 1 ){
-                         for(int i = 0; i < (width * height * depth); i++)
-                                   sCompartment[i] = 0;
-                         for(int i = 0; i < (width * height * (depth-2.0)); i++)
-                                   sCompartment[i+(width * height)] = sudoCompartment[i];
-                 } else if( depth == 1 ){
-                         sCompartment = sudoCompartment;
+                         from = width * height;
+                         to = width * height * (depth - 1);
                  }
+                 to = Math.min( to, reader.getNumSamples() );
+                 for( int i = from; i < to; i++ )
+                         sCompartment[i] = (int) reader.getValue(i);
                  
                  ListOf<GeometryDefinition> logd = geo.getListOfGeometryDefinitions();
                  SampledFieldGeometry sfg = (SampledFieldGeometry)logd.get(0);
@@ -0,0 +1,356 @@
+package jp.ac.keio.bio.fun.xitosbml.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The class NumericArrayParser, which parses the numeric arrays of SBML (e.g. the samples of
+ * a SampledField), that is, the values separated by white spaces (or commas). The text is read
+ * from a CharSequence or a Reader into a small char buffer, and the values are parsed directly
+ * from the buffer into primitive arrays, so that neither a String array of the values nor
+ * a String of each value is created. A decimal value of a few digits (e.g. "12" or "0.25") is
+ * computed from its digits, which gives exactly the same value as {@link Double#parseDouble(String)}.
+ * Only other values (e.g. with an exponent) are parsed by {@link Double#parseDouble(String)}.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class NumericArrayParser {
+
+	/** The size of the char buffer. */
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	/** The exact powers of ten in double. */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** The exact powers of ten in float. */
+	private static final float[] POW10F = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+	/** The text, or null if the text is read from the reader. */
+	private CharSequence text;
+
+	/** The position of the next character of the text to be copied to the buffer. */
+	private int textPos;
+
+	/** The reader, or null if the text is a CharSequence. */
+	private Reader reader;
+
+	/** The char buffer. */
+	private char[] buf = new char[BUFFER_SIZE];
+
+	/** The position of the next character in the buffer. */
+	private int pos;
+
+	/** The number of characters in the buffer. */
+	private int limit;
+
+	/** The start of the current value in the buffer. */
+	private int start;
+
+	/** The end of the current value in the buffer. */
+	private int end;
+
+	/** The flag whether all characters are read into the buffer. */
+	private boolean eof = false;
+
+	/**
+	 * Instantiates a new numeric array parser for given text.
+	 *
+	 * @param text the text of the values
+	 */
+	public NumericArrayParser(CharSequence text) {
+		this.text = text;
+	}
+
+	/**
+	 * Instantiates a new numeric array parser for the text read from given reader.
+	 * The reader is not closed by this parser.
+	 *
+	 * @param reader the reader of the text of the values
+	 */
+	public NumericArrayParser(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads more characters into the buffer. The characters of the current value are kept
+	 * (moved to the start of the buffer), and the buffer is enlarged if it is full of them.
+	 *
+	 * @return true, if any character is read
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	private boolean fill() throws IOException {
+		if (eof)
+			return false;
+		int keep = limit - start;
+		if (start > 0) {
+			System.arraycopy(buf, start, buf, 0, keep);
+			pos -= start;
+			start = 0;
+		} else if (keep == buf.length) {
+			char[] larger = new char[buf.length * 2];
+			System.arraycopy(buf, 0, larger, 0, keep);
+			buf = larger;
+		}
+		limit = keep;
+		int size;
+		if (reader != null) {
+			size = reader.read(buf, limit, buf.length - limit);
+		} else {
+			size = Math.min(buf.length - limit, text.length() - textPos);
+			if (text instanceof String)
+				((String) text).getChars(textPos, textPos + size, buf, limit);
+			else
+				for (int i = 0; i < size; i++)
+					buf[limit + i] = text.charAt(textPos + i);
+			textPos += size;
+			if (size == 0)
+				size = -1;
+		}
+		if (size < 0) {
+			eof = true;
+			return false;
+		}
+		limit += size;
+		return true;
+	}
+
+	/**
+	 * Checks if the text has a next value, and moves to the value. The separators before the
+	 * value are skipped. The value is parsed by {@link #nextLong()}, {@link #nextDouble()} or
+	 * {@link #nextFloat()}.
+	 *
+	 * @return true, if the text has a next value
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public boolean hasNext() throws IOException {
+		start = pos;
+		while (true) {
+			if (pos == limit) {
+				start = pos;
+				if (!fill())
+					return false;
+			}
+			if (!isSeparator(buf[pos]))
+				break;
+			pos++;
+		}
+		start = pos;
+		while (true) {
+			if (pos == limit && !fill())
+				break;
+			if (isSeparator(buf[pos]))
+				break;
+			pos++;
+		}
+		end = pos;
+		return true;
+	}
+
+	/**
+	 * Checks if given character separates the values.
+	 *
+	 * @param c the character
+	 * @return true, if the character is a white space or a comma
+	 */
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == ',' || c == '\n' || c == '\t' || c == '\r';
+	}
+
+	/**
+	 * Parses the current value as an integer. A value with a fraction (e.g. "1.0") or an exponent
+	 * is parsed as a double and truncated.
+	 *
+	 * @return the integer value
+	 * @throws NumberFormatException if the value is not a number
+	 */
+	public long nextLong() {
+		int i = start;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+')
+			i++;
+		if (i == end || end - i > 18)
+			return (long) parseValue();
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9)
+				return (long) parseValue();
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the current value as a double. A decimal value of at most 15 digits is computed
+	 * from its digits, which is exact and the same as {@link Double#parseDouble(String)}.
+	 *
+	 * @return the double value
+	 * @throws NumberFormatException if the value is not a number
+	 */
+	public double nextDouble() {
+		int i = start;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+')
+			i++;
+		long mantissa = 0;
+		int digits = 0, fraction = -1;
+		for (; i < end; i++) {
+			char c = buf[i];
+			if (c == '.' && fraction < 0) {
+				fraction = 0;
+				continue;
+			}
+			if (c < '0' || c > '9' || ++digits > 15)
+				return parseValue();
+			mantissa = mantissa * 10 + (c - '0');
+			if (fraction >= 0)
+				fraction++;
+		}
+		if (digits == 0)
+			return parseValue();
+		double value = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the current value as a float. A decimal value of at most 7 digits is computed
+	 * from its digits, which is exact and the same as {@link Float#parseFloat(String)}.
+	 *
+	 * @return the float value
+	 * @throws NumberFormatException if the value is not a number
+	 */
+	public float nextFloat() {
+		int i = start;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+')
+			i++;
+		int mantissa = 0;
+		int digits = 0, fraction = -1;
+		for (; i < end; i++) {
+			char c = buf[i];
+			if (c == '.' && fraction < 0) {
+				fraction = 0;
+				continue;
+			}
+			if (c < '0' || c > '9' || ++digits > 7)
+				return Float.parseFloat(new String(buf, start, end - start));
+			mantissa = mantissa * 10 + (c - '0');
+			if (fraction >= 0)
+				fraction++;
+		}
+		if (digits == 0)
+			return Float.parseFloat(new String(buf, start, end - start));
+		float value = fraction > 0 ? mantissa / POW10F[fraction] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the current value by {@link Double#parseDouble(String)}.
+	 *
+	 * @return the double value
+	 * @throws NumberFormatException if the value is not a number
+	 */
+	private double parseValue() {
+		return Double.parseDouble(new String(buf, start, end - start));
+	}
+
+	/**
+	 * Skips given number of values.
+	 *
+	 * @param num the number of values to skip
+	 * @return the number of skipped values, which is less than given number at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int skip(int num) throws IOException {
+		int n = 0;
+		while (n < num && hasNext())
+			n++;
+		return n;
+	}
+
+	/**
+	 * Reads the values as integers into given byte array. Each value is truncated to 8 bits,
+	 * so that the values 0 - 255 are stored as unsigned bytes.
+	 *
+	 * @param dst the byte array
+	 * @param off the start offset in the array
+	 * @param len the maximum number of values to read
+	 * @return the number of values read, which is less than len at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int read(byte[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len && hasNext())
+			dst[off + n++] = (byte) nextLong();
+		return n;
+	}
+
+	/**
+	 * Reads the values as integers into given short array. Each value is truncated to 16 bits,
+	 * so that the values 0 - 65535 are stored as unsigned shorts.
+	 *
+	 * @param dst the short array
+	 * @param off the start offset in the array
+	 * @param len the maximum number of values to read
+	 * @return the number of values read, which is less than len at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int read(short[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len && hasNext())
+			dst[off + n++] = (short) nextLong();
+		return n;
+	}
+
+	/**
+	 * Reads the values as integers into given int array. Each value is truncated to 32 bits,
+	 * so that the values 0 - 4294967295 are stored as unsigned ints.
+	 *
+	 * @param dst the int array
+	 * @param off the start offset in the array
+	 * @param len the maximum number of values to read
+	 * @return the number of values read, which is less than len at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int read(int[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len && hasNext())
+			dst[off + n++] = (int) nextLong();
+		return n;
+	}
+
+	/**
+	 * Reads the values into given float array.
+	 *
+	 * @param dst the float array
+	 * @param off the start offset in the array
+	 * @param len the maximum number of values to read
+	 * @return the number of values read, which is less than len at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int read(float[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len && hasNext())
+			dst[off + n++] = nextFloat();
+		return n;
+	}
+
+	/**
+	 * Reads the values into given double array.
+	 *
+	 * @param dst the double array
+	 * @param off the start offset in the array
+	 * @param len the maximum number of values to read
+	 * @return the number of values read, which is less than len at the end of the text
+	 * @throws IOException if an I/O error occurs in the reader
+	 */
+	public int read(double[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (n < len && hasNext())
+			dst[off + n++] = nextDouble();
+		return n;
+	}
+}
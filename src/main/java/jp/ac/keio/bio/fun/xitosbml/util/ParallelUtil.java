@@ -0,0 +1,110 @@
+package jp.ac.keio.bio.fun.xitosbml.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The class ParallelUtil, which contains several useful static methods to run
+ * image processing tasks in parallel on a shared ForkJoinPool.
+ * The number of threads is the number of available processors.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ParallelUtil {
+
+	/** The shared ForkJoinPool. */
+	private static ForkJoinPool pool;
+
+	/**
+	 * The class RangeTask, which is a task applied to a range [from, to) of indices,
+	 * for example a range of slices of a Z-stack image.
+	 */
+	public static abstract class RangeTask {
+
+		/**
+		 * Run this task for the given range of indices.
+		 *
+		 * @param from the first index (inclusive)
+		 * @param to the last index (exclusive)
+		 */
+		public abstract void run(int from, int to);
+	}
+
+	/**
+	 * Gets the shared ForkJoinPool. The pool is created on first use.
+	 *
+	 * @return the shared ForkJoinPool
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/**
+	 * Gets the default parallelism, which is the number of available processors.
+	 *
+	 * @return the default parallelism
+	 */
+	public static int getParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Run the given task for the range [from, to) of indices. The range is split into
+	 * at most the given number of chunks, and each chunk is run on the shared ForkJoinPool.
+	 * This method returns when all chunks are finished. If the parallelism is 1 or
+	 * the range has only one index, the task is run on the calling thread.
+	 *
+	 * @param from the first index (inclusive)
+	 * @param to the last index (exclusive)
+	 * @param parallelism the maximum number of chunks
+	 * @param task the task to be run for each chunk
+	 */
+	public static void forEach(int from, int to, int parallelism, final RangeTask task) {
+		int length = to - from;
+		if (length <= 0)
+			return;
+		int chunks = Math.max(1, Math.min(parallelism, length));
+		if (chunks == 1) {
+			task.run(from, to);
+			return;
+		}
+		final List<RecursiveAction> actions = new ArrayList<RecursiveAction>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			final int start = from + (int) ((long) length * i / chunks);
+			final int end = from + (int) ((long) length * (i + 1) / chunks);
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					task.run(start, end);
+				}
+			});
+		}
+		getPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		});
+	}
+
+	/**
+	 * Run the given task for the range [from, to) of indices with the default parallelism.
+	 *
+	 * @param from the first index (inclusive)
+	 * @param to the last index (exclusive)
+	 * @param task the task to be run for each chunk
+	 */
+	public static void forEach(int from, int to, RangeTask task) {
+		forEach(from, to, getParallelism(), task);
+	}
+}
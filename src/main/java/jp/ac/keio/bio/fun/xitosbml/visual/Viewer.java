@@ -11,12 +11,16 @@ import org.scijava.vecmath.Point3d;
 import customnode.CustomMesh;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.measure.Calibration;
 import ij.process.ByteProcessor;
 import ij3d.Content;
 import ij3d.ContentNode;
 import ij3d.Image3DUniverse;
 import isosurface.MeshGroup;
+import jp.ac.keio.bio.fun.xitosbml.image.BitVolume;
+import jp.ac.keio.bio.fun.xitosbml.image.LabelPyramid;
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
+import jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume;
 
 /**
  * The class Viewer, which visualizes a SpatialImage object on ImageJ 3D Viewer.
@@ -49,8 +53,11 @@ public class Viewer {
 	/** The hashmap of ImageJ image object (ImagePlus). */
 	private HashMap<String, ImagePlus> hashImg = new HashMap<String, ImagePlus>();
 
-	/** The raw data of spatial image in 1D array. */
-	private byte[] rawMat;
+	/** The volume of spatial image, which is read slice by slice. */
+	private VoxelVolume volume;
+
+	/** The scale of a voxel of the visualized level in voxels of the full resolution. */
+	private int scale = 1;
 
 	/** The hashmap of vertices. */
 	private HashMap<String, List<Point3d>> hashVertices = new HashMap<String, List<Point3d>>();
@@ -65,12 +72,28 @@ public class Viewer {
 	 *              image in XitoSBML.
 	 */
 	public void view(SpatialImage spImg) {
+		view(spImg, 0);
+	}
+
+	/**
+	 * Visualize given level of the label pyramid of SpatialImage object on ImageJ 3D Viewer
+	 * ({@link SpatialImage#getLevel(int)}). A coarse level is used for a fast preview, and
+	 * the meshes are scaled to the coordinates of the full resolution. The level 0 is the
+	 * full resolution, which is needed if the vertices are exported ({@link #findPoints()}).
+	 *
+	 * @param spImg the The SpatialImage, which is a class for handling spatial
+	 *              image in XitoSBML.
+	 * @param level the level of the label pyramid
+	 */
+	public void view(SpatialImage spImg, int level) {
+		scale = LabelPyramid.getScale(level);
+		spImg = spImg.getLevel(level);
 		univ = new Image3DUniverse();
 		this.width = spImg.getWidth();
 		this.height = spImg.getHeight();
 		this.depth = spImg.getDepth();
 		this.hashDoms = spImg.getHashSampledValue();
-		this.rawMat = spImg.getRaw();
+		this.volume = spImg.getVolume();
 		separateImg();
 		setColors(hashImg.size());
 		setImages();
@@ -197,6 +220,13 @@ public class Viewer {
 				continue;
 			ImagePlus tempimg = new ImagePlus();
 			tempimg.setStack(createLabelImage(e.getValue()));
+			if (scale > 1) {
+				Calibration cal = new Calibration();
+				cal.pixelWidth = scale;
+				cal.pixelHeight = scale;
+				cal.pixelDepth = scale;
+				tempimg.setCalibration(cal);
+			}
 			hashImg.put(e.getKey(), tempimg);
 		}
 	}
@@ -204,35 +234,30 @@ public class Viewer {
 	/**
 	 * Creates the label image. If a pixel contains an identical value with given
 	 * pixVal, then replace its value to 255. This procedure will create a binarised
-	 * image, which represents the domain with white pixels.
+	 * image, which represents the domain with white pixels. The domain is extracted
+	 * as a bit-packed mask ({@link BitVolume}) from the slices of the volume, and the slices of
+	 * the label image are expanded from the mask, so that no 1D array of the whole image is
+	 * created in any storage of the volume.
 	 *
 	 * @param pixVal the pixel value of domain
 	 * @return the image stack
 	 */
 	private ImageStack createLabelImage(int pixVal) {
-		byte[] pixels = new byte[width * height * depth];
-		for (int d = 0; d < depth; d++) {
-			for (int h = 0; h < height; h++) {
-				for (int w = 0; w < width; w++) {
-					if (rawMat[d * height * width + h * width + w] == (byte) pixVal)
-						pixels[d * height * width + h * width + w] = (byte) 255;
-				}
-			}
-		}
-		return setStack(pixels);
+		BitVolume mask = BitVolume.of(volume, (byte) pixVal);
+		return setStack(mask);
 	}
 
 	/**
-	 * Sets the stack with given 1D array of pixel values.
+	 * Sets the stack with given mask of a domain.
 	 *
-	 * @param pixels the 1D array of pixel values, which represents the 3D space
+	 * @param mask the mask of a domain, which represents the 3D space
 	 * @return the image stack
 	 */
-	private ImageStack setStack(byte[] pixels) {
+	private ImageStack setStack(BitVolume mask) {
 		ImageStack imstack = new ImageStack(width, height);
 		for (int d = 0; d < depth; d++) {
 			byte[] matrix = new byte[width * height];
-			System.arraycopy(pixels, d * height * width, matrix, 0, matrix.length);
+			mask.getSlice(d, matrix, (byte) 255);
 			imstack.addSlice(new ByteProcessor(width, height, matrix, null));
 		}
 		return imstack;
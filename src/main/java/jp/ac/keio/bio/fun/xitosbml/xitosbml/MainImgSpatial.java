@@ -2,6 +2,8 @@ package jp.ac.keio.bio.fun.xitosbml.xitosbml;
 
 import javax.swing.JOptionPane;
 
+import org.sbml.jsbml.ext.spatial.CompressionKind;
+
 import jp.ac.keio.bio.fun.xitosbml.util.ModelSaver;
 import jp.ac.keio.bio.fun.xitosbml.util.ModelValidator;
 
@@ -36,8 +38,15 @@ public class MainImgSpatial extends MainSpatial {
 		if (imgexp.getDomFile() == null) {
 			return;
 		}
+		// the domain structure is shown from the preview, and only the export uses the full resolution
+		computePreviewImg();
+		showPreviewDomainStructure();
 		computeImg();
 		SpatialSBMLExporter sbmlexp = new SpatialSBMLExporter(spImg);
+		int compress = JOptionPane.showConfirmDialog(null, "Do you want to compress the SampledField (deflated)?",
+				"Compression of SampledField", JOptionPane.YES_NO_OPTION);
+		if (compress == JOptionPane.YES_OPTION)
+			sbmlexp.setCompression(CompressionKind.deflated);
 		model = sbmlexp.getModel();
 		sbmlexp.createGeometryElements();
 		// visualize(spImg);
@@ -53,7 +62,6 @@ public class MainImgSpatial extends MainSpatial {
 		ModelSaver saver = new ModelSaver(document);
 		saver.save();
 		spImg.saveAsImage(saver.getPath(), saver.getName());
-		showDomainStructure();
 
 		print();
 		ModelValidator validator = new ModelValidator(document);
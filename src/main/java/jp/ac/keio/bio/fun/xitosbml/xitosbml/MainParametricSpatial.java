@@ -39,7 +39,8 @@ public class MainParametricSpatial extends MainSpatial {
 		gui();
 		computeImg();
 		SpatialSBMLExporter sbmlexp = new SpatialSBMLExporter(spImg);
-		visualize(spImg);
+		// the vertices of the meshes are exported, so that the full resolution is visualized
+		visualize(spImg, 0);
 		viewer.findPoints();
 		sbmlexp.createParametric(viewer.gethashVertices(), viewer.gethashBound());
 
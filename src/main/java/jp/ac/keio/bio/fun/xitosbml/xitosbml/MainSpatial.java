@@ -1,7 +1,6 @@
 package jp.ac.keio.bio.fun.xitosbml.xitosbml;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -15,14 +14,10 @@ import org.sbml.jsbml.TidySBMLWriter;
 import org.sbml.jsbml.ext.spatial.Geometry;
 import org.sbml.jsbml.ext.spatial.SpatialModelPlugin;
 
-import ij.ImagePlus;
 import ij.plugin.PlugIn;
-import jp.ac.keio.bio.fun.xitosbml.image.CreateImage;
-import jp.ac.keio.bio.fun.xitosbml.image.Filler;
-import jp.ac.keio.bio.fun.xitosbml.image.ImageBorder;
-import jp.ac.keio.bio.fun.xitosbml.image.ImageEdit;
 import jp.ac.keio.bio.fun.xitosbml.image.ImageExplorer;
-import jp.ac.keio.bio.fun.xitosbml.image.Interpolator;
+import jp.ac.keio.bio.fun.xitosbml.image.ImagePipeline;
+import jp.ac.keio.bio.fun.xitosbml.image.LabelPyramid;
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
 import jp.ac.keio.bio.fun.xitosbml.pane.TabTables;
 import jp.ac.keio.bio.fun.xitosbml.visual.DomainStruct;
@@ -63,6 +58,12 @@ public abstract class MainSpatial implements PlugIn {
 	 */
 	protected SpatialImage spImg;
 
+	/**
+	 * The SpatialImage for the preview, which is converted from the same images at a coarse
+	 * resolution ({@link #computePreviewImg()}).
+	 */
+	protected SpatialImage previewImg;
+
 	/**
 	 * Create a GUI which allows users to specify the correspondence between each
 	 * image and the region in the cell.
@@ -92,36 +93,64 @@ public abstract class MainSpatial implements PlugIn {
 	 *
 	 * The converted image will be generated as
 	 * {@link jp.ac.keio.bio.fun.xitosbml.image.SpatialImage}, which is a base class
-	 * for representing spatial image in XitoSBML.
+	 * for representing spatial image in XitoSBML. All filters operate in place on one
+	 * raw data of the image ({@link jp.ac.keio.bio.fun.xitosbml.image.ImagePipeline}).
+	 * The image is converted at the full resolution for the export, and the preview has its
+	 * own pipeline ({@link #computePreviewImg()}), so that no label pyramid is created.
 	 */
 	protected void computeImg() {
-		Interpolator interpolator = new Interpolator();
-		HashMap<String, ImagePlus> hashDomFile = imgexp.getDomFile();
-		interpolator.interpolate(hashDomFile);
-		Filler fill = new Filler();
-
-		for (Entry<String, ImagePlus> e : hashDomFile.entrySet())
-			hashDomFile.put(e.getKey(), fill.fill(e.getValue()));
-
-		CreateImage creIm = new CreateImage(imgexp.getDomFile(), hashSampledValue);
-		spImg = new SpatialImage(hashSampledValue, hashDomainTypes, creIm.getCompoImg());
-		ImagePlus img = fill.fill(spImg);
-		spImg.setImage(img);
-		ImageBorder imgBorder = new ImageBorder(spImg);
-		spImg.updateImage(imgBorder.getStackImage());
-
-		new ImageEdit(spImg);
+		ImagePipeline pipeline = new ImagePipeline(imgexp.getDomFile(), hashSampledValue, hashDomainTypes);
+		pipeline.setPyramidLevels(0);
+		spImg = pipeline.run();
 	}
 
 	/**
-	 * Visualize the spatial model with ImageJ 3D Viewer.
+	 * Converts the images to the SpatialImage for the preview (previewImg) by the same
+	 * image processing filters as {@link #computeImg()}, but the images are resampled to
+	 * at most {@link LabelPyramid#PREVIEW_VOXELS} voxels before any filter is applied.
+	 * Thus the preview and the domain structure are shown without paying the cost of the
+	 * full resolution. The hashmaps are copied, as the pipeline adds the membranes to them.
+	 */
+	protected void computePreviewImg() {
+		ImagePipeline pipeline = new ImagePipeline(imgexp.getDomFile(),
+				new HashMap<String, Integer>(hashSampledValue), new HashMap<String, Integer>(hashDomainTypes));
+		pipeline.setVoxelBudget(LabelPyramid.PREVIEW_VOXELS);
+		pipeline.setPyramidLevels(0);
+		previewImg = pipeline.run();
+	}
+
+	/**
+	 * Visualize the spatial model with ImageJ 3D Viewer. The spatial model is previewed
+	 * on a coarse level of the label pyramid of the spatial image.
 	 *
 	 * @param spImg the SpatialImage, which is a class for handling spatial image in
 	 *              XitoSBML.
 	 */
 	protected void visualize(SpatialImage spImg) {
+		visualize(spImg, spImg.getPyramid().getPreviewLevel());
+	}
+
+	/**
+	 * Visualize the SpatialImage for the preview with ImageJ 3D Viewer. The SpatialImage
+	 * for the preview is converted at first if it does not exist yet.
+	 */
+	protected void preview() {
+		if (previewImg == null)
+			computePreviewImg();
+		visualize(previewImg, 0);
+	}
+
+	/**
+	 * Visualize given level of the label pyramid of the spatial model with ImageJ 3D Viewer.
+	 * The level 0 is the full resolution.
+	 *
+	 * @param spImg the SpatialImage, which is a class for handling spatial image in
+	 *              XitoSBML.
+	 * @param level the level of the label pyramid
+	 */
+	protected void visualize(SpatialImage spImg, int level) {
 		viewer = new Viewer();
-		viewer.view(spImg);
+		viewer.view(spImg, level);
 	}
 
 	/**
@@ -151,6 +180,21 @@ public abstract class MainSpatial implements PlugIn {
 		new DomainStruct().show(g);
 	}
 
+	/**
+	 * Show inclusion relationship of domains of the SpatialImage for the preview as a graph.
+	 * The geometry of the preview is created in a separate model, so that the model to be
+	 * exported is not changed. The SpatialImage for the preview is converted at first if it
+	 * does not exist yet.
+	 */
+	protected void showPreviewDomainStructure() {
+		if (previewImg == null)
+			computePreviewImg();
+		SpatialSBMLExporter previewexp = new SpatialSBMLExporter(previewImg);
+		previewexp.createGeometryElements();
+		SpatialModelPlugin previewplugin = (SpatialModelPlugin) previewexp.getModel().getPlugin("spatial");
+		new DomainStruct().show(previewplugin.getGeometry());
+	}
+
 	/**
 	 * Visualize SpatialImage.
 	 *
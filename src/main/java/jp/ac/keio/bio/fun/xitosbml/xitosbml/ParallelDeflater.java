@@ -0,0 +1,266 @@
+package jp.ac.keio.bio.fun.xitosbml.xitosbml;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume;
+import jp.ac.keio.bio.fun.xitosbml.util.ParallelUtil;
+
+/**
+ * The class ParallelDeflater, which compresses data to a zlib stream (RFC 1950), e.g. the samples
+ * of a deflated SampledField. The data is split into chunks, and each chunk is compressed
+ * independently in parallel by a raw deflater. Each chunk except the last one ends with a sync
+ * flush, which aligns the compressed chunk to a byte boundary without ending the stream, so that
+ * the compressed chunks are concatenated into one valid deflate stream. The zlib header is put
+ * before the chunks, and the Adler-32 checksum of the whole data, combined from the checksums of
+ * each chunk, is put after them. The samples of a SampledField are compressed as the samples text
+ * (the voxel values separated by a space, as {@link SamplesOutputStream} writes them), which is
+ * formatted by each thread from whole slices of the volume, so that neither the whole text nor
+ * an array of the whole volume is created.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class ParallelDeflater {
+
+	/** The default number of bytes of a chunk. */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/** The largest prime smaller than 65536, which is the modulus of Adler-32. */
+	private static final int ADLER_BASE = 65521;
+
+	/** The size of the buffer of compressed bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The compression level (0 - 9). */
+	private int level = Deflater.BEST_COMPRESSION;
+
+	/** The number of bytes of a chunk. */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/** The maximum number of threads. */
+	private int parallelism = ParallelUtil.getParallelism();
+
+	/**
+	 * Compresses given raw data (1D array) to a zlib stream. The bytes are compressed as they are.
+	 *
+	 * @param raw the raw data (1D array)
+	 * @return the zlib stream
+	 */
+	public byte[] compress(final byte[] raw) {
+		int num = Math.max(1, (raw.length + chunkSize - 1) / chunkSize);
+		final byte[][] chunks = new byte[num][];
+		final long[] checksums = new long[num];
+		final int[] lengths = new int[num];
+		ParallelUtil.forEach(0, num, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				Deflater deflater = new Deflater(level, true);
+				try {
+					for (int i = from; i < to; i++) {
+						int start = i * chunkSize;
+						lengths[i] = Math.min(chunkSize, raw.length - start);
+						checksums[i] = adler32(raw, start, lengths[i]);
+						chunks[i] = deflate(deflater, raw, start, lengths[i], i == chunks.length - 1);
+					}
+				} finally {
+					deflater.end();
+				}
+			}
+		});
+		return assemble(chunks, checksums, lengths);
+	}
+
+	/**
+	 * Compresses the samples text of given volume to a zlib stream. The samples text is the voxel
+	 * values as unsigned integers separated by a space. Each chunk consists of whole slices, which
+	 * are read from the volume and formatted by each thread.
+	 *
+	 * @param volume the volume of spatial image
+	 * @return the zlib stream of the samples text
+	 */
+	public byte[] compressSamples(final VoxelVolume volume) {
+		final int slice = volume.getWidth() * volume.getHeight();
+		final int depth = volume.getDepth();
+		final int slices = Math.max(1, chunkSize / Math.max(slice, 1));
+		int num = Math.max(1, (depth + slices - 1) / slices);
+		final byte[][] chunks = new byte[num][];
+		final long[] checksums = new long[num];
+		final int[] lengths = new int[num];
+		ParallelUtil.forEach(0, num, parallelism, new ParallelUtil.RangeTask() {
+			@Override
+			public void run(int from, int to) {
+				Deflater deflater = new Deflater(level, true);
+				// each value has at most 3 digits and a space
+				byte[] text = new byte[slices * slice * 4];
+				byte[] buf = new byte[slice];
+				try {
+					for (int i = from; i < to; i++) {
+						int end = Math.min(depth, (i + 1) * slices);
+						int length = 0;
+						for (int d = i * slices; d < end; d++) {
+							volume.getSlice(d, buf);
+							for (int j = 0; j < slice; j++)
+								length = SamplesOutputStream.format(buf[j], d > 0 || j > 0, text, length);
+						}
+						lengths[i] = length;
+						checksums[i] = adler32(text, 0, length);
+						chunks[i] = deflate(deflater, text, 0, length, i == chunks.length - 1);
+					}
+				} finally {
+					deflater.end();
+				}
+			}
+		});
+		return assemble(chunks, checksums, lengths);
+	}
+
+	/**
+	 * Compresses given range of bytes by given raw deflater. The deflater is reset, so that each
+	 * chunk is compressed independently. The last chunk is finished, and other chunks are flushed
+	 * by a sync flush, which ends with an empty stored block on a byte boundary.
+	 *
+	 * @param deflater the raw deflater (without zlib header)
+	 * @param input the input bytes
+	 * @param offset the start of the range
+	 * @param length the length of the range
+	 * @param last the flag whether the chunk is the last one
+	 * @return the compressed bytes
+	 */
+	private static byte[] deflate(Deflater deflater, byte[] input, int offset, int length, boolean last) {
+		deflater.reset();
+		deflater.setInput(input, offset, length);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[BUFFER_SIZE];
+		if (last) {
+			deflater.finish();
+			while (!deflater.finished()) {
+				int size = deflater.deflate(buf);
+				out.write(buf, 0, size);
+			}
+		} else {
+			int size;
+			do {
+				size = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+				out.write(buf, 0, size);
+			} while (size == buf.length);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Concatenates the compressed chunks with the zlib header and the Adler-32 checksum of the
+	 * whole input, which is combined from the checksums of each chunk.
+	 *
+	 * @param chunks the compressed chunks
+	 * @param checksums the Adler-32 checksum of each chunk
+	 * @param lengths the number of input bytes of each chunk
+	 * @return the zlib stream
+	 */
+	private byte[] assemble(byte[][] chunks, long[] checksums, int[] lengths) {
+		int size = 2 + 4;
+		for (byte[] chunk : chunks)
+			size += chunk.length;
+		byte[] stream = new byte[size];
+		// CMF: deflate with 32K window, FLG: compression level and check bits
+		int cmf = 0x78;
+		int flg = getLevelFlag(level) << 6;
+		flg += 31 - (cmf * 256 + flg) % 31;
+		stream[0] = (byte) cmf;
+		stream[1] = (byte) flg;
+		int pos = 2;
+		long checksum = 1L;
+		for (int i = 0; i < chunks.length; i++) {
+			System.arraycopy(chunks[i], 0, stream, pos, chunks[i].length);
+			pos += chunks[i].length;
+			checksum = combineAdler32(checksum, checksums[i], lengths[i]);
+		}
+		stream[pos++] = (byte) (checksum >>> 24);
+		stream[pos++] = (byte) (checksum >>> 16);
+		stream[pos++] = (byte) (checksum >>> 8);
+		stream[pos] = (byte) checksum;
+		return stream;
+	}
+
+	/**
+	 * Gets the compression level flag (FLEVEL) of the zlib header for given compression level.
+	 *
+	 * @param level the compression level
+	 * @return the compression level flag (0: fastest, 1: fast, 2: default, 3: maximum)
+	 */
+	private static int getLevelFlag(int level) {
+		if (level == Deflater.DEFAULT_COMPRESSION || level == 6)
+			return 2;
+		if (level < 2)
+			return 0;
+		if (level < 6)
+			return 1;
+		return 3;
+	}
+
+	/**
+	 * Computes the Adler-32 checksum of given range of bytes.
+	 *
+	 * @param input the input bytes
+	 * @param offset the start of the range
+	 * @param length the length of the range
+	 * @return the Adler-32 checksum
+	 */
+	private static long adler32(byte[] input, int offset, int length) {
+		Adler32 adler = new Adler32();
+		adler.update(input, offset, length);
+		return adler.getValue();
+	}
+
+	/**
+	 * Combines the Adler-32 checksums of two consecutive ranges of bytes into the checksum
+	 * of the concatenated range, in the same way as adler32_combine of zlib.
+	 *
+	 * @param adler1 the checksum of the first range
+	 * @param adler2 the checksum of the second range
+	 * @param length2 the length of the second range
+	 * @return the checksum of the concatenated range
+	 */
+	static long combineAdler32(long adler1, long adler2, long length2) {
+		long rem = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = rem * sum1 % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum2 >= (ADLER_BASE << 1)) sum2 -= (ADLER_BASE << 1);
+		if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Sets the compression level (0 - 9, or {@link Deflater#DEFAULT_COMPRESSION}).
+	 *
+	 * @param level the compression level
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * Sets the number of bytes of a chunk (the number of voxels for the samples text). Smaller chunks are compressed with more parallelism,
+	 * and larger chunks are compressed slightly better.
+	 *
+	 * @param chunkSize the number of bytes of a chunk
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Sets the maximum number of threads. If 1, the chunks are compressed on the calling thread.
+	 *
+	 * @param parallelism the maximum number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+}
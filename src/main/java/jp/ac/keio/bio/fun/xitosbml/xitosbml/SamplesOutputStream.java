@@ -0,0 +1,181 @@
+package jp.ac.keio.bio.fun.xitosbml.xitosbml;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume;
+
+/**
+ * The class SamplesOutputStream, which writes the samples of a SampledField directly from the
+ * volume of a spatial image while an SBML document is written. The samples of the SampledField
+ * in the document are set to {@link #PLACEHOLDER}, and this stream replaces the placeholder with
+ * the voxel values (unsigned integers separated by a space) when the document is written through
+ * it. The values are formatted slice by slice into a small byte buffer, so that neither the whole
+ * samples as a String nor an int array of the volume is created.
+ * Date Created: Oct 17, 2026
+ *
+ * @author Kaito Ii &lt;ii@fun.bio.keio.ac.jp&gt;
+ * @author Akira Funahashi &lt;funa@bio.keio.ac.jp&gt;
+ */
+public class SamplesOutputStream extends FilterOutputStream {
+
+	/** The placeholder of the samples. The first character does not appear again in the placeholder. */
+	public static final String PLACEHOLDER = "#XITOSBML_SAMPLES";
+
+	/** The size of the buffer of formatted values. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The bytes of the placeholder (ASCII, which is the same in UTF-8). */
+	private static final byte[] TOKEN = PLACEHOLDER.getBytes(StandardCharsets.US_ASCII);
+
+	/** The volume of spatial image. */
+	private VoxelVolume volume;
+
+	/** The number of bytes of the placeholder which are matched and not written yet. */
+	private int matched = 0;
+
+	/** The flag whether the samples are already written. */
+	private boolean written = false;
+
+	/** The flag whether this stream is closed. */
+	private boolean closed = false;
+
+	/**
+	 * Instantiates a new samples output stream, which writes to given output stream and
+	 * replaces the placeholder with the samples of given volume.
+	 *
+	 * @param out the output stream
+	 * @param volume the volume of spatial image
+	 */
+	public SamplesOutputStream(OutputStream out, VoxelVolume volume) {
+		super(out);
+		this.volume = volume;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterOutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		if (written) {
+			out.write(b);
+			return;
+		}
+		if ((byte) b == TOKEN[matched]) {
+			if (++matched == TOKEN.length) {
+				matched = 0;
+				written = true;
+				writeSamples();
+			}
+			return;
+		}
+		if (matched > 0) {
+			out.write(TOKEN, 0, matched);
+			matched = 0;
+			if ((byte) b == TOKEN[0]) {
+				matched = 1;
+				return;
+			}
+		}
+		out.write(b);
+	}
+
+	/**
+	 * Writes given bytes. The bytes which can not be a part of the placeholder are passed
+	 * to the output stream as a block.
+	 *
+	 * @param b the bytes
+	 * @param off the start offset in the bytes
+	 * @param len the number of bytes to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (written) {
+			out.write(b, off, len);
+			return;
+		}
+		int start = off;
+		for (int i = off; i < off + len; i++) {
+			if (matched == 0 && b[i] != TOKEN[0])
+				continue;
+			out.write(b, start, i - start);
+			write(b[i]);
+			start = i + 1;
+		}
+		out.write(b, start, off + len - start);
+	}
+
+	/**
+	 * Writes the voxel values of the volume as unsigned integers separated by a space.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void writeSamples() throws IOException {
+		int num = volume.getWidth() * volume.getHeight();
+		byte[] slice = new byte[num];
+		byte[] buf = new byte[BUFFER_SIZE];
+		int pos = 0;
+		for (int d = 0; d < volume.getDepth(); d++) {
+			volume.getSlice(d, slice);
+			for (int i = 0; i < num; i++) {
+				if (pos > BUFFER_SIZE - 4) {
+					out.write(buf, 0, pos);
+					pos = 0;
+				}
+				pos = format(slice[i], d > 0 || i > 0, buf, pos);
+			}
+		}
+		out.write(buf, 0, pos);
+	}
+
+	/**
+	 * Formats given voxel value as an unsigned integer into given buffer, after a space if it is
+	 * not the first value of the samples. At most 4 bytes are written.
+	 *
+	 * @param voxel the voxel value
+	 * @param separated the flag whether a space is written before the value
+	 * @param buf the buffer
+	 * @param pos the position in the buffer
+	 * @return the position after the formatted value
+	 */
+	static int format(byte voxel, boolean separated, byte[] buf, int pos) {
+		if (separated)
+			buf[pos++] = ' ';
+		int value = voxel & 0xff;
+		if (value >= 100)
+			buf[pos++] = (byte) ('0' + value / 100);
+		if (value >= 10)
+			buf[pos++] = (byte) ('0' + value / 10 % 10);
+		buf[pos++] = (byte) ('0' + value % 10);
+		return pos;
+	}
+
+	/**
+	 * Checks if the samples are already written, that is, the placeholder was found.
+	 *
+	 * @return true, if the samples are already written
+	 */
+	public boolean isWritten() {
+		return written;
+	}
+
+	/**
+	 * Writes the bytes of a partially matched placeholder, and closes the output stream.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (matched > 0) {
+			out.write(TOKEN, 0, matched);
+			matched = 0;
+		}
+		super.close();
+	}
+}
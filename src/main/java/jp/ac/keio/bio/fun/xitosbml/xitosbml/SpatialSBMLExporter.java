@@ -1,7 +1,10 @@
 package jp.ac.keio.bio.fun.xitosbml.xitosbml;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -10,7 +13,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.WeakHashMap;
-import java.util.zip.Deflater;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -19,6 +21,8 @@ import org.sbml.jsbml.ListOf;
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.Parameter;
 import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.SBMLWriter;
 import org.sbml.jsbml.Unit;
 import org.sbml.jsbml.Unit.Kind;
 import org.sbml.jsbml.UnitDefinition;
@@ -52,6 +56,7 @@ import org.sbml.jsbml.ext.spatial.SpatialSymbolReference;
 import org.scijava.vecmath.Point3d;
 
 import jp.ac.keio.bio.fun.xitosbml.image.SpatialImage;
+import jp.ac.keio.bio.fun.xitosbml.image.VoxelVolume;
 import jp.ac.keio.bio.fun.xitosbml.util.PluginConstants;
 import jp.ac.keio.bio.fun.xitosbml.util.PluginInfo;
 
@@ -89,14 +94,17 @@ public class SpatialSBMLExporter{
   /** The hashmap of the count number of domains in each domain types. */
   private HashMap<String, Integer> hashDomainNum;
   
+  /** The hashmap of the size (number of pixels or faces) of each domain type. */
+  private HashMap<String, Long> hashDomainTypeSize;
+  
   /** The hashmap of domain InteriorPoint of spatial image. HashMap&lt;String domain name, Point3d coordinate&gt; */
   private HashMap<String,Point3d> hashDomInteriorPt;
   
   /** The adjacents list of spatial image. */
   private ArrayList<ArrayList<String>> adjacentsList;
   
-  /** The raw data of spatial image in 1D array. */
-  private byte[] raw;
+  /** The volume of spatial image, which is indexed with long values. */
+  private VoxelVolume volume;
   
   /** The size of an image (width, height and depth). */
   private int width, height, depth;
@@ -106,6 +114,18 @@ public class SpatialSBMLExporter{
   
   /** The delta. */
   private Point3d delta;
+  
+  /** The origin (offset in voxels) of a cropped spatial image. */
+  private Point3d origin = new Point3d();
+  
+  /** The flag whether the samples of the SampledField are streamed from the volume when the document is written. */
+  private boolean streamingSamples = false;
+  
+  /** The flag whether the samples of the SampledField are set to the placeholder of streamed samples. */
+  private boolean samplesDeferred = false;
+  
+  /** The compression of the samples of the SampledField. */
+  private CompressionKind compression = CompressionKind.uncompressed;
 
 	/**
 	 * Instantiates a new spatial SBML exporter.
@@ -133,13 +153,15 @@ public class SpatialSBMLExporter{
 		this.hashDomainTypes = spImg.getHashDomainTypes();
 		this.hashSampledValue = spImg.getHashSampledValue();
 		this.hashDomainNum = spImg.getHashDomainNum();
+		this.hashDomainTypeSize = spImg.getHashDomainTypeSize();
 		this.hashDomInteriorPt = spImg.getHashDomInteriorPt();
-		this.raw = spImg.getRaw();
+		this.volume = spImg.getVolume();
 		this.width = spImg.getWidth();
 		this.height = spImg.getHeight();
 		this.depth = spImg.getDepth();
 		this.adjacentsList = spImg.getAdjacentsList();
 		this.delta = spImg.getDelta();
+		this.origin = spImg.getOrigin();
 		model = document.getModel();
 		spatialplugin = (SpatialModelPlugin) model.getPlugin(SpatialConstants.namespaceURI);
 		unit = spImg.getUnit();
@@ -180,7 +202,15 @@ public class SpatialSBMLExporter{
 	 * Adds the geometry definitions.
 	 * This method supports creating both 2D and 3D spaces (by looking into DomainType).
      * Each element in SampledField will store unsigned int 8 bit (uint8) value.
-     * Data compression is currently disabled.
+     * If the compression is deflated ({@link #setCompression(CompressionKind)}), the samples are
+     * the bytes of a zlib stream of the samples text (the voxel values separated by a space), which
+     * is compressed by chunks in parallel ({@link ParallelDeflater}), and the samples length is
+     * the number of compressed bytes.
+     * If the samples are streamed ({@link #setStreamingSamples(boolean)}) and not compressed,
+     * the samples are set to a placeholder, and the voxel values are written by {@link #write(File)}.
+     *
+     * @throws IllegalArgumentException if the samples are not compressed and the image has more
+     * voxels than the samples length (int) can hold
 	 */
 	public void addGeometryDefinitions() {
 		SampledFieldGeometry sfg = geometry.createSampledFieldGeometry();
@@ -204,52 +234,144 @@ public class SpatialSBMLExporter{
 		//if(depth > 1)
 		sf.setNumSamples3(depth);
 		sf.setInterpolation(InterpolationKind.nearestneighbor);
-//		byte[] compressed = compressRawData(raw);
-		String s;
-//		if (compressed == null){
-			sf.setCompression(CompressionKind.uncompressed);
-			s = Arrays.toString(byteArrayToIntArray(raw));
-//		}else{
-//			sf.setCompression(CompressionKind.deflated);
-//			s = Arrays.toString(byteArrayToIntArray(compressed));
-//		}
-		s = s.replace("[", "");
-		s = s.replace("]", "");
-		s = s.replace(",", "");
-		sf.setSamples(s);
-		sf.setSamplesLength(raw.length);
+		sf.setCompression(compression);
+		samplesDeferred = false;
+		if (compression == CompressionKind.deflated) {
+			byte[] compressed = new ParallelDeflater().compressSamples(volume);
+			sf.setSamples(createSamples(compressed));
+			sf.setSamplesLength(compressed.length);
+			return;
+		}
+		if (compression != CompressionKind.uncompressed)
+			throw new IllegalArgumentException("Unsupported compression: " + compression);
+		if (volume.size() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The image has " + volume.size() + " voxels, but the samples length of"
+					+ " a SampledField can not exceed " + Integer.MAX_VALUE + " without compression");
+		samplesDeferred = streamingSamples;
+		sf.setSamples(samplesDeferred ? SamplesOutputStream.PLACEHOLDER : createSamples());
+		sf.setSamplesLength((int) volume.size());
 	}
 
 	/**
-	 * Compress raw data of spatial image in 1D array.
+	 * Creates the samples of a SampledField from given bytes (e.g. compressed voxels). Each
+	 * byte is written as an unsigned integer separated by a space.
 	 *
-	 * @param raw the raw data of spatial image in 1D array
-	 * @return byte[] the byte array
+	 * @param data the bytes
+	 * @return the samples of a SampledField
 	 */
-	public byte[] compressRawData(byte[] raw) {
-		Deflater compresser = new Deflater();
-		compresser.setLevel(Deflater.BEST_COMPRESSION);
-		compresser.setInput(raw);
-		compresser.finish();
-		int size;
-		byte[] buffer = new byte[1024];
-		byte[] compressed = null;
-		ByteArrayOutputStream stream = new ByteArrayOutputStream();
-		while (true) {
-			size = compresser.deflate(buffer);
-			stream.write(buffer, 0, size);
-			if (compresser.finished()) {
-				break;
+	private String createSamples(byte[] data) {
+		StringBuilder sb = new StringBuilder(data.length * 4);
+		for (int i = 0; i < data.length; i++) {
+			if (i > 0)
+				sb.append(' ');
+			sb.append(data[i] & 0xff);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the samples of a SampledField from the volume of spatial image. Each voxel
+	 * value is written as an unsigned integer separated by a space. The volume is read
+	 * slice by slice, so that no intermediate array of the whole image is created.
+	 *
+	 * @return the samples of a SampledField
+	 */
+	private String createSamples() {
+		int num = width * height;
+		byte[] slice = new byte[num];
+		StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < depth; d++) {
+			volume.getSlice(d, slice);
+			for (int i = 0; i < num; i++) {
+				if (d > 0 || i > 0)
+					sb.append(' ');
+				sb.append(slice[i] & 0xff);
 			}
 		}
-		compressed = stream.toByteArray();
+		return sb.toString();
+	}
+
+	/**
+	 * Sets whether the samples of the SampledField are streamed from the volume of spatial image
+	 * when the document is written by {@link #write(File)} or {@link #write(OutputStream)}. If true,
+	 * the samples are never built as a String, and the SampledField of the document in memory only
+	 * has a placeholder. This has to be set before the geometry elements are created.
+	 *
+	 * @param streamingSamples the flag whether the samples are streamed
+	 */
+	public void setStreamingSamples(boolean streamingSamples) {
+		this.streamingSamples = streamingSamples;
+	}
+
+	/**
+	 * Checks if the samples of the SampledField of the document in memory are the placeholder,
+	 * which is replaced with the voxel values only when the document is written by
+	 * {@link #write(File)} or {@link #write(OutputStream)}.
+	 *
+	 * @return true, if the samples are streamed when the document is written
+	 */
+	public boolean isSamplesDeferred() {
+		return samplesDeferred;
+	}
+
+	/**
+	 * Sets the compression of the samples of the SampledField ({@link CompressionKind#uncompressed}
+	 * or {@link CompressionKind#deflated}). This has to be set before the geometry elements are created.
+	 *
+	 * @param compression the compression of the samples
+	 */
+	public void setCompression(CompressionKind compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Writes the SBML document to given file. If the samples are streamed, the voxel values
+	 * are written directly from the volume of spatial image ({@link SamplesOutputStream}).
+	 *
+	 * @param file the file to write the SBML document
+	 * @throws IOException if the file can not be written
+	 * @throws XMLStreamException if the document can not be written as XML
+	 * @throws SBMLException if the document is not valid SBML
+	 */
+	public void write(File file) throws IOException, XMLStreamException, SBMLException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
 		try {
-			stream.close();
-		} catch (IOException e1) {
-			e1.printStackTrace();
-			return null;
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the SBML document to given output stream. If the samples are streamed, the voxel
+	 * values are written directly from the volume of spatial image ({@link SamplesOutputStream}).
+	 *
+	 * @param out the output stream
+	 * @throws IOException if the output stream can not be written
+	 * @throws XMLStreamException if the document can not be written as XML
+	 * @throws SBMLException if the document is not valid SBML
+	 */
+	public void write(OutputStream out) throws IOException, XMLStreamException, SBMLException {
+		if (!samplesDeferred) {
+			SBMLWriter.write(document, out, ' ', (short) 2);
+			return;
 		}
-		return compressed;
+		SamplesOutputStream samples = new SamplesOutputStream(out, volume);
+		SBMLWriter.write(document, samples, ' ', (short) 2);
+		samples.flush();
+		if (!samples.isWritten())
+			throw new IOException("The samples of the SampledField were not written");
+	}
+
+	/**
+	 * Compress raw data of spatial image in 1D array to a zlib stream. The raw data is
+	 * compressed by chunks in parallel ({@link ParallelDeflater}).
+	 *
+	 * @param raw the raw data of spatial image in 1D array
+	 * @return byte[] the byte array
+	 */
+	public byte[] compressRawData(byte[] raw) {
+		return new ParallelDeflater().compress(raw);
 	}
 
 	/**
@@ -315,9 +437,9 @@ public class SpatialSBMLExporter{
 			if (!dt.getSpatialId().matches(".*membrane")) {
 				  InteriorPoint ip = dom.createInteriorPoint();
 				  Point3d p = hashDomInteriorPt.get(id);
-				  ip.setCoord1(p.x);
-				  ip.setCoord2(p.y);
-				  if(depth > 1) ip.setCoord3(p.z);  
+				  ip.setCoord1(origin.x + p.x);
+				  ip.setCoord2(origin.y + p.y);
+				  if(depth > 1) ip.setCoord3(origin.z + p.z);  
 				}
 			}
      	}   
@@ -344,6 +466,10 @@ public class SpatialSBMLExporter{
 	 * Adds the domain types to the Geometry object.
      * SpatialId and SpatialDimensions will be set to generated domain type.
 	 * Also, SpatialDimensions, SpatialId and its name will be added to the compartment.
+	 * If the size of each domain type is computed from the image, the size of the compartment
+	 * is set to the volume (or area for a membrane) of the domain type.
+	 * The unitSize of CompartmentMapping is 1, because each compartment is mapped to
+	 * exactly one domain type (the whole domain type belongs to the compartment).
 	 */
 	public void addDomainTypes() {
 		for (Entry<String, Integer> e : hashDomainTypes.entrySet()) {
@@ -361,43 +487,68 @@ public class SpatialSBMLExporter{
 			c.setConstant(true);
 			c.setId(e.getKey());
 			c.setName(e.getKey());
+			if (hashDomainTypeSize != null && hashDomainTypeSize.containsKey(e.getKey()))
+				c.setSize(hashDomainTypeSize.get(e.getKey()) * getUnitMeasure(e.getValue()));
 			
 			spatialcompplugin = (SpatialCompartmentPlugin) c.getPlugin("spatial");
 			CompartmentMapping cm = new CompartmentMapping();
 			cm.setSpatialId(e.getKey() + c.getId());
 			cm.setDomainType(e.getKey());
-			// TODO 
-			//cm.setUnitSize(delta.x * delta.y * delta.z);
 			cm.setUnitSize(1);
 
 			spatialcompplugin.setCompartmentMapping(cm);
 		}
 	}
 
+	/**
+	 * Gets the measure (length, area or volume) of a unit element of given spatial dimensions,
+	 * that is, a pixel for a domain type or a face of a pixel for a membrane.
+	 * The size of a pixel is given by delta. A face of a pixel is measured as
+	 * delta.x * delta.y (or delta.x for a 2D image), as the image is interpolated to
+	 * have the same voxel size on each axis.
+	 *
+	 * @param spatialDimensions the spatial dimensions of a domain type
+	 * @return the measure of a unit element
+	 */
+	private double getUnitMeasure(int spatialDimensions) {
+		switch (spatialDimensions) {
+		case 3:
+			return delta.x * delta.y * delta.z;
+		case 2:
+			return delta.x * delta.y;
+		case 1:
+			return delta.x;
+		default:
+			return 1;
+		}
+	}
+
 	/**
 	 * Adds the coordinates to the Geometry object.
 	 * It alsow sets the minimum and maximum values of the coordinate axis (boundary) to
 	 * a CoordinateComponent object which explicitly defines a coordinate component of
 	 * the coordinate axes.
      * If the image is a 3D image, then coordz (Z axis) will be set.
+	 * If the image is cropped, the boundaries are shifted by the origin of the image,
+	 * so that the coordinates are the same as the original image.
 	 */
 	public void addCoordinates() {
 		CoordinateComponent ccx = geometry.createCoordinateComponent();
 		ccx.setSpatialId("coordx");
 		ccx.setType(CoordinateKind.cartesianX);
 		if(unit != null) ccx.setUnits(unit);
-		setCoordinateBoundary(ccx, "X", 0, width, delta.x);
+		setCoordinateBoundary(ccx, "X", origin.x, origin.x + width, delta.x);
 		CoordinateComponent ccy = geometry.createCoordinateComponent();
 		ccy.setSpatialId("coordy");
 		ccy.setType(CoordinateKind.cartesianY);
 		if(unit != null)  ccy.setUnits(unit);
-		setCoordinateBoundary(ccy, "Y", 0, height, delta.y);
+		setCoordinateBoundary(ccy, "Y", origin.y, origin.y + height, delta.y);
 		if (depth > 1) {
 			CoordinateComponent ccz = geometry.createCoordinateComponent();
 			ccz.setSpatialId("coordz");
 			ccz.setType(CoordinateKind.cartesianZ);
 			if(unit != null) ccz.setUnits(unit);
-			setCoordinateBoundary(ccz, "Z", 0, depth, delta.z);
+			setCoordinateBoundary(ccz, "Z", origin.z, origin.z + depth, delta.z);
 		}
 	}
 